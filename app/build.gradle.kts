@@ -39,4 +39,7 @@ dependencies {
     implementation("androidx.appcompat:appcompat:1.6.1")
     implementation("com.google.android.material:material:1.11.0")
     implementation("com.vuzix:ultralite-sdk-android:1.7")
+    implementation(project(":lvgl-packer"))
+
+    testImplementation("junit:junit:4.13.2")
 }
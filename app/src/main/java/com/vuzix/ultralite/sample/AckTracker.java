@@ -0,0 +1,160 @@
+package com.vuzix.ultralite.sample;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class demonstrates a mechanism that can be used to synchronize data being received by the
+ * glasses.
+ *
+ * We can send a requestAcknowledgement command to the glasses after any operation, and the glasses
+ * will reply when this message is processed. When we get the reply we know the data has made it
+ * through the Bluetooth queue, and we can update the phone UI to match the glasses UI.
+ *
+ * Instead of blocking after every operation until the glasses acknowledge it, we keep a window of
+ * up to N operations in flight. Each operation is followed by a requestAcknowledgement command and
+ * is given a sequence id. The sender only blocks when the window is full, so the Bluetooth link is
+ * kept busy while we still know exactly which operations the glasses have processed.
+ *
+ * The glasses process the Bluetooth queue in order, so an acknowledgement for one id means every
+ * earlier id has been processed too. That lets the phone UI wait for "everything up to X" with a
+ * single call.
+ */
+class AckTracker {
+    private final MeteredUltralite ultralite;
+    private final Semaphore window;
+    private final int windowSize;
+
+    // Futures for the ids that are in flight, oldest first. Guarded by "this".
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private long lastSentId;
+    private long lastAckedId;
+
+    public AckTracker(MeteredUltralite ultralite, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1");
+        }
+        this.ultralite = ultralite;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+    }
+
+    /**
+     * Runs the operation on the calling thread, then requests an acknowledgement for it. This only
+     * blocks if the window is already full of operations the glasses have not acknowledged yet.
+     *
+     * If the operation throws, it gets no id and its place in the window is given back.
+     *
+     * @param operation The commands to send, such as a sendScrollImage call
+     * @return The sequence id of this operation, for use with {@link #ackFor} and {@link #awaitThrough}
+     */
+    public long send(Runnable operation) throws MainActivity.Stop {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            throw new MainActivity.Stop(true);
+        }
+        try {
+            operation.run();
+        } catch (RuntimeException | Error e) {
+            // No acknowledgement will be requested for it, so nothing would ever release the permit
+            window.release();
+            throw e;
+        }
+        final long id;
+        synchronized (this) {
+            id = ++lastSentId;
+            pending.addLast(new Pending(id));
+        }
+        ultralite.requestAcknowledgement(() -> onAck(id));
+        return id;
+    }
+
+    /**
+     * @param id A sequence id returned by {@link #send}
+     * @return A future that completes when the glasses have processed that operation
+     */
+    public synchronized CompletableFuture<Void> ackFor(long id) {
+        if (id > lastSentId) {
+            throw new IllegalArgumentException("Sequence id " + id + " has not been sent");
+        }
+        if (id <= lastAckedId) {
+            return CompletableFuture.completedFuture(null);
+        }
+        for (Pending p : pending) {
+            if (p.id == id) {
+                return p.future;
+            }
+        }
+        // Unreachable: every id between lastAckedId and lastSentId is pending
+        throw new IllegalStateException("Sequence id " + id + " is not tracked");
+    }
+
+    /**
+     * Blocks the calling thread until the glasses have processed every operation up to and
+     * including the given id.
+     */
+    public void awaitThrough(long id) throws MainActivity.Stop {
+        CompletableFuture<Void> future = ackFor(id);
+        try {
+            future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new MainActivity.Stop(true);
+        }
+    }
+
+    /**
+     * Blocks the calling thread until everything sent so far has been acknowledged.
+     */
+    public void awaitAll() throws MainActivity.Stop {
+        long id;
+        synchronized (this) {
+            id = lastSentId;
+        }
+        if (id > 0) {
+            awaitThrough(id);
+        }
+    }
+
+    public synchronized long getLastAckedId() {
+        return lastAckedId;
+    }
+
+    public synchronized int getInFlightCount() {
+        return pending.size();
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    // Called from the SDK when the acknowledgement for an id arrives
+    private void onAck(long id) {
+        ArrayDeque<Pending> done = new ArrayDeque<>();
+        synchronized (this) {
+            // Acks are in queue order, so this one covers every older id still pending
+            while (!pending.isEmpty() && pending.peekFirst().id <= id) {
+                done.addLast(pending.removeFirst());
+            }
+            if (id > lastAckedId) {
+                lastAckedId = id;
+            }
+        }
+        // Complete outside the lock so dependent actions can call back into this class
+        for (Pending p : done) {
+            window.release();
+            p.future.complete(null);
+        }
+    }
+
+    private static class Pending {
+        final long id;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(long id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.vuzix.ultralite.sample;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vuzix.ultralite.LVGLImage;
+
+/**
+ * This class is a teleprompter like {@link com.vuzix.ultralite.utils.scroll.AutoScroller} that
+ * adapts to the Bluetooth link.
+ *
+ * AutoScroller sends a new line every time the duration passes, and has no idea whether the
+ * previous lines have reached the glasses. When the link is congested, for example by Wi-Fi
+ * sharing the radio, lines pile up in the Bluetooth queue and then arrive in a burst, so the text
+ * stutters.
+ *
+ * This class sends each line itself with the native scroll commands and requests an
+ * acknowledgement behind it. The acknowledgements tell us two things:
+ * <ul>
+ *     <li>How long a line takes to reach the glasses. Each line is sent that much before it is due,
+ *     plus a margin for jitter, so it scrolls in on time.</li>
+ *     <li>How long the link is busy with each line. If that gets close to the time between lines,
+ *     the queue is about to grow without bound. We slow down the pace a little before that
+ *     happens, since an even slower scroll reads much better than a stutter, and speed back up
+ *     once the link recovers.</li>
+ * </ul>
+ * Lines are rendered ahead on a worker thread by a {@link SlicePipeline}. The rendered lines plus
+ * the lines still on their way are the buffer of lines that are not on screen yet. Its state is
+ * published as a {@link Health}, and recorded in {@link LinkMetrics} so the phone UI shows it.
+ *
+ * Call {@link #run} from the thread that drives the glasses. The other methods can be called from
+ * any thread.
+ */
+class AdaptiveScroller {
+    private static final String TAG = "AdaptiveScroller";
+
+    // Never slow down to less than a third of the requested pace. Past that the text is better off
+    // waiting for the link.
+    private static final int MAX_SLOWDOWN = 3;
+    // Keep the link busy at most 80% of the time between lines, so a burst of interference is
+    // absorbed instead of queued
+    private static final float HEADROOM = 1.25f;
+
+    /**
+     * Sleeps the calling thread, and throws if the demo should stop.
+     */
+    interface Sleeper {
+        void sleep(long ms) throws MainActivity.Stop;
+    }
+
+    /**
+     * Tells the app that the text is about to stutter, so it can warn the presenter.
+     */
+    interface Listener {
+        void onStallRisk(Health health);
+    }
+
+    /**
+     * How well the buffer of upcoming lines is keeping up.
+     */
+    static final class Health {
+        // The pace we were asked for, and the pace we actually use
+        public final long targetIntervalMs;
+        public final long intervalMs;
+        // How long a line takes to reach the glasses, and how long it keeps the link busy
+        public final long deliveryMs;
+        public final long lineMs;
+        // How long before it is due we send each line
+        public final long leadMs;
+        // Lines rendered or sent that are not on screen yet
+        public final int bufferedLines;
+        // How early the last line arrived, negative if it was late
+        public final long slackMs;
+        public final int lateLines;
+
+        Health(long targetIntervalMs, long intervalMs, long deliveryMs, long lineMs, long leadMs,
+               int bufferedLines, long slackMs, int lateLines) {
+            this.targetIntervalMs = targetIntervalMs;
+            this.intervalMs = intervalMs;
+            this.deliveryMs = deliveryMs;
+            this.lineMs = lineMs;
+            this.leadMs = leadMs;
+            this.bufferedLines = bufferedLines;
+            this.slackMs = slackMs;
+            this.lateLines = lateLines;
+        }
+
+        /**
+         * @return True if the link cannot keep up with the requested pace, or a line was late
+         */
+        public boolean isAtRisk() {
+            return intervalMs > targetIntervalMs || slackMs < 0;
+        }
+
+        @Override
+        public String toString() {
+            return "interval " + intervalMs + "/" + targetIntervalMs + "ms, delivery " + deliveryMs
+                    + "ms, line " + lineMs + "ms, lead " + leadMs + "ms, buffer " + bufferedLines
+                    + ", slack " + slackMs + "ms, late " + lateLines;
+        }
+    }
+
+    private final MeteredUltralite link;
+    private final MeteredUltralite.ScrollView view;
+    private final SlicePipeline.SliceSource source;
+    private final int sliceHeight;
+    private final int lowestLine;
+    private final int linesShowing;
+    private final int scrollMs;
+    private final int lookahead;
+    private volatile Listener listener;
+
+    // Guarded by "this"
+    private long targetIntervalMs;
+    private long intervalMs;
+    private long deliveryMs = -1;
+    private long deliveryDeviationMs;
+    private long lineMs = -1;
+    private long lastAckMs;
+    private long slackMs;
+    private int lateLines;
+    private int bufferedLines;
+    private boolean warned;
+
+    /**
+     * @param link The SDK instance to send through
+     * @param source Renders the lines, for example {@link SlicePipeline#of} a TextToImageSlicer
+     * @param sliceHeight Height of each line in pixels
+     * @param lowestLine Screen line where new lines appear
+     * @param linesShowing How many lines are visible at once
+     * @param scrollMs How long the scroll animation for each new line takes
+     * @param lookahead How many lines may be rendered ahead, and how many may be in flight
+     */
+    public AdaptiveScroller(MeteredUltralite link, SlicePipeline.SliceSource source, int sliceHeight,
+                            int lowestLine, int linesShowing, int scrollMs, int lookahead) {
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("lookahead must be at least 1");
+        }
+        this.link = link;
+        this.view = link.getScrollingTextView();
+        this.source = source;
+        this.sliceHeight = sliceHeight;
+        this.lowestLine = lowestLine;
+        this.linesShowing = linesShowing;
+        this.scrollMs = scrollMs;
+        this.lookahead = lookahead;
+        setDuration(1000);
+    }
+
+    /**
+     * Sets the time between lines we would like. This can be changed at any point, even while
+     * running, like AutoScroller.setDuration.
+     */
+    public synchronized void setDuration(int ms) {
+        targetIntervalMs = Math.max(1, ms);
+        intervalMs = Math.max(targetIntervalMs, Math.min(intervalMs, targetIntervalMs * MAX_SLOWDOWN));
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Scrolls every line in, and returns once the glasses have received the last one.
+     *
+     * @param sleeper Waits between lines. The demos pass their pause method, so losing control of
+     *                the glasses stops the scrolling.
+     */
+    public void run(Sleeper sleeper) throws MainActivity.Stop {
+        view.scrollLayoutConfig(sliceHeight, lowestLine, linesShowing, scrollMs, false);
+        AckTracker tracker = new AckTracker(link, lookahead);
+        try (SlicePipeline slices = new SlicePipeline(source, lookahead)) {
+            long dueMs = SystemClock.elapsedRealtime();
+            LVGLImage slice;
+            while ((slice = slices.take()) != null) {
+                long sendAtMs;
+                synchronized (this) {
+                    sendAtMs = dueMs - getLeadMs();
+                }
+                long waitMs = sendAtMs - SystemClock.elapsedRealtime();
+                if (waitMs > 0) {
+                    sleeper.sleep(waitMs);
+                }
+
+                final LVGLImage line = slice;
+                final long lineDueMs = dueMs;
+                final long sentAtMs = SystemClock.elapsedRealtime();
+                long id = tracker.send(() -> view.sendScrollImage(line, lowestLine, true));
+                tracker.ackFor(id).thenRun(() -> delivered(sentAtMs, lineDueMs));
+                publish(slices.getBufferedCount() + tracker.getInFlightCount());
+
+                synchronized (this) {
+                    // If we fell behind, start the pace again from now instead of rushing to catch up
+                    dueMs = Math.max(dueMs + intervalMs, SystemClock.elapsedRealtime());
+                }
+            }
+            tracker.awaitAll();
+        } finally {
+            link.getMetrics().recordScrollBuffer(-1, 0);
+        }
+    }
+
+    public synchronized Health getHealth() {
+        return new Health(targetIntervalMs, intervalMs, Math.max(0, deliveryMs), Math.max(0, lineMs),
+                getLeadMs(), bufferedLines, slackMs, lateLines);
+    }
+
+    // Called with the lock held. The time a line takes to arrive, plus four deviations of margin,
+    // like the retransmission timeout of TCP. We cannot send further ahead than the window allows.
+    private long getLeadMs() {
+        if (deliveryMs < 0) {
+            return 0;
+        }
+        return Math.min(deliveryMs + 4 * deliveryDeviationMs, intervalMs * (lookahead - 1));
+    }
+
+    // Called from the SDK when the acknowledgement behind a line arrives
+    private void delivered(long sentAtMs, long dueMs) {
+        long nowMs = SystemClock.elapsedRealtime();
+        Health warning = null;
+        synchronized (this) {
+            long sample = nowMs - sentAtMs;
+            if (deliveryMs < 0) {
+                deliveryMs = sample;
+                deliveryDeviationMs = sample / 2;
+            } else {
+                deliveryDeviationMs += (Math.abs(sample - deliveryMs) - deliveryDeviationMs) / 4;
+                deliveryMs += (sample - deliveryMs) / 8;
+            }
+
+            // The link started on this line when it was sent or when the line before it arrived,
+            // whichever was later. Any idle time in between does not count.
+            long busy = nowMs - Math.max(sentAtMs, lastAckMs);
+            lineMs = lineMs < 0 ? busy : lineMs + (busy - lineMs) / 4;
+            lastAckMs = nowMs;
+
+            slackMs = dueMs - nowMs;
+            if (slackMs < 0) {
+                lateLines++;
+            }
+
+            long neededMs = (long) (lineMs * HEADROOM);
+            if (neededMs > intervalMs) {
+                // Slow down now, while the lines are still arriving on time
+                intervalMs = Math.min(neededMs, targetIntervalMs * MAX_SLOWDOWN);
+            } else if (intervalMs > targetIntervalMs) {
+                // Speed back up gradually, so one good sample does not bring the stutter back
+                intervalMs = Math.max(targetIntervalMs, Math.max(neededMs, intervalMs - targetIntervalMs / 10));
+            }
+
+            Health health = getHealth();
+            if (health.isAtRisk() && !warned) {
+                warned = true;
+                warning = health;
+            } else if (!health.isAtRisk()) {
+                warned = false;
+            }
+        }
+        if (warning != null) {
+            Log.w(TAG, "Link cannot keep up with the scroll pace: " + warning);
+            Listener current = listener;
+            if (current != null) {
+                current.onStallRisk(warning);
+            }
+        }
+    }
+
+    private void publish(int lines) {
+        long slack;
+        synchronized (this) {
+            bufferedLines = lines;
+            slack = slackMs;
+        }
+        link.getMetrics().recordScrollBuffer(lines, slack);
+    }
+}
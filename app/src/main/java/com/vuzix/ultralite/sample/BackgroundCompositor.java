@@ -0,0 +1,269 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Bitmap;
+import android.graphics.Point;
+
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.UltraliteColor;
+import com.vuzix.ultralite.UltraliteSDK;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+import com.vuzix.ultralite.sample.lvgl.TileCompiler;
+
+import java.util.Arrays;
+
+/**
+ * This class sends full-screen background frames to the glasses, but only the parts that changed.
+ *
+ * We keep a copy of the last background we sent, at the 2-bit gray levels the glasses can show.
+ * Each new frame is compared to it tile by tile. Changed tiles that are a single solid color are
+ * sent as a clearBackgroundRect, which is only a few bytes. Other changed tiles are sent as small
+ * positioned drawBackground images, with neighbouring changed tiles in a row merged into one image.
+ * If most of the screen changed, we send the whole frame instead. A whole frame goes through a
+ * {@link TileCompiler} first: screens such as forms and tables repeat the same small tiles, and it
+ * is cheaper to upload each of them once and stamp it everywhere it appears. Photos do not repeat,
+ * and go out as a single full-screen image.
+ *
+ * The commands are queued on a {@link CanvasBatcher}. Call commit() on it after draw() as usual. If
+ * anything else draws to or clears the background, call {@link #invalidate()} or
+ * {@link #backgroundCleared()} so our copy matches the glasses again.
+ *
+ * This class is not thread safe. Use it from the one thread that drives the glasses UI.
+ */
+class BackgroundCompositor {
+    private static final int WIDTH = UltraliteSDK.Canvas.WIDTH;
+    private static final int HEIGHT = UltraliteSDK.Canvas.HEIGHT;
+    private static final int LEVEL_BLACK = 0;
+    private static final int LEVEL_WHITE = 3;
+    // A tile that is not solid, or is solid in a color we cannot clear to
+    private static final int NOT_SOLID = -1;
+    // Tiles for finding repeats in a whole frame. These are smaller than the diff tiles, since a
+    // repeat has to line up with the tile grid to be found.
+    private static final int STAMP_TILE_SIZE = 16;
+
+    private final CanvasBatcher canvas;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final float fullSendFraction;
+
+    // The gray level (0-3) of every pixel on the glasses, or null if we do not know
+    private byte[] shown;
+    // Reused for one row of tiles of the new frame
+    private final int[] rowPixels;
+
+    private int lastTilesChanged;
+    private int lastCommandCount;
+    private TileCompiler.Plan lastPlan;
+
+    /**
+     * @param canvas The batcher that queues the background commands
+     * @param tileWidth Width of each diff tile. Smaller tiles find smaller changes, but cost more commands.
+     * @param tileHeight Height of each diff tile
+     * @param fullSendFraction When more than this fraction of the tiles changed, send the whole frame
+     */
+    public BackgroundCompositor(CanvasBatcher canvas, int tileWidth, int tileHeight, float fullSendFraction) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.canvas = canvas;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.fullSendFraction = fullSendFraction;
+        this.rowPixels = new int[WIDTH * tileHeight];
+    }
+
+    public BackgroundCompositor(CanvasBatcher canvas) {
+        this(canvas, 64, 48, 0.6f);
+    }
+
+    /**
+     * Forget what the glasses are showing, so the next frame is sent in full.
+     */
+    public void invalidate() {
+        shown = null;
+    }
+
+    /**
+     * Call this after the background was cleared, so the next frame is compared against black.
+     */
+    public void backgroundCleared() {
+        if (shown == null) {
+            shown = new byte[WIDTH * HEIGHT];
+        } else {
+            Arrays.fill(shown, (byte) LEVEL_BLACK);
+        }
+    }
+
+    /**
+     * Queues the commands that make the glasses background match this frame.
+     *
+     * @param frame A full-screen bitmap, {@link UltraliteSDK.Canvas#WIDTH} by {@link UltraliteSDK.Canvas#HEIGHT}
+     */
+    public void draw(Bitmap frame) {
+        if (frame.getWidth() != WIDTH || frame.getHeight() != HEIGHT) {
+            throw new IllegalArgumentException("Background frames must be " + WIDTH + "x" + HEIGHT);
+        }
+        int tilesAcross = (WIDTH + tileWidth - 1) / tileWidth;
+        int tilesDown = (HEIGHT + tileHeight - 1) / tileHeight;
+        int tileCount = tilesAcross * tilesDown;
+
+        if (shown == null) {
+            sendFull(frame, tileCount);
+            return;
+        }
+
+        // First pass: find the changed tiles and update our copy as we go. The copy is only
+        // trusted if we end up sending either the tiles or the full frame, which we always do.
+        boolean[] changed = new boolean[tileCount];
+        int[] solidLevel = new int[tileCount];
+        int changedCount = 0;
+        for (int ty = 0; ty < tilesDown; ty++) {
+            int top = ty * tileHeight;
+            int rows = Math.min(tileHeight, HEIGHT - top);
+            frame.getPixels(rowPixels, 0, WIDTH, 0, top, WIDTH, rows);
+            for (int tx = 0; tx < tilesAcross; tx++) {
+                int tile = ty * tilesAcross + tx;
+                int left = tx * tileWidth;
+                int cols = Math.min(tileWidth, WIDTH - left);
+                int first = -1;
+                boolean uniform = true;
+                boolean different = false;
+                for (int r = 0; r < rows; r++) {
+                    int src = r * WIDTH + left;
+                    int dst = (top + r) * WIDTH + left;
+                    for (int c = 0; c < cols; c++) {
+                        int level = IndexedPacker.level(rowPixels[src + c], IndexedPacker.BPP_2);
+                        if (first < 0) {
+                            first = level;
+                        } else if (level != first) {
+                            uniform = false;
+                        }
+                        if (shown[dst + c] != level) {
+                            shown[dst + c] = (byte) level;
+                            different = true;
+                        }
+                    }
+                }
+                if (different) {
+                    changed[tile] = true;
+                    solidLevel[tile] = uniform && (first == LEVEL_BLACK || first == LEVEL_WHITE) ? first : NOT_SOLID;
+                    changedCount++;
+                }
+            }
+        }
+
+        lastTilesChanged = changedCount;
+        if (changedCount > tileCount * fullSendFraction) {
+            sendFull(frame, changedCount);
+            return;
+        }
+
+        int commands = 0;
+        for (int ty = 0; ty < tilesDown; ty++) {
+            int top = ty * tileHeight;
+            int rows = Math.min(tileHeight, HEIGHT - top);
+            int tx = 0;
+            while (tx < tilesAcross) {
+                int tile = ty * tilesAcross + tx;
+                if (!changed[tile]) {
+                    tx++;
+                    continue;
+                }
+                // Extend a run of changed tiles of the same kind along this row
+                int level = solidLevel[tile];
+                int end = tx + 1;
+                while (end < tilesAcross && changed[ty * tilesAcross + end]
+                        && solidLevel[ty * tilesAcross + end] == level) {
+                    end++;
+                }
+                int left = tx * tileWidth;
+                int width = Math.min(end * tileWidth, WIDTH) - left;
+                if (level == LEVEL_BLACK) {
+                    canvas.clearBackgroundRect(left, top, width, rows);
+                } else if (level == LEVEL_WHITE) {
+                    canvas.clearBackgroundRect(left, top, width, rows, UltraliteColor.WHITE);
+                } else {
+                    Bitmap region = Bitmap.createBitmap(frame, left, top, width, rows);
+                    canvas.drawBackground(toImage(region), left, top);
+                }
+                commands++;
+                tx = end;
+            }
+        }
+        lastCommandCount = commands;
+    }
+
+    /**
+     * @return How many tiles differed from the glasses in the last frame
+     */
+    public int getLastTilesChanged() {
+        return lastTilesChanged;
+    }
+
+    /**
+     * @return How many background commands the last frame needed
+     */
+    public int getLastCommandCount() {
+        return lastCommandCount;
+    }
+
+    /**
+     * @return How the last whole frame was compiled, or null if no whole frame was sent yet
+     */
+    public TileCompiler.Plan getLastPlan() {
+        return lastPlan;
+    }
+
+    private static LVGLImage toImage(Bitmap bitmap) {
+        LVGLImage image = LVGLImage.fromBitmap(bitmap, LVGLImage.CF_INDEXED_2_BIT);
+        LinkMetrics.registerImage(image, ImageCache.estimateBytes(
+                bitmap.getWidth(), bitmap.getHeight(), LVGLImage.CF_INDEXED_2_BIT));
+        return image;
+    }
+
+    private void sendFull(Bitmap frame, int tilesChanged) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        frame.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        // The background does not allow single-bit images
+        TileCompiler.Plan plan = TileCompiler.compile(pixels, WIDTH, HEIGHT,
+                STAMP_TILE_SIZE, STAMP_TILE_SIZE, IndexedPacker.BPP_2);
+        lastPlan = plan;
+        if (plan.saves()) {
+            lastCommandCount = sendPlan(frame, plan);
+        } else {
+            canvas.drawBackground(toImage(frame), 0, 0);
+            lastCommandCount = 1;
+        }
+        if (shown == null) {
+            shown = new byte[WIDTH * HEIGHT];
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            shown[i] = (byte) IndexedPacker.level(pixels[i], IndexedPacker.BPP_2);
+        }
+        lastTilesChanged = tilesChanged;
+    }
+
+    private int sendPlan(Bitmap frame, TileCompiler.Plan plan) {
+        // Black tiles need nothing after the clear
+        canvas.clearBackground();
+        int commands = 1;
+        for (TileCompiler.Rect rect : plan.whiteRects) {
+            canvas.clearBackgroundRect(rect.x, rect.y, rect.width, rect.height, UltraliteColor.WHITE);
+            commands++;
+        }
+        for (TileCompiler.Stamp stamp : plan.stamps) {
+            LVGLImage image = toImage(Bitmap.createBitmap(frame, stamp.sourceX, stamp.sourceY, stamp.width, stamp.height));
+            if (stamp.x.length == 1) {
+                canvas.drawBackground(image, stamp.x[0], stamp.y[0]);
+            } else {
+                // One upload, drawn at every position
+                Point[] points = new Point[stamp.x.length];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = new Point(stamp.x[i], stamp.y[i]);
+                }
+                canvas.drawBackground(image, points);
+            }
+            commands++;
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,110 @@
+package com.vuzix.ultralite.sample;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.vuzix.ultralite.sample.lvgl.BandPacker;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class converts image resources for the glasses without ever holding the whole decoded
+ * picture.
+ *
+ * Decoding a drawable gives a full ARGB bitmap, four bytes per pixel, which is 1.2MB even for a
+ * 640x480 screen and far more for a photo that still has to be scaled down. On a device short of
+ * memory, that garbage triggers collections on the thread that feeds the glasses.
+ *
+ * Here a {@link BitmapRegionDecoder} decodes the resource a band of rows at a time into one reused
+ * bitmap, and each band goes straight into a {@link BandPacker}. The decoder drops whole powers of
+ * two while decoding, which costs nothing, and the packer averages the rest down to the target
+ * size. Apart from the packed result, memory is bounded by {@link #BAND_PIXELS} no matter how
+ * large the resource is.
+ */
+class BandedDecoder {
+    private static final String TAG = "BandedDecoder";
+    // Pixels of one decoded band. At 640 pixels wide that is about a hundred rows, or 256KB.
+    private static final int BAND_PIXELS = 64 * 1024;
+
+    private BandedDecoder() {
+    }
+
+    /**
+     * Decodes a resource in bands and adds it to the output as a packed image.
+     *
+     * @param width Target width in pixels, or 0 to keep the original width
+     * @param height Target height in pixels, or 0 to keep the original height
+     * @return False if the resource cannot be decoded by region, such as a vector drawable. Nothing
+     * was added to the output then, so the caller can decode it whole instead.
+     */
+    static boolean decode(Context context, int resource, int width, int height, int bitsPerPixel,
+                          PayloadStore.Output out) {
+        BitmapRegionDecoder decoder;
+        try (InputStream in = context.getResources().openRawResource(resource)) {
+            decoder = BitmapRegionDecoder.newInstance(in, false);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot decode resource " + resource + " by region", e);
+            return false;
+        }
+        if (decoder == null) {
+            return false;
+        }
+        try {
+            int sourceWidth = decoder.getWidth();
+            int sourceHeight = decoder.getHeight();
+            int targetWidth = width > 0 ? width : sourceWidth;
+            int targetHeight = height > 0 ? height : sourceHeight;
+            // The largest power of two that still leaves at least the target size
+            int sample = 1;
+            while (sourceWidth / (sample * 2) >= targetWidth && sourceHeight / (sample * 2) >= targetHeight) {
+                sample *= 2;
+            }
+            // Regions are whole multiples of the sample size, so each band decodes to an exact
+            // number of rows. At most sample - 1 pixels of the right and bottom edges are dropped.
+            int sampledWidth = sourceWidth / sample;
+            int sampledHeight = sourceHeight / sample;
+            int bandRows = Math.max(1, Math.min(sampledHeight, BAND_PIXELS / sampledWidth));
+
+            byte[] packed = new byte[IndexedPacker.packedSize(targetWidth, targetHeight, bitsPerPixel)];
+            BandPacker packer = new BandPacker(sampledWidth, sampledHeight, targetWidth, targetHeight,
+                    bitsPerPixel, packed, 0);
+            int[] pixels = new int[sampledWidth * bandRows];
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sample;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inMutable = true;
+            Rect region = new Rect();
+            Bitmap band = null;
+            try {
+                for (int top = 0; top < sampledHeight; top += bandRows) {
+                    int rows = Math.min(bandRows, sampledHeight - top);
+                    region.set(0, top * sample, sampledWidth * sample, (top + rows) * sample);
+                    // After the first band, every band is decoded into the same bitmap. The last
+                    // one may be shorter, and only fills the top of it.
+                    options.inBitmap = band;
+                    band = decoder.decodeRegion(region, options);
+                    if (band == null) {
+                        Log.w(TAG, "Cannot decode rows " + region.top + " to " + region.bottom + " of resource " + resource);
+                        return false;
+                    }
+                    band.getPixels(pixels, 0, sampledWidth, 0, 0, sampledWidth, rows);
+                    packer.push(pixels, 0, sampledWidth, rows);
+                }
+            } finally {
+                if (band != null) {
+                    band.recycle();
+                }
+            }
+            out.addPacked(targetWidth, targetHeight, bitsPerPixel, packed);
+            return true;
+        } finally {
+            decoder.recycle();
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Point;
+import android.util.Log;
+
+import com.vuzix.ultralite.Anchor;
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.TextAlignment;
+import com.vuzix.ultralite.TextWrapMode;
+import com.vuzix.ultralite.UltraliteColor;
+import com.vuzix.ultralite.UltraliteSDK;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class sits in front of {@link UltraliteSDK.Canvas} and holds changes until commit().
+ *
+ * Every Canvas command is sent over Bluetooth as soon as it is called, even when a later command in
+ * the same frame makes it pointless. This class records the changes for each element instead, and
+ * on commit() it sends only the final state: three updateText calls on the same id become one, a
+ * move followed by a remove becomes just the remove, and a change back to what the glasses already
+ * show is not sent at all.
+ *
+ * The create methods still go straight to the glasses since we need the id they return. Any
+ * pending changes are sent before a create so a pending remove frees its slot first.
+ *
+ * Every command actually sent is recorded in {@link LinkMetrics}.
+ *
+ * Since the batcher knows what every element shows, it can also send it all again with
+ * {@link #restore()} after another app had control of the glasses. The glasses hand out new ids
+ * then, so the ids this class returns are its own: they start out equal to the ids of the glasses,
+ * and the batcher translates them whenever the two differ.
+ *
+ * This class is not thread safe. Use it from the one thread that drives the glasses UI.
+ */
+class CanvasBatcher {
+    private static final int TEXT = 0;
+    private static final int IMAGE = 1;
+    private static final int ANIMATION = 2;
+    // How many background commands we keep for restore(). The background is only ever painted
+    // over, so a long history means a lot of data; past this we give up on restoring it.
+    private static final int MAX_BACKGROUND_HISTORY = 64;
+
+    private final UltraliteSDK.Canvas canvas;
+    private final LinkMetrics metrics;
+
+    // Every element we know about, keyed by kind and our id, in the order they were created
+    private final Map<Long, Element> elements = new LinkedHashMap<>();
+    // Elements with pending changes, in the order they were first touched
+    private final LinkedHashSet<Element> dirty = new LinkedHashSet<>();
+    // Background commands are kept in order since each one paints over the previous ones
+    private final List<BackgroundOp> backgroundOps = new ArrayList<>();
+    // The background commands sent since the background was last cleared, for restore()
+    private final List<BackgroundOp> backgroundHistory = new ArrayList<>();
+    private boolean backgroundHistoryLost;
+
+    private int sentCount;
+    private int droppedCount;
+
+    public CanvasBatcher(UltraliteSDK.Canvas canvas, LinkMetrics metrics) {
+        this.canvas = canvas;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates a batcher whose metrics nobody looks at.
+     */
+    public CanvasBatcher(UltraliteSDK.Canvas canvas) {
+        this(canvas, new LinkMetrics());
+    }
+
+    public int createText(String text, TextAlignment alignment, UltraliteColor color, Anchor anchor,
+                          int x, int y, int width, int height, TextWrapMode wrapMode, boolean visible) {
+        flush();
+        int physicalId = canvas.createText(text, alignment, color, anchor, x, y, width, height, wrapMode, visible);
+        sent(LinkMetrics.Command.CREATE_TEXT, LinkMetrics.textBytes(text));
+        if (physicalId == -1) {
+            return -1;
+        }
+        Element element = track(TEXT, physicalId, visible);
+        element.text = text;
+        element.anchor = anchor;
+        element.x = x;
+        element.y = y;
+        element.alignment = alignment;
+        element.color = color;
+        element.width = width;
+        element.height = height;
+        element.wrapMode = wrapMode;
+        element.restorable = true;
+        return element.id;
+    }
+
+    public void updateText(int id, String text) {
+        Element element = pending(TEXT, id);
+        if (element.pendingText != null) {
+            droppedCount++;
+        }
+        element.pendingText = text;
+    }
+
+    public void moveText(int id, Anchor anchor, int x, int y) {
+        Element element = pending(TEXT, id);
+        if (element.hasPendingMove) {
+            droppedCount++;
+        }
+        element.hasPendingMove = true;
+        element.pendingAnchor = anchor;
+        element.pendingX = x;
+        element.pendingY = y;
+    }
+
+    public void setTextVisible(int id, boolean visible) {
+        setVisible(TEXT, id, visible);
+    }
+
+    public void removeText(int id) {
+        remove(TEXT, id);
+    }
+
+    public int createImage(LVGLImage image, Anchor anchor) {
+        flush();
+        int physicalId = canvas.createImage(image, anchor);
+        sent(LinkMetrics.Command.CREATE_IMAGE, metrics.imagePayload(image));
+        if (physicalId == -1) {
+            return -1;
+        }
+        Element element = track(IMAGE, physicalId, true);
+        element.image = image;
+        element.anchor = anchor;
+        element.restorable = true;
+        return element.id;
+    }
+
+    public void updateImage(int id, LVGLImage image) {
+        Element element = pending(IMAGE, id);
+        if (element.pendingImage != null) {
+            droppedCount++;
+        }
+        element.pendingImage = image;
+    }
+
+    public void moveImage(int id, int x, int y) {
+        move(IMAGE, id, x, y);
+    }
+
+    public void setImageVisible(int id, boolean visible) {
+        setVisible(IMAGE, id, visible);
+    }
+
+    public void removeImage(int id) {
+        remove(IMAGE, id);
+    }
+
+    public int createAnimation(LVGLImage[] frames, Anchor anchor, int durationMs) {
+        flush();
+        int physicalId = canvas.createAnimation(frames, anchor, durationMs);
+        sent(LinkMetrics.Command.CREATE_ANIMATION, frameBytes(frames));
+        if (physicalId == -1) {
+            return -1;
+        }
+        Element element = track(ANIMATION, physicalId, true);
+        element.anchor = anchor;
+        element.frames = frames;
+        element.durationMs = durationMs;
+        element.restorable = true;
+        return element.id;
+    }
+
+    public void moveAnimation(int id, int x, int y) {
+        move(ANIMATION, id, x, y);
+    }
+
+    public void setAnimationVisible(int id, boolean visible) {
+        setVisible(ANIMATION, id, visible);
+    }
+
+    public void removeAnimation(int id) {
+        remove(ANIMATION, id);
+    }
+
+    public void drawBackground(LVGLImage image, int x, int y) {
+        backgroundOps.add(new BackgroundOp(false, () -> {
+            canvas.drawBackground(image, x, y);
+            sent(LinkMetrics.Command.DRAW_BACKGROUND, metrics.imagePayload(image));
+        }));
+    }
+
+    public void drawBackground(LVGLImage image, Point[] coordinates) {
+        backgroundOps.add(new BackgroundOp(false, () -> {
+            canvas.drawBackground(image, coordinates);
+            // Four bytes for each coordinate
+            sent(LinkMetrics.Command.DRAW_BACKGROUND, metrics.imagePayload(image) + 4L * coordinates.length);
+        }));
+    }
+
+    public void clearBackgroundRect(int x, int y, int width, int height) {
+        backgroundOps.add(new BackgroundOp(false, () -> {
+            canvas.clearBackgroundRect(x, y, width, height);
+            sent(LinkMetrics.Command.CLEAR_BACKGROUND, 0);
+        }));
+    }
+
+    public void clearBackgroundRect(int x, int y, int width, int height, UltraliteColor color) {
+        backgroundOps.add(new BackgroundOp(false, () -> {
+            canvas.clearBackgroundRect(x, y, width, height, color);
+            sent(LinkMetrics.Command.CLEAR_BACKGROUND, 0);
+        }));
+    }
+
+    public void clearBackground() {
+        // Anything drawn to the background earlier in this batch would be erased anyway
+        droppedCount += backgroundOps.size();
+        backgroundOps.clear();
+        backgroundOps.add(new BackgroundOp(true, () -> {
+            canvas.clearBackground();
+            sent(LinkMetrics.Command.CLEAR_BACKGROUND, 0);
+        }));
+    }
+
+    /**
+     * Sends the minimal set of commands for everything changed since the last commit, then commits.
+     */
+    public void commit() {
+        flush();
+        canvas.commit();
+        sent(LinkMetrics.Command.COMMIT, 0);
+    }
+
+    /**
+     * Like {@link #commit()}, and the callback runs when the glasses have received the commit.
+     */
+    public void commit(Runnable callback) {
+        flush();
+        sentCount++;
+        // The callback tells us the glasses got everything up to here, so measure how long it takes
+        LinkMetrics.Fence fence = metrics.fenceSent(LinkMetrics.Command.COMMIT);
+        canvas.commit(() -> {
+            metrics.fenceDone(fence);
+            callback.run();
+        });
+    }
+
+    /**
+     * @return How many Canvas commands have been sent to the glasses
+     */
+    public int getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return How many recorded changes were never sent because a later change replaced them
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Creates every element again as it was last sent, repaints the background and commits. Call
+     * this when we get control of the glasses back after another app had it, since the glasses
+     * forgot our canvas then. The converted images are reused, so nothing is converted again.
+     *
+     * Each element is created with its final text, position and visibility, instead of replaying
+     * the changes that led there. Changes recorded since the last commit stay pending.
+     *
+     * @return False if the background history was too long to keep, so the background is left
+     *         black and the caller has to draw it again
+     */
+    public boolean restore() {
+        Iterator<Element> iterator = elements.values().iterator();
+        while (iterator.hasNext()) {
+            Element e = iterator.next();
+            if (e.pendingRemove || !e.restorable) {
+                // Gone from the glasses anyway, and about to be removed
+                dirty.remove(e);
+                iterator.remove();
+                continue;
+            }
+            switch (e.kind) {
+                case TEXT:
+                    e.physicalId = canvas.createText(e.text, e.alignment, e.color, e.anchor, e.x, e.y,
+                            e.width, e.height, e.wrapMode, e.visible);
+                    sent(LinkMetrics.Command.CREATE_TEXT, LinkMetrics.textBytes(e.text));
+                    break;
+                case IMAGE:
+                    e.physicalId = canvas.createImage(e.image, e.anchor);
+                    sent(LinkMetrics.Command.CREATE_IMAGE, metrics.imagePayload(e.image));
+                    break;
+                default:
+                    e.physicalId = canvas.createAnimation(e.frames, e.anchor, e.durationMs);
+                    sent(LinkMetrics.Command.CREATE_ANIMATION, frameBytes(e.frames));
+                    break;
+            }
+            if (e.physicalId == -1) {
+                Log.w(MainActivity.TAG, "Could not restore canvas element " + e.id);
+                dirty.remove(e);
+                iterator.remove();
+                continue;
+            }
+            // Text is created at its position and visibility. The rest start at their anchor.
+            if (e.kind != TEXT) {
+                if (e.positionKnown) {
+                    if (e.kind == IMAGE) {
+                        canvas.moveImage(e.physicalId, e.x, e.y);
+                    } else {
+                        canvas.moveAnimation(e.physicalId, e.x, e.y);
+                    }
+                    sent(LinkMetrics.Command.MOVE, 0);
+                }
+                if (!e.visible) {
+                    if (e.kind == IMAGE) {
+                        canvas.setImageVisible(e.physicalId, false);
+                    } else {
+                        canvas.setAnimationVisible(e.physicalId, false);
+                    }
+                    sent(LinkMetrics.Command.SET_VISIBLE, 0);
+                }
+            }
+        }
+
+        canvas.clearBackground();
+        sent(LinkMetrics.Command.CLEAR_BACKGROUND, 0);
+        for (BackgroundOp op : new ArrayList<>(backgroundHistory)) {
+            if (!op.clearsAll) {
+                op.send.run();
+            }
+        }
+        canvas.commit();
+        sent(LinkMetrics.Command.COMMIT, 0);
+        return !backgroundHistoryLost;
+    }
+
+    /**
+     * Sends the pending changes without committing them.
+     */
+    void flush() {
+        for (BackgroundOp op : backgroundOps) {
+            op.send.run();
+            remember(op);
+        }
+        backgroundOps.clear();
+
+        Iterator<Element> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            flush(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void flush(Element e) {
+        if (e.pendingRemove) {
+            switch (e.kind) {
+                case TEXT: canvas.removeText(e.physicalId); break;
+                case IMAGE: canvas.removeImage(e.physicalId); break;
+                default: canvas.removeAnimation(e.physicalId); break;
+            }
+            sent(LinkMetrics.Command.REMOVE, 0);
+            elements.remove(key(e.kind, e.id));
+            return;
+        }
+
+        if (e.pendingText != null) {
+            if (!e.pendingText.equals(e.text)) {
+                canvas.updateText(e.physicalId, e.pendingText);
+                sent(LinkMetrics.Command.UPDATE_TEXT, LinkMetrics.textBytes(e.pendingText));
+                e.text = e.pendingText;
+            } else {
+                droppedCount++;
+            }
+            e.pendingText = null;
+        }
+        if (e.pendingImage != null) {
+            if (e.pendingImage != e.image) {
+                canvas.updateImage(e.physicalId, e.pendingImage);
+                sent(LinkMetrics.Command.UPDATE_IMAGE, metrics.imagePayload(e.pendingImage));
+                e.image = e.pendingImage;
+            } else {
+                droppedCount++;
+            }
+            e.pendingImage = null;
+        }
+        if (e.hasPendingMove) {
+            if (!e.positionKnown || e.x != e.pendingX || e.y != e.pendingY
+                    || !Objects.equals(e.anchor, e.pendingAnchor)) {
+                switch (e.kind) {
+                    case TEXT: canvas.moveText(e.physicalId, e.pendingAnchor, e.pendingX, e.pendingY); break;
+                    case IMAGE: canvas.moveImage(e.physicalId, e.pendingX, e.pendingY); break;
+                    default: canvas.moveAnimation(e.physicalId, e.pendingX, e.pendingY); break;
+                }
+                sent(LinkMetrics.Command.MOVE, 0);
+                e.anchor = e.pendingAnchor;
+                e.x = e.pendingX;
+                e.y = e.pendingY;
+                e.positionKnown = true;
+            } else {
+                droppedCount++;
+            }
+            e.hasPendingMove = false;
+        }
+        if (e.pendingVisible != null) {
+            if (!e.visibilityKnown || e.pendingVisible != e.visible) {
+                switch (e.kind) {
+                    case TEXT: canvas.setTextVisible(e.physicalId, e.pendingVisible); break;
+                    case IMAGE: canvas.setImageVisible(e.physicalId, e.pendingVisible); break;
+                    default: canvas.setAnimationVisible(e.physicalId, e.pendingVisible); break;
+                }
+                sent(LinkMetrics.Command.SET_VISIBLE, 0);
+                e.visible = e.pendingVisible;
+                e.visibilityKnown = true;
+            } else {
+                droppedCount++;
+            }
+            e.pendingVisible = null;
+        }
+    }
+
+    private void remember(BackgroundOp op) {
+        if (op.clearsAll) {
+            backgroundHistory.clear();
+            backgroundHistoryLost = false;
+        } else if (!backgroundHistoryLost) {
+            backgroundHistory.add(op);
+            if (backgroundHistory.size() > MAX_BACKGROUND_HISTORY) {
+                backgroundHistory.clear();
+                backgroundHistoryLost = true;
+            }
+        }
+    }
+
+    private long frameBytes(LVGLImage[] frames) {
+        long bytes = 0;
+        for (LVGLImage frame : frames) {
+            bytes += metrics.imagePayload(frame);
+        }
+        return bytes;
+    }
+
+    private void sent(LinkMetrics.Command command, long payloadBytes) {
+        sentCount++;
+        metrics.record(command, payloadBytes);
+    }
+
+    private void move(int kind, int id, int x, int y) {
+        Element element = pending(kind, id);
+        if (element.hasPendingMove) {
+            droppedCount++;
+        }
+        element.hasPendingMove = true;
+        // Images and animations keep the anchor they were created with
+        element.pendingAnchor = element.anchor;
+        element.pendingX = x;
+        element.pendingY = y;
+    }
+
+    private void setVisible(int kind, int id, boolean visible) {
+        Element element = pending(kind, id);
+        if (element.pendingVisible != null) {
+            droppedCount++;
+        }
+        element.pendingVisible = visible;
+    }
+
+    private void remove(int kind, int id) {
+        Element element = pending(kind, id);
+        // Nothing else recorded for this element matters once it is removed
+        droppedCount += element.pendingCount();
+        element.clearPending();
+        element.pendingRemove = true;
+    }
+
+    // Starts tracking an element the glasses just created. Our id is the same as theirs, unless
+    // that is already taken by an element whose glasses id changed in a restore().
+    private Element track(int kind, int physicalId, boolean visible) {
+        int id = physicalId;
+        while (elements.containsKey(key(kind, id))) {
+            id++;
+        }
+        Element element = new Element(kind, id);
+        element.physicalId = physicalId;
+        element.visible = visible;
+        // Text is created at a known position. Images and animations start at their anchor.
+        element.positionKnown = kind == TEXT;
+        elements.put(key(kind, id), element);
+        return element;
+    }
+
+    private Element pending(int kind, int id) {
+        Element element = elements.get(key(kind, id));
+        if (element == null) {
+            // Created before this batcher existed, so we know nothing about what it shows
+            element = track(kind, id, true);
+            element.positionKnown = false;
+            element.visibilityKnown = false;
+        }
+        dirty.add(element);
+        return element;
+    }
+
+    private static long key(int kind, int id) {
+        return ((long) kind << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    // One background command, and whether it wipes out everything drawn before it
+    private static class BackgroundOp {
+        final boolean clearsAll;
+        final Runnable send;
+
+        BackgroundOp(boolean clearsAll, Runnable send) {
+            this.clearsAll = clearsAll;
+            this.send = send;
+        }
+    }
+
+    // What the glasses show for one element, and what we will change on the next commit
+    private static class Element {
+        final int kind;
+        // Our id, which callers use, and the id the glasses currently use
+        final int id;
+        int physicalId;
+
+        String text;
+        LVGLImage image;
+        Anchor anchor;
+        int x;
+        int y;
+        boolean positionKnown;
+        boolean visible;
+        boolean visibilityKnown = true;
+
+        // What it was created with, so restore() can create it again
+        boolean restorable;
+        TextAlignment alignment;
+        UltraliteColor color;
+        int width;
+        int height;
+        TextWrapMode wrapMode;
+        LVGLImage[] frames;
+        int durationMs;
+
+        String pendingText;
+        LVGLImage pendingImage;
+        boolean hasPendingMove;
+        Anchor pendingAnchor;
+        int pendingX;
+        int pendingY;
+        Boolean pendingVisible;
+        boolean pendingRemove;
+
+        Element(int kind, int id) {
+            this.kind = kind;
+            this.id = id;
+        }
+
+        int pendingCount() {
+            int count = 0;
+            if (pendingText != null) count++;
+            if (pendingImage != null) count++;
+            if (hasPendingMove) count++;
+            if (pendingVisible != null) count++;
+            return count;
+        }
+
+        void clearPending() {
+            pendingText = null;
+            pendingImage = null;
+            hasPendingMove = false;
+            pendingVisible = null;
+        }
+    }
+}
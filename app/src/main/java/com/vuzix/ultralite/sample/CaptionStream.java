@@ -0,0 +1,172 @@
+package com.vuzix.ultralite.sample;
+
+import com.vuzix.ultralite.sample.lvgl.LineLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a streaming front end for captions on the SCROLL layout.
+ *
+ * {@link com.vuzix.ultralite.utils.scroll.LiveText} takes the whole transcript on every update and
+ * lays it out again from the start. Over a long meeting that gets slower and slower. A speech
+ * recognizer really only changes the end of the text: it sends partial hypotheses for the current
+ * utterance, revises them, and eventually sends a final result that never changes again.
+ *
+ * This class accepts exactly those deltas. The finished text is kept in a builder, and only the
+ * unfinished tail is ever replaced. A {@link LineLayout} breaks lines again only around the change,
+ * and we render and send only the lines on screen that are actually different.
+ * Lines that scrolled off the screen long ago are dropped so memory stays flat.
+ *
+ * This class is not thread safe. Feed it from one thread.
+ */
+class CaptionStream {
+    // Once this many lines are off screen and final we drop them from memory
+    private static final int TRIM_LINES = 32;
+
+    private final MeteredUltralite.ScrollView view;
+    private final TextLineRenderer renderer;
+    private final int lowestLine;
+    private final int linesShowing;
+
+    // All text we still keep: finished text followed by the current partial hypothesis
+    private final LineLayout layout;
+    private int partialStart;
+
+    // Line numbers are global; "firstLine" is the global number of line 0 of the layout, since
+    // older lines get trimmed.
+    private int firstLine;
+
+    // How many line positions have been scrolled onto the screen so far
+    private int shownLines;
+
+    private int linesSent;
+
+    /**
+     * @param view The scrolling text view. It is configured by this constructor.
+     * @param renderer Renders each line; its slice size sets the line height and width
+     * @param lowestLine The screen line of the bottom caption line
+     * @param linesShowing How many caption lines are visible at once
+     * @param scrollMs How long the scroll animation takes when a new line is added
+     */
+    public CaptionStream(MeteredUltralite.ScrollView view, TextLineRenderer renderer,
+                         int lowestLine, int linesShowing, int scrollMs) {
+        this.view = view;
+        this.renderer = renderer;
+        this.lowestLine = lowestLine;
+        this.linesShowing = linesShowing;
+        this.layout = new LineLayout(renderer, renderer.getSliceWidth());
+        view.scrollLayoutConfig(renderer.getSliceHeight(), lowestLine, linesShowing, scrollMs, false);
+    }
+
+    /**
+     * Replaces the current partial hypothesis. The recognizer may revise it as often as it likes.
+     */
+    public void setPartial(String hypothesis) {
+        String tail = hypothesis;
+        if (partialStart > 0 && !hypothesis.isEmpty()
+                && !Character.isWhitespace(layout.getText().charAt(partialStart - 1))) {
+            tail = " " + hypothesis;
+        }
+        replaceTail(tail);
+    }
+
+    /**
+     * Replaces the current partial hypothesis with the final result. This text will not change again.
+     */
+    public void commitFinal(String result) {
+        setPartial(result);
+        partialStart = layout.length();
+    }
+
+    /**
+     * @return How many line images have been sent to the glasses
+     */
+    public int getLinesSent() {
+        return linesSent;
+    }
+
+    private void replaceTail(String tail) {
+        CharSequence text = layout.getText();
+        // Skip the part of the new tail that matches what we already have
+        int common = 0;
+        int oldLength = text.length() - partialStart;
+        int limit = Math.min(oldLength, tail.length());
+        while (common < limit && text.charAt(partialStart + common) == tail.charAt(common)) {
+            common++;
+        }
+        if (common == oldLength && common == tail.length()) {
+            return;
+        }
+        int changeOffset = partialStart + common;
+
+        // The line before the change can also change, since a shorter word may now fit on it
+        int relayoutFrom = Math.max(0, layout.getLineForOffset(changeOffset) - 1);
+        List<String> oldLines = new ArrayList<>(Math.max(0, layout.getLineCount() - relayoutFrom));
+        for (int i = relayoutFrom; i < layout.getLineCount(); i++) {
+            oldLines.add(text.subSequence(layout.getLineStart(i), layout.getLineEnd(i)).toString());
+        }
+        int oldCount = firstLine + layout.getLineCount();
+
+        layout.replace(changeOffset, text.length(), tail.substring(common));
+        int newCount = firstLine + layout.getLineCount();
+
+        // Resend the existing screen lines that changed
+        for (int i = relayoutFrom; i < layout.getLineCount(); i++) {
+            int line = firstLine + i;
+            if (line >= shownLines) {
+                break;
+            }
+            int old = i - relayoutFrom;
+            int start = layout.getLineStart(i);
+            int end = layout.getLineEnd(i);
+            if (old < oldLines.size() && oldLines.get(old).contentEquals(text.subSequence(start, end))) {
+                continue;
+            }
+            if (isVisible(line)) {
+                view.sendScrollImage(renderer.render(text, start, end), slotOf(line), false);
+                linesSent++;
+            }
+        }
+        // Blank out lines that disappeared because the hypothesis got shorter
+        for (int line = newCount; line < Math.min(oldCount, shownLines); line++) {
+            if (isVisible(line)) {
+                view.clear(slotOf(line));
+            }
+        }
+        // Scroll in the brand new lines at the bottom
+        for (int line = shownLines; line < newCount; line++) {
+            int i = line - firstLine;
+            view.sendScrollImage(renderer.render(text, layout.getLineStart(i), layout.getLineEnd(i)), lowestLine, true);
+            linesSent++;
+            shownLines++;
+        }
+
+        trim();
+    }
+
+    private boolean isVisible(int line) {
+        int fromBottom = shownLines - 1 - line;
+        return fromBottom >= 0 && fromBottom < linesShowing;
+    }
+
+    private int slotOf(int line) {
+        return lowestLine + (shownLines - 1 - line);
+    }
+
+    // Drops lines that are off the screen and entirely final text
+    private void trim() {
+        int offScreen = Math.max(0, shownLines - linesShowing - firstLine);
+        // Keep the line before the partial text, since a relayout starts there
+        int keepFrom = Math.max(0, layout.getLineForOffset(partialStart) - 1);
+        int drop = Math.min(offScreen, keepFrom);
+        if (drop < TRIM_LINES || drop >= layout.getLineCount()) {
+            return;
+        }
+        int removedChars = layout.getLineStart(drop);
+        // The remaining text starts at a line start, so its lines only shift
+        layout.delete(0, removedChars);
+        partialStart -= removedChars;
+        firstLine += drop;
+    }
+}
@@ -0,0 +1,467 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.vuzix.ultralite.Anchor;
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.TextAlignment;
+import com.vuzix.ultralite.TextWrapMode;
+import com.vuzix.ultralite.UltraliteColor;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * This class sends canvas commands in order of priority, so small updates are not stuck behind
+ * large images.
+ *
+ * The SDK sends commands over Bluetooth in the order they are called. Once a full screen
+ * drawBackground is in that queue, an updateText or a notification sent after it waits until the
+ * whole image has gone out, which takes several seconds on a typical link. This class keeps its
+ * own queues in front of the SDK instead:
+ * <ul>
+ *     <li>{@link Priority#INTERACTIVE} commands, such as text updates, notifications and tap
+ *     feedback, are sent as soon as they are queued.</li>
+ *     <li>{@link Priority#BULK} commands, such as images, are only handed to the SDK while less
+ *     than a window of their bytes is still waiting to be acknowledged by the glasses.</li>
+ * </ul>
+ * So an interactive command never waits for more than one window of image data. A bitmap drawn to
+ * the background is split into strips of rows, each sent as its own positioned drawBackground, so
+ * an interactive command can go out between any two strips.
+ *
+ * Commits keep their meaning: a commit is only sent after every command queued before it with the
+ * same or a higher priority. A bulk commit therefore shows the finished background. An interactive
+ * commit would also show whichever strips of a background have arrived so far, so by default it is
+ * held back while a bitmap is partly sent, and goes out right after its last strip. Other
+ * interactive commands still go ahead of the strips, they just are not shown until then. Call
+ * {@link #setProgressive(boolean)} to send interactive commits right away instead, and let the
+ * background show up strip by strip, much like a large picture loading on a web page.
+ *
+ * The scheduler follows the control state of its {@link GlassesSession}. Once control is lost,
+ * queued commands are dropped, the futures of dropped commands and unconfirmed commits fail, and
+ * new commands fail right away until control comes back.
+ *
+ * Every command is sent from one worker thread, which is the only thread that may use the canvas
+ * while a scheduler is running. Don't mix it with a {@link CanvasBatcher} on another thread. The
+ * methods of this class can be called from any thread.
+ */
+class CommandScheduler {
+    private static final String TAG = "CommandScheduler";
+
+    enum Priority {
+        INTERACTIVE,
+        BULK
+    }
+
+    // About half a second of data on a typical link. Interactive commands wait for at most this.
+    static final int DEFAULT_WINDOW_BYTES = 24 * 1024;
+    // A strip of a full screen 2-bit background is 25 rows
+    static final int DEFAULT_STRIP_BYTES = 4 * 1024;
+
+    private final MeteredUltralite link;
+    private final MeteredUltralite.CanvasView canvas;
+    private final GlassesSession session;
+    private final GlassesSession.ControlListener controlListener = this::onControlChanged;
+    private final int windowBytes;
+    private final int stripBytes;
+
+    // Guarded by "queues"
+    private final Object queues = new Object();
+    private final ArrayDeque<Op> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Op> bulk = new ArrayDeque<>();
+    // Commits handed to the SDK that the glasses have not confirmed yet
+    private final List<CompletableFuture<?>> unconfirmed = new ArrayList<>();
+    private long inFlightBytes;
+    // Bumped whenever the window is reset, so acknowledgements for dropped bytes are ignored
+    private int windowGeneration;
+    // Bitmaps with some of their strips sent and some still queued
+    private int partialBitmaps;
+    private boolean progressive;
+    private boolean closed;
+
+    public CommandScheduler(MeteredUltralite link, GlassesSession session) {
+        this(link, session, DEFAULT_WINDOW_BYTES, DEFAULT_STRIP_BYTES);
+    }
+
+    /**
+     * @param link The SDK instance to send through
+     * @param session The session whose control state we follow
+     * @param windowBytes How many bytes of bulk commands may wait in the Bluetooth queue. Smaller
+     *                    keeps interactive commands faster, larger keeps the link busier.
+     * @param stripBytes About how big each strip of a background bitmap is
+     */
+    public CommandScheduler(MeteredUltralite link, GlassesSession session, int windowBytes, int stripBytes) {
+        if (windowBytes < 1 || stripBytes < 1) {
+            throw new IllegalArgumentException("Window and strip sizes must be positive");
+        }
+        this.link = link;
+        this.canvas = link.getCanvas();
+        this.session = session;
+        this.windowBytes = windowBytes;
+        this.stripBytes = stripBytes;
+        session.addControlListener(controlListener);
+        new Thread(this::sendLoop, TAG).start();
+    }
+
+    /**
+     * @param progressive True to send interactive commits while a bitmap is partly sent, showing
+     *                    the strips that have arrived so far. False by default.
+     */
+    public void setProgressive(boolean progressive) {
+        synchronized (queues) {
+            this.progressive = progressive;
+            queues.notifyAll();
+        }
+    }
+
+    /**
+     * @return A future with the id of the new text, or -1 if the canvas has no free text
+     */
+    public CompletableFuture<Integer> createText(String text, TextAlignment alignment, UltraliteColor color,
+                                                 Anchor anchor, int x, int y, int width, int height,
+                                                 TextWrapMode wrapMode, boolean visible) {
+        return call(Priority.INTERACTIVE, 0, () ->
+                canvas.createText(text, alignment, color, anchor, x, y, width, height, wrapMode, visible));
+    }
+
+    public void updateText(int id, String text) {
+        submit(Priority.INTERACTIVE, () -> canvas.updateText(id, text));
+    }
+
+    public void moveText(int id, Anchor anchor, int x, int y) {
+        submit(Priority.INTERACTIVE, () -> canvas.moveText(id, anchor, x, y));
+    }
+
+    public void setTextVisible(int id, boolean visible) {
+        submit(Priority.INTERACTIVE, () -> canvas.setTextVisible(id, visible));
+    }
+
+    public void removeText(int id) {
+        submit(Priority.INTERACTIVE, () -> canvas.removeText(id));
+    }
+
+    public void sendNotification(String title, String message) {
+        submit(Priority.INTERACTIVE, () -> link.sendNotification(title, message));
+    }
+
+    /**
+     * @param bytes The payload size of the image, see {@link ImageCache#estimateBytes}. The window
+     *              is paced by it, so it must be known.
+     */
+    public void updateImage(int id, LVGLImage image, long bytes) {
+        submit(Priority.BULK, requireBytes(bytes), () -> canvas.updateImage(id, image, bytes));
+    }
+
+    /**
+     * Draws an image that was already converted. It cannot be split, so it goes out in one piece.
+     *
+     * @param bytes The payload size of the image, see {@link ImageCache#estimateBytes}
+     */
+    public void drawBackground(LVGLImage image, long bytes, int x, int y) {
+        submit(Priority.BULK, requireBytes(bytes), () -> canvas.drawBackground(image, bytes, x, y));
+    }
+
+    /**
+     * Draws a bitmap to the background in strips of rows. Each strip is converted just before it
+     * is sent, so the caller does not wait for the conversion either.
+     *
+     * @param bitmap The image. Don't change it until a later bulk commit has completed.
+     * @param x Left edge on the screen
+     * @param y Top edge on the screen
+     */
+    public void drawBackground(Bitmap bitmap, int x, int y) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int rows = Math.max(1, stripBytes / IndexedPacker.rowBytes(width, IndexedPacker.BPP_2));
+        StripGroup group = new StripGroup((height + rows - 1) / rows);
+        synchronized (queues) {
+            if (!accepting()) {
+                return;
+            }
+            for (int top = 0; top < height; top += rows) {
+                int stripTop = top;
+                int stripHeight = Math.min(rows, height - top);
+                long bytes = IndexedPacker.packedSize(width, stripHeight, IndexedPacker.BPP_2);
+                Op op = new Op(bytes, false, group, null, () -> {
+                    Bitmap strip = Bitmap.createBitmap(bitmap, 0, stripTop, width, stripHeight);
+                    LVGLImage image = LVGLImage.fromBitmap(strip, LVGLImage.CF_INDEXED_2_BIT);
+                    LinkMetrics.registerImage(image, bytes);
+                    canvas.drawBackground(image, bytes, x, y + stripTop);
+                });
+                bulk.addLast(op);
+            }
+            queues.notifyAll();
+        }
+    }
+
+    /**
+     * Clears part of the background. This is queued with the bulk commands, since it must not
+     * overtake a drawBackground queued before it.
+     */
+    public void clearBackgroundRect(int x, int y, int width, int height) {
+        submit(Priority.BULK, () -> canvas.clearBackgroundRect(x, y, width, height));
+    }
+
+    /**
+     * Commits everything queued before this call with the given priority or a higher one.
+     *
+     * @return A future that completes when the glasses have received the commit, or fails if the
+     *         commit was dropped
+     */
+    public CompletableFuture<Void> commit(Priority priority) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue(priority, new Op(0, true, null, future, () -> {
+            synchronized (queues) {
+                // Control may have been lost after this was taken from the queue
+                if (!session.isControlled()) {
+                    future.completeExceptionally(new IllegalStateException("Lost control of the glasses"));
+                    return;
+                }
+                unconfirmed.add(future);
+            }
+            canvas.commit(() -> {
+                synchronized (queues) {
+                    unconfirmed.remove(future);
+                }
+                future.complete(null);
+            });
+        }));
+        return future;
+    }
+
+    /**
+     * Runs any other SDK call in its place in the queue, such as a createText whose id we need.
+     *
+     * @param bytes About how many bytes the call sends. Only bulk calls use this.
+     * @return A future with the result of the call, which fails if the call was dropped
+     */
+    public <T> CompletableFuture<T> call(Priority priority, long bytes, Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(priority, new Op(bytes, false, null, future, () -> {
+            try {
+                future.complete(call.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+
+    public void submit(Priority priority, Runnable command) {
+        submit(priority, 0, command);
+    }
+
+    /**
+     * Queues a command. While we don't have control of the glasses, it is dropped instead.
+     */
+    public void submit(Priority priority, long bytes, Runnable command) {
+        enqueue(priority, new Op(bytes, false, null, null, command));
+    }
+
+    /**
+     * @return How many commands are queued and not handed to the SDK yet
+     */
+    public int getQueuedCount() {
+        synchronized (queues) {
+            return interactive.size() + bulk.size();
+        }
+    }
+
+    /**
+     * Stops the worker thread. Queued commands are dropped, and their futures fail.
+     */
+    public void close() {
+        session.removeControlListener(controlListener);
+        List<CompletableFuture<?>> dropped;
+        synchronized (queues) {
+            closed = true;
+            dropped = dropAll();
+            queues.notifyAll();
+        }
+        fail(dropped, "Scheduler is closed");
+    }
+
+    private void onControlChanged(boolean controlled) {
+        if (controlled) {
+            return;
+        }
+        // Nothing queued can reach the glasses now, and the acknowledgements for what is in the
+        // Bluetooth queue may never come. Start over with an empty window once control is back.
+        List<CompletableFuture<?>> dropped;
+        synchronized (queues) {
+            dropped = dropAll();
+            inFlightBytes = 0;
+            windowGeneration++;
+            queues.notifyAll();
+        }
+        fail(dropped, "Lost control of the glasses");
+    }
+
+    // Called with the "queues" lock held. Returns the futures to fail once the lock is released.
+    private List<CompletableFuture<?>> dropAll() {
+        List<CompletableFuture<?>> dropped = new ArrayList<>(unconfirmed);
+        unconfirmed.clear();
+        for (Op op : interactive) {
+            if (op.future != null) {
+                dropped.add(op.future);
+            }
+        }
+        for (Op op : bulk) {
+            if (op.future != null) {
+                dropped.add(op.future);
+            }
+        }
+        interactive.clear();
+        bulk.clear();
+        partialBitmaps = 0;
+        return dropped;
+    }
+
+    // Futures run their callbacks right here, so this must not hold the lock
+    private static void fail(List<CompletableFuture<?>> futures, String reason) {
+        for (CompletableFuture<?> future : futures) {
+            future.completeExceptionally(new IllegalStateException(reason));
+        }
+    }
+
+    // Images set the pace of the bulk queue. One we do not know the size of would go out as if it
+    // were free, and fill the Bluetooth queue behind the window's back.
+    private static long requireBytes(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Image size must be known to pace it, got " + bytes);
+        }
+        return bytes;
+    }
+
+    private void enqueue(Priority priority, Op op) {
+        synchronized (queues) {
+            if (accepting()) {
+                if (priority == Priority.INTERACTIVE) {
+                    // Interactive commands are small and never wait for the window, so their size
+                    // is ignored
+                    interactive.addLast(new Op(0, op.commit, null, op.future, op.command));
+                } else {
+                    bulk.addLast(op);
+                }
+                queues.notifyAll();
+                return;
+            }
+        }
+        if (op.future != null) {
+            op.future.completeExceptionally(new IllegalStateException("Lost control of the glasses"));
+        }
+    }
+
+    // Called with the "queues" lock held. False if commands are dropped for lack of control.
+    private boolean accepting() {
+        if (closed) {
+            throw new IllegalStateException("Scheduler is closed");
+        }
+        return session.isControlled();
+    }
+
+    private void sendLoop() {
+        while (true) {
+            Op op;
+            int generation;
+            synchronized (queues) {
+                op = next();
+                while (op == null && !closed) {
+                    try {
+                        queues.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    op = next();
+                }
+                if (closed) {
+                    return;
+                }
+                if (op.bytes > 0) {
+                    inFlightBytes += op.bytes;
+                }
+                if (op.group != null) {
+                    if (op.group.unsent == op.group.size) {
+                        partialBitmaps++;
+                    }
+                    if (--op.group.unsent == 0) {
+                        partialBitmaps--;
+                    }
+                }
+                generation = windowGeneration;
+            }
+            try {
+                op.command.run();
+            } catch (RuntimeException e) {
+                // One bad command must not stop everything queued behind it
+                Log.e(TAG, "Command failed", e);
+            }
+            long sentBytes = op.bytes;
+            if (sentBytes > 0) {
+                // The glasses handle the queue in order, so this tells us the command has left it
+                link.requestAcknowledgement(() -> {
+                    synchronized (queues) {
+                        if (generation == windowGeneration) {
+                            inFlightBytes -= sentBytes;
+                            queues.notifyAll();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    // Called with the "queues" lock held. Returns null if nothing may be sent yet.
+    private Op next() {
+        // A commit now would show a half drawn background
+        boolean holdCommits = partialBitmaps > 0 && !progressive;
+        for (Iterator<Op> it = interactive.iterator(); it.hasNext(); ) {
+            Op op = it.next();
+            if (!(op.commit && holdCommits)) {
+                it.remove();
+                return op;
+            }
+        }
+        Op op = bulk.peekFirst();
+        // A command bigger than the whole window still goes out once the window is empty
+        if (op != null && (inFlightBytes == 0 || inFlightBytes + op.bytes <= windowBytes)) {
+            return bulk.removeFirst();
+        }
+        return null;
+    }
+
+    private static class Op {
+        final long bytes;
+        final boolean commit;
+        // The bitmap this is a strip of, or null
+        final StripGroup group;
+        // Failed if the command is dropped, or null
+        final CompletableFuture<?> future;
+        final Runnable command;
+
+        Op(long bytes, boolean commit, StripGroup group, CompletableFuture<?> future, Runnable command) {
+            this.bytes = bytes;
+            this.commit = commit;
+            this.group = group;
+            this.future = future;
+            this.command = command;
+        }
+    }
+
+    // The strips of one bitmap. Guarded by "queues".
+    private static class StripGroup {
+        final int size;
+        int unsent;
+
+        StripGroup(int size) {
+            this.size = size;
+            this.unsent = size;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Bitmap;
+
+import com.vuzix.ultralite.Anchor;
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.sample.lvgl.AnimationCompiler;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+import com.vuzix.ultralite.sample.lvgl.PayloadAnalyzer;
+
+/**
+ * This class sends an animation as one still image plus a small animation of the part that
+ * changes.
+ *
+ * createAnimation uploads every frame in full, even when the frames only differ in a small area,
+ * such as the eye of our wink animation. An {@link AnimationCompiler} finds the box that holds
+ * every change. The first frame is sent once as a canvas image, and only that box is animated on
+ * top of it, so each extra frame costs a few bytes instead of a full image.
+ *
+ * Both parts are placed by their top left corner so they line up exactly. This uses two of the
+ * image slots of the canvas: one for the still image and one for the animation.
+ */
+class CompiledAnimation {
+    private final LVGLImage still;
+    private final int stillLeft;
+    private final int stillTop;
+    private final LVGLImage[] frames;
+    private final AnimationCompiler.Plan plan;
+
+    private int stillId = -1;
+    private int animationId = -1;
+
+    private CompiledAnimation(LVGLImage still, int stillLeft, int stillTop, LVGLImage[] frames,
+                              AnimationCompiler.Plan plan) {
+        this.still = still;
+        this.stillLeft = stillLeft;
+        this.stillTop = stillTop;
+        this.frames = frames;
+        this.plan = plan;
+    }
+
+    /**
+     * Splits the frames into the still part and the changing part, and converts both.
+     *
+     * @param bitmaps The frames, all the same size
+     */
+    static CompiledAnimation compile(Bitmap[] bitmaps) {
+        int width = bitmaps[0].getWidth();
+        int height = bitmaps[0].getHeight();
+        int[][] pixels = new int[bitmaps.length][];
+        PayloadAnalyzer.Result content = null;
+        for (int i = 0; i < bitmaps.length; i++) {
+            if (bitmaps[i].getWidth() != width || bitmaps[i].getHeight() != height) {
+                throw new IllegalArgumentException("Animation frames differ in size");
+            }
+            pixels[i] = new int[width * height];
+            bitmaps[i].getPixels(pixels[i], 0, width, 0, 0, width, height);
+            // Everything any frame shows, which is all the still image needs to cover
+            PayloadAnalyzer.Result result = PayloadAnalyzer.analyze(pixels[i], width, height,
+                    PayloadMinimizer.LINE_ART_GRAY_TOLERANCE, PayloadAnalyzer.Align.FREE, PayloadAnalyzer.Align.FREE);
+            content = content == null ? result : content.union(result);
+        }
+        int colorFormat = content.bitsPerPixel == IndexedPacker.BPP_1
+                ? LVGLImage.CF_INDEXED_1_BIT : LVGLImage.CF_INDEXED_2_BIT;
+        AnimationCompiler.Plan plan = AnimationCompiler.compile(pixels, width, height, content.bitsPerPixel);
+
+        LVGLImage still = convert(Bitmap.createBitmap(bitmaps[0], content.left, content.top,
+                content.width, content.height), colorFormat);
+        LVGLImage[] frames = new LVGLImage[bitmaps.length];
+        for (int i = 0; i < bitmaps.length; i++) {
+            frames[i] = convert(Bitmap.createBitmap(bitmaps[i], plan.left, plan.top,
+                    plan.changeWidth, plan.changeHeight), colorFormat);
+        }
+        return new CompiledAnimation(still, content.left, content.top, frames, plan);
+    }
+
+    /**
+     * Creates the still image and the animation on the canvas.
+     *
+     * @param x Left edge of the full frame on the screen
+     * @param y Top edge of the full frame on the screen
+     * @param durationMs How long each frame shows
+     * @return False if the canvas has no free image slots
+     */
+    public boolean show(CanvasBatcher canvas, int x, int y, int durationMs) {
+        stillId = canvas.createImage(still, Anchor.TOP_LEFT);
+        if (stillId == -1) {
+            return false;
+        }
+        // Created second so it is drawn on top of the still image
+        animationId = canvas.createAnimation(frames, Anchor.TOP_LEFT, durationMs);
+        if (animationId == -1) {
+            canvas.removeImage(stillId);
+            stillId = -1;
+            return false;
+        }
+        move(canvas, x, y);
+        return true;
+    }
+
+    /**
+     * Moves the full frame so its top left corner is at the given position.
+     */
+    public void move(CanvasBatcher canvas, int x, int y) {
+        canvas.moveImage(stillId, x + stillLeft, y + stillTop);
+        canvas.moveAnimation(animationId, x + plan.left, y + plan.top);
+    }
+
+    public void setVisible(CanvasBatcher canvas, boolean visible) {
+        canvas.setImageVisible(stillId, visible);
+        canvas.setAnimationVisible(animationId, visible);
+    }
+
+    public void remove(CanvasBatcher canvas) {
+        canvas.removeAnimation(animationId);
+        canvas.removeImage(stillId);
+        stillId = -1;
+        animationId = -1;
+    }
+
+    /**
+     * @return Where the frames differ, and what compiling saved
+     */
+    public AnimationCompiler.Plan getPlan() {
+        return plan;
+    }
+
+    private static LVGLImage convert(Bitmap bitmap, int colorFormat) {
+        LVGLImage image = LVGLImage.fromBitmap(bitmap, colorFormat);
+        LinkMetrics.registerImage(image, ImageCache.estimateBytes(bitmap.getWidth(), bitmap.getHeight(), colorFormat));
+        return image;
+    }
+}
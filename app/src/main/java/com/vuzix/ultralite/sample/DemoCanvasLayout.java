@@ -1,6 +1,10 @@
 package com.vuzix.ultralite.sample;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Point;
 import android.util.Log;
 
@@ -12,6 +16,10 @@ import com.vuzix.ultralite.TextAlignment;
 import com.vuzix.ultralite.TextWrapMode;
 import com.vuzix.ultralite.UltraliteColor;
 import com.vuzix.ultralite.UltraliteSDK;
+import com.vuzix.ultralite.sample.lvgl.Ditherer;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This demonstrates the use of a CANVAS layout
@@ -28,13 +36,26 @@ public class DemoCanvasLayout {
         demoTextFields(context, demoActivityViewModel, ultralite);
         demoImages(context, demoActivityViewModel, ultralite);
         demoBackgroundDrawing(context, demoActivityViewModel, ultralite);
+        demoStreamingBackground(context, demoActivityViewModel, ultralite);
+        demoDashboard(demoActivityViewModel);
+    }
+
+    /**
+     * Converts the images this demo starts with ahead of time, see {@link PayloadStore}.
+     */
+    static void warmUp(Context context) {
+        MainActivity.loadMinimizedImage(context, R.drawable.rocket, Anchor.CENTER);
+        MainActivity.loadMinimizedImage(context, R.drawable.poop, Anchor.CENTER);
     }
 
     private static void demoTextFields(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
+        // The batcher holds our changes until commit() and only sends the final state of each
+        // element, so overriding a change within the same frame costs nothing on the link.
+        CanvasBatcher canvas = demoActivityViewModel.getLink().newCanvasBatcher();
         // Note, the caller already has requested control, and is observing the state of the glasses
-        ultralite.setLayout(Layout.CANVAS, 0, true);
+        demoActivityViewModel.getLink().setLayout(Layout.CANVAS, 0, true);
 
-        int textId = ultralite.getCanvas().createText("This is a canvas with a text field.", TextAlignment.AUTO, UltraliteColor.WHITE, Anchor.CENTER, 0, 0, 640, -1, TextWrapMode.WRAP, true);
+        int textId = canvas.createText("This is a canvas with a text field.", TextAlignment.AUTO, UltraliteColor.WHITE, Anchor.CENTER, 0, 0, 640, -1, TextWrapMode.WRAP, true);
         if (textId == -1) {
             throw new MainActivity.Stop(true);
         }
@@ -45,113 +66,125 @@ public class DemoCanvasLayout {
 
         // Please note this simple example is not requesting an acknowledgement from the glasses
         // which would be critical for synchronizing a phone display to the glasses display.
-        ultralite.getCanvas().commit();
+        canvas.commit();
         demoActivityViewModel.pause(5000);
 
-        ultralite.getCanvas().updateText(textId, "The text can be changed.");
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "The text can be changed.");
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "The text can be moved.");
-        ultralite.getCanvas().moveText(textId, Anchor.TOP_CENTER, 0, 0);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "The text can be moved.");
+        canvas.moveText(textId, Anchor.TOP_CENTER, 0, 0);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "The text can be made invisible...");
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "The text can be made invisible...");
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().setTextVisible(textId, false);
-        ultralite.getCanvas().commit();
+        canvas.setTextVisible(textId, false);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "and visible again...");
-        ultralite.getCanvas().setTextVisible(textId, true);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "and visible again...");
+        canvas.setTextVisible(textId, true);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "If requested, the text can wrap if it grows too large to show on a single line.");
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "If requested, the text can wrap if it grows too large to show on a single line.");
+        canvas.commit();
         demoActivityViewModel.pause(5000);
 
         // When we're done, this frees the object and removes it from the screen
-        ultralite.getCanvas().removeText(textId);
-        ultralite.getCanvas().commit();
+        canvas.removeText(textId);
+        canvas.commit();
     }
 
     private static void demoImages(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
-        int textId = ultralite.getCanvas().createText("You can create image objects.", TextAlignment.AUTO, UltraliteColor.WHITE, Anchor.TOP_CENTER, 0, 0, 640, 100, TextWrapMode.WRAP, true);
+        CanvasBatcher canvas = demoActivityViewModel.getLink().newCanvasBatcher();
+        int textId = canvas.createText("You can create image objects.", TextAlignment.AUTO, UltraliteColor.WHITE, Anchor.TOP_CENTER, 0, 0, 640, 100, TextWrapMode.WRAP, true);
         if (textId == -1) {
             throw new MainActivity.Stop(true);
         }
-        final boolean useSingleBit = true; // We can use single-bit images to reduce transfer time
-        LVGLImage rocket = MainActivity.loadLVGLImage(context, R.drawable.rocket, useSingleBit);
-        int imageId = ultralite.getCanvas().createImage(rocket, Anchor.CENTER);
+        // The minimizer picks single-bit where it looks the same, and crops the empty borders, to
+        // reduce transfer time. The crop keeps the image centered on its anchor.
+        LVGLImage rocket = MainActivity.loadMinimizedImage(context, R.drawable.rocket, Anchor.CENTER);
+        int imageId = canvas.createImage(rocket, Anchor.CENTER);
         if (imageId == -1) {
             throw new MainActivity.Stop(true);
         }
-        ultralite.getCanvas().commit();
+        canvas.commit();
         demoActivityViewModel.pause(5000);
 
-        ultralite.getCanvas().updateText(textId, "You can change the image.");
-        ultralite.getCanvas().updateImage(imageId, MainActivity.loadLVGLImage(context, R.drawable.poop, useSingleBit));
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can change the image.");
+        canvas.updateImage(imageId, MainActivity.loadMinimizedImage(context, R.drawable.poop, Anchor.CENTER));
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "You can move the image.");
-        ultralite.getCanvas().moveImage(imageId, 100, 100);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can move the image.");
+        canvas.moveImage(imageId, 100, 100);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "You can hide an image.");
-        ultralite.getCanvas().setImageVisible(imageId, false);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can hide an image.");
+        canvas.setImageVisible(imageId, false);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "You can show an image.");
-        ultralite.getCanvas().setImageVisible(imageId, true);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can show an image.");
+        canvas.setImageVisible(imageId, true);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().removeImage(imageId);
-        ultralite.getCanvas().updateText(textId, "Animations are possible too.");
-
-        LVGLImage happy = MainActivity.loadLVGLImage(context, R.drawable.happy, useSingleBit);
-        LVGLImage wink = MainActivity.loadLVGLImage(context, R.drawable.wink, useSingleBit);
-        int animationId = ultralite.getCanvas().createAnimation(new LVGLImage[]{happy, wink}, Anchor.CENTER, 1000);
-        if (animationId == -1) {
+        canvas.removeImage(imageId);
+        canvas.updateText(textId, "Animations are possible too.");
+
+        // The happy and wink frames only differ around one eye. Rather than sending both frames
+        // in full, the compiled animation sends the face once as an image and only animates the
+        // eye on top of it.
+        Bitmap happy = MainActivity.loadBitmap(context, R.drawable.happy);
+        CompiledAnimation animation = CompiledAnimation.compile(new Bitmap[]{
+                happy,
+                MainActivity.loadBitmap(context, R.drawable.wink)
+        });
+        Log.d(MainActivity.TAG, "Compiled animation: " + animation.getPlan());
+        // Both parts are placed by their top left corner, so center the face on the screen
+        int left = (UltraliteSDK.Canvas.WIDTH - happy.getWidth()) / 2;
+        int top = (UltraliteSDK.Canvas.HEIGHT - happy.getHeight()) / 2;
+        if (!animation.show(canvas, left, top, 1000)) {
             throw new MainActivity.Stop(true);
         }
-        ultralite.getCanvas().commit();
+        canvas.commit();
         demoActivityViewModel.pause(5000);
 
-        ultralite.getCanvas().updateText(textId, "You can move animations.");
-        ultralite.getCanvas().moveAnimation(animationId, 400, 300);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can move animations.");
+        animation.move(canvas, left + 130, top + 110);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "You can hide animations.");
-        ultralite.getCanvas().setAnimationVisible(animationId, false);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can hide animations.");
+        animation.setVisible(canvas, false);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().updateText(textId, "You can show animations.");
-        ultralite.getCanvas().setAnimationVisible(animationId, true);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can show animations.");
+        animation.setVisible(canvas, true);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().removeAnimation(animationId);
-        ultralite.getCanvas().removeText(textId);
-        ultralite.getCanvas().commit();
+        animation.remove(canvas);
+        canvas.removeText(textId);
+        canvas.commit();
     }
 
     private static void demoBackgroundDrawing(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
-        int textId = ultralite.getCanvas().createText("You can create image objects.", TextAlignment.AUTO, UltraliteColor.WHITE, Anchor.TOP_CENTER, 0, 0, 640, 100, TextWrapMode.WRAP, true);
+        CanvasBatcher canvas = demoActivityViewModel.getLink().newCanvasBatcher();
+        int textId = canvas.createText("You can create image objects.", TextAlignment.AUTO, UltraliteColor.WHITE, Anchor.TOP_CENTER, 0, 0, 640, 100, TextWrapMode.WRAP, true);
         final boolean useSingleBit = false;  // The background does not allow single-bit images
         if (textId == -1) {
             throw new MainActivity.Stop(true);
         }
-        ultralite.getCanvas().updateText(textId, "You can repeat an image across the background layer with a single command.");
+        canvas.updateText(textId, "You can repeat an image across the background layer with a single command.");
         Point[] coordinates = {
                 new Point(0, 100),
                 new Point(100, 150),
@@ -160,32 +193,160 @@ public class DemoCanvasLayout {
                 new Point(400, 300),
                 new Point(500, 350)
         };
-        ultralite.getCanvas().drawBackground(MainActivity.loadLVGLImage(context, R.drawable.rocket, useSingleBit), coordinates);
-        ultralite.getCanvas().commit();
+        // The minimized image loses its empty borders, so shift every copy by the crop offset
+        PayloadMinimizer.Minimized rocket = PayloadMinimizer.forBackground(MainActivity.loadBitmap(context, R.drawable.rocket));
+        for (Point point : coordinates) {
+            point.offset(rocket.offsetX, rocket.offsetY);
+        }
+        canvas.drawBackground(rocket.image, coordinates);
+        canvas.commit();
         demoActivityViewModel.pause(5000);
 
-        ultralite.getCanvas().updateText(textId, "You can clear areas of the background layer.");
-        ultralite.getCanvas().clearBackgroundRect(100, 100, 440, 280, UltraliteColor.WHITE);
-        ultralite.getCanvas().commit();
+        canvas.updateText(textId, "You can clear areas of the background layer.");
+        canvas.clearBackgroundRect(100, 100, 440, 280, UltraliteColor.WHITE);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().clearBackgroundRect(100, 100, 440, 280);
-        ultralite.getCanvas().commit();
+        canvas.clearBackgroundRect(100, 100, 440, 280);
+        canvas.commit();
         demoActivityViewModel.pause();
 
-        ultralite.getCanvas().clearBackground();
-        ultralite.getCanvas().updateText(textId, "Finally, we're going to send a full screen image to the glasses.");
-        ultralite.getCanvas().commit();
+        // The compositor keeps a copy of the background so later frames only send what changed.
+        // Since we are clearing the background, it starts out knowing the screen is all black.
+        BackgroundCompositor compositor = new BackgroundCompositor(canvas);
+        canvas.clearBackground();
+        compositor.backgroundCleared();
+        canvas.updateText(textId, "Finally, we're going to send a full screen image to the glasses.");
+        canvas.commit();
         demoActivityViewModel.pause(4000);
 
-        ultralite.getCanvas().removeText(textId);
+        canvas.removeText(textId);
 
-        LVGLImage bigImage = MainActivity.loadLVGLImage(context, R.drawable.ultralite_large_ori, useSingleBit);
-        ultralite.getCanvas().drawBackground(bigImage, 0, 0);
+        // Almost every tile differs from the black screen, so this goes out as one full image. If
+        // we drew another frame that only changed a few areas, only those tiles would be sent.
+        // Dithering the photo first keeps its shading instead of rounding it to four flat grays.
+        DitheredConverter converter = new DitheredConverter(Ditherer.Mode.FLOYD_STEINBERG, useSingleBit);
+        compositor.draw(converter.dither(MainActivity.loadBitmap(context, R.drawable.ultralite_large_ori)));
 
-        // This form of commit executes a callback when the glasses have received the commit. Since
-        // we just sent a large image, this allows us to synchronize the phone UI to the glasses.
-        ultralite.getCanvas().commit(() -> Log.d("MainActivity", "full screen image commit is done!"));
+        // This form of commit gives us a future that completes when the glasses have received the
+        // commit. Since we just sent a large image, this allows us to synchronize the phone UI to
+        // the glasses.
+        demoActivityViewModel.getFutures().commit(canvas)
+                .thenRun(() -> Log.d("MainActivity", "full screen image commit is done!"));
         demoActivityViewModel.pause(5000);
+        Log.d(MainActivity.TAG, "Photo background: " + compositor.getLastPlan());
+
+        // A form is mostly the same few tiles: empty cells, grid lines and check boxes. Forget the
+        // photo so this is sent as a whole frame. The compositor uploads each repeated tile once and
+        // stamps it at all its positions, instead of sending the full image.
+        compositor.invalidate();
+        compositor.draw(drawForm());
+        demoActivityViewModel.getFutures().commit(canvas)
+                .thenRun(() -> Log.d(MainActivity.TAG, "Form background: " + compositor.getLastPlan()));
+        demoActivityViewModel.pause(5000);
+    }
+
+    // A full-screen checklist: a white title bar, then rows with a check box, a label and a divider
+    private static Bitmap drawForm() {
+        final int rowHeight = 48;
+        Bitmap form = Bitmap.createBitmap(UltraliteSDK.Canvas.WIDTH, UltraliteSDK.Canvas.HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas drawing = new Canvas(form);
+        drawing.drawColor(Color.BLACK);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(28);
+        paint.setColor(Color.WHITE);
+        drawing.drawRect(0, 0, UltraliteSDK.Canvas.WIDTH, rowHeight, paint);
+        paint.setColor(Color.BLACK);
+        drawing.drawText("Preflight checklist", 16, 34, paint);
+        for (int row = 1; row * rowHeight < UltraliteSDK.Canvas.HEIGHT; row++) {
+            int top = row * rowHeight;
+            paint.setColor(Color.WHITE);
+            // A hollow check box, drawn as its four sides so it lines up with the tiles in every row
+            drawing.drawRect(16, top + 8, 48, top + 10, paint);
+            drawing.drawRect(16, top + 38, 48, top + 40, paint);
+            drawing.drawRect(16, top + 8, 18, top + 40, paint);
+            drawing.drawRect(46, top + 8, 48, top + 40, paint);
+            drawing.drawText("Item " + row, 64, top + 34, paint);
+            paint.setColor(Color.GRAY);
+            drawing.drawRect(0, top + rowHeight - 1, UltraliteSDK.Canvas.WIDTH, top + rowHeight, paint);
+        }
+        return form;
+    }
+
+    private static void demoStreamingBackground(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
+        // The scheduler sends the new background in strips, and lets the text updates below jump
+        // ahead of them. Sent in one piece, each update would wait for the whole image. We want to
+        // watch the image arrive, so interactive commits may show it half drawn.
+        CommandScheduler scheduler = new CommandScheduler(demoActivityViewModel.getLink(), demoActivityViewModel.getSession());
+        scheduler.setProgressive(true);
+        try {
+            int textId = UltraliteFutures.await(scheduler.createText("", TextAlignment.AUTO, UltraliteColor.WHITE,
+                    Anchor.BOTTOM_CENTER, 0, 0, 640, 60, TextWrapMode.WRAP, true));
+            if (textId == -1) {
+                throw new MainActivity.Stop(true);
+            }
+
+            DitheredConverter converter = new DitheredConverter(Ditherer.Mode.ORDERED, false);
+            scheduler.drawBackground(converter.dither(MainActivity.loadBitmap(context, R.drawable.ultralite_large_ori)), 0, 0);
+            CompletableFuture<Void> done = scheduler.commit(CommandScheduler.Priority.BULK);
+
+            // Each of these shows up right away, along with as much of the image as has arrived
+            int ticks = 0;
+            while (!done.isDone()) {
+                scheduler.updateText(textId, "Text stays responsive while a big image streams in: " + ++ticks);
+                scheduler.commit(CommandScheduler.Priority.INTERACTIVE);
+                demoActivityViewModel.pause(250);
+            }
+            scheduler.updateText(textId, "The image arrived after " + ticks + " updates.");
+            scheduler.commit(CommandScheduler.Priority.INTERACTIVE);
+            demoActivityViewModel.pause(4000);
+
+            scheduler.removeText(textId);
+            UltraliteFutures.await(scheduler.commit(CommandScheduler.Priority.INTERACTIVE));
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    private static void demoDashboard(MainActivity.DemoActivityViewModel demoActivityViewModel) throws MainActivity.Stop {
+        final int columns = 4;
+        final int rows = 5;
+        final int fontSize = 30;
+        CanvasBatcher canvas = demoActivityViewModel.getLink().newCanvasBatcher();
+        canvas.clearBackground();
+
+        // Twenty widgets do not fit the 7 text slots of the canvas. The pool gives the slots to the
+        // widgets that keep changing, and draws the others into the background.
+        ElementPool pool = new ElementPool(canvas, fontSize);
+        int width = UltraliteSDK.Canvas.WIDTH / columns;
+        int height = UltraliteSDK.Canvas.HEIGHT / rows;
+        int[] widgets = new int[columns * rows];
+        for (int i = 0; i < widgets.length; i++) {
+            widgets[i] = pool.addText("Sensor " + (i + 1), (i % columns) * width, (i / columns) * height, width, height, 0);
+        }
+        pool.commit();
+        demoActivityViewModel.pause();
+
+        // A few sensors update every second. They end up in the slots, so each update is a single
+        // updateText, while the rest of the dashboard stays in the background untouched.
+        Random random = new Random(1);
+        for (int second = 0; second < 8; second++) {
+            for (int i = 0; i < 3; i++) {
+                int sensor = i * 7;
+                pool.setText(widgets[sensor], "Sensor " + (sensor + 1) + ": " + random.nextInt(100));
+            }
+            // Now and then a quiet sensor changes too, and takes a slot for a while
+            int quiet = 1 + random.nextInt(6);
+            pool.setText(widgets[quiet], "Sensor " + (quiet + 1) + ": " + random.nextInt(100));
+            pool.commit();
+            demoActivityViewModel.pause(1000);
+        }
+        Log.d(MainActivity.TAG, "Dashboard: " + pool.getSlotsCreated() + " slots created, "
+                + pool.getSlotsReassigned() + " reassigned, " + pool.getWidgetsBaked() + " widgets baked");
+
+        for (int widget : widgets) {
+            pool.remove(widget);
+        }
+        pool.commit();
     }
 }
@@ -0,0 +1,50 @@
+package com.vuzix.ultralite.sample;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.vuzix.ultralite.Layout;
+import com.vuzix.ultralite.UltraliteSDK;
+
+/**
+ * This class demonstrates the same teleprompter as {@link DemoScrollAutoScroller}, driven by an
+ * {@link AdaptiveScroller} instead of the SDK AutoScroller.
+ *
+ * The AutoScroller sends a line whenever the duration passes, whether or not the link keeps up.
+ * The AdaptiveScroller measures how long lines take to arrive, sends them early enough to be on
+ * time, and slows down a little before a congested link would make the text stutter.
+ */
+public class DemoScrollAdaptive {
+    final static int sliceHeight = 48; // Height of each line, like DemoScrollAutoScroller
+    final static int fontSize = 35;    // Font size within one line, like DemoScrollNative
+
+    public static void runDemo(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
+        final int numberLinesShowing = 4;      // The same 4 lines at the bottom of the screen as DemoScrollAutoScroller
+        final int startingScreenLocation = 0;
+        final int scrollSpeedInMs = 1500;      // A new line appears every 1.5 sec, unless the link is too slow for that
+        final int scrollAnimationMs = 500;     // How long each line takes to scroll in
+        final int lookaheadLines = 4;          // Lines rendered and sent ahead of the screen
+
+        // Everything the AdaptiveScroller sends goes through the link, so every line shows up in the metrics
+        demoActivityViewModel.getLink().setLayout(Layout.SCROLL, 0, true, true, 0);
+        String teleprompterContents = context.getString(R.string.scroll_layout_demo_text);
+        // The lines were rendered once and stored, usually by the warm-up before the demo started
+        PayloadStore.Entry lines = TextSlices.get(context, teleprompterContents, sliceHeight, fontSize);
+        AdaptiveScroller scroller = new AdaptiveScroller(demoActivityViewModel.getLink(), lines.slices(),
+                sliceHeight, startingScreenLocation, numberLinesShowing, scrollAnimationMs, lookaheadLines);
+        scroller.setDuration(scrollSpeedInMs);
+        // A real teleprompter would show this to the presenter. The buffer health also shows up in
+        // the link metrics on the phone screen.
+        scroller.setListener(health -> Log.w(MainActivity.TAG, "Teleprompter is slowing down: " + health));
+        scroller.run(demoActivityViewModel::pause);
+        Log.d(MainActivity.TAG, "Teleprompter finished: " + scroller.getHealth());
+    }
+
+    /**
+     * Renders the lines of the teleprompter ahead of time, see {@link PayloadStore}.
+     */
+    static void warmUp(Context context) {
+        String text = context.getString(R.string.scroll_layout_demo_text);
+        TextSlices.get(context, text, sliceHeight, fontSize).load();
+    }
+}
@@ -6,14 +6,17 @@ import com.vuzix.ultralite.Layout;
 import com.vuzix.ultralite.UltraliteSDK;
 import com.vuzix.ultralite.utils.scroll.AutoScroller;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This class demonstrates the AutoScroller feature which is used when we know up-front what the full
  * text will be, and want it to scroll at a continuous rate. This creates an effect similar to a
  * teleprompter or movie credits.
+ *
+ * The AutoScroller sends a line whenever the duration passes, whether or not the Bluetooth link
+ * keeps up. See {@link DemoScrollAdaptive} for a teleprompter that paces itself by the link.
  */
 public class DemoScrollAutoScroller {
-    static boolean scrollFinished;
-
     public static void runDemo(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
         final int sliceHeightInPixels = 48;    // The lines will be 48 pixels high, so each line is 1/10th the screen height. This affects the
                                                // ranges for all other values below since this configuration now has a maximum of 10 lines.
@@ -27,38 +30,34 @@ public class DemoScrollAutoScroller {
 
         // Using AutoScroller requires we have control (obtained by the MainActivity in this demo)
         // and that we set the SCROLL layout.
-        ultralite.setLayout(Layout.SCROLL, 0, true, true, 0);
+        // The AutoScroller sends its slices itself, so only the layout shows up in the metrics
+        demoActivityViewModel.getLink().setLayout(Layout.SCROLL, 0, true, true, 0);
         // Load the full text we want to show
         String teleprompterContents = context.getString(R.string.scroll_layout_demo_text);
+        // The scene cannot put back what the AutoScroller draws, so a short loss of control ends
+        // the demo instead of resuming it on a screen that is missing lines
+        demoActivityViewModel.getLink().invalidateScene();
         // Provide the text to show and text layout parameters to the AutoScroller
         AutoScroller autoScroller = new AutoScroller(ultralite, teleprompterContents, sliceHeightInPixels,
                                                      startingScreenLocation, numberLinesShowing,
                                                      UltraliteSDK.Canvas.WIDTH, null);
         // The duration should be set first, and can be changed at any point, even while running.
         autoScroller.setDuration(scrollSpeedInMs);
-        // Set a callback so when the AutoScroller finishes we unlock this thread
-        scrollFinished = false;
-        Object doneMutex = new Object();
-        autoScroller.setCallback( (complete) -> {
-            synchronized (doneMutex) {
-                scrollFinished = true;
-                doneMutex.notifyAll();
-            }
-        });
+        // Get a future that completes when the AutoScroller finishes
+        CompletableFuture<Void> done = demoActivityViewModel.getFutures().completion(autoScroller);
         autoScroller.start();
         // Now that it's running we can call pause() and resume() and dynamically change the speed
         // with additional calls to setDuration. We could also cancel it fully by calling stop().
         // But this demo will just let the text play to the end.
 
-        // We pause the execution of this thread until the AutoScroller notifies us it is done.
-        while(!scrollFinished) {
-            synchronized(doneMutex) {
-                try {
-                    doneMutex.wait();
-                } catch (Exception e) {
-                    throw new MainActivity.Stop(true);
-                }
-            }
+        // We pause the execution of this thread until the AutoScroller is done. If we lose control
+        // of the glasses this wait is interrupted, and we stop the AutoScroller so it does not
+        // keep sending to glasses we no longer own.
+        try {
+            UltraliteFutures.await(done);
+        } catch (MainActivity.Stop stop) {
+            autoScroller.stop();
+            throw stop;
         }
     }
 }
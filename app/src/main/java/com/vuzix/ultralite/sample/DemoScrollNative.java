@@ -2,10 +2,11 @@ package com.vuzix.ultralite.sample;
 
 import android.content.Context;
 
-import com.vuzix.ultralite.EventListener;
+import com.vuzix.ultralite.LVGLImage;
 import com.vuzix.ultralite.Layout;
 import com.vuzix.ultralite.UltraliteSDK;
-import com.vuzix.ultralite.utils.scroll.TextToImageSlicer;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The SCROLL layout gives us a mechanism to send text in any font, including mixed fonts to the
@@ -25,72 +26,79 @@ public class DemoScrollNative {
     final static int lowestLineShowing = 0;
     final static int maxLinesShowing = 3;
     final static int fastScrollMilliSecs = 500;
+    final static int lookaheadSlices = 4; // How many slices may be rendered ahead of the sender
 
     public static void runDemo(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
-        AckWaiter ackWaiter = new AckWaiter(ultralite);
-        ultralite.setLayout(Layout.SCROLL, 0, true, true, 0);
-        UltraliteSDK.ScrollingTextView scrollingTextView = ultralite.getScrollingTextView();
+        // Everything we send goes through the link so it shows up in the metrics. The tracker's
+        // window is one screen of lines, and filling the screen sends exactly that many, so the fill
+        // never blocks: every line goes out back-to-back and we wait once, for the last one.
+        MeteredUltralite link = demoActivityViewModel.getLink();
+        AckTracker ackTracker = new AckTracker(link, maxLinesShowing);
+        link.setLayout(Layout.SCROLL, 0, true, true, 0);
+        MeteredUltralite.ScrollView scrollingTextView = link.getScrollingTextView();
         scrollingTextView.scrollLayoutConfig(sliceHeight, lowestLineShowing, maxLinesShowing, fastScrollMilliSecs, false);
         String teleprompterContents = context.getString(R.string.scroll_layout_native_text);
 
-        // This SDK class breaks up a huge text line into multiple slices. Each slice represents a
-        // single line of text. These slices be sent to the glasses which can efficiently show them
-        // and animate them as we expect in a teleprompter.
-        TextToImageSlicer slicer = new TextToImageSlicer(teleprompterContents, sliceHeight, fontSize);
-        int i = 0;
-        // First let's fill the entire screen without waiting, and without scrolling
-        while (slicer.hasMoreSlices() && (i<maxLinesShowing) ) {
-            // We send the line to the explicit index of the screen without scrolling the screen
-            final boolean scrollFirst = false;
-            final int sliceIndexNumber = maxLinesShowing - 1 - i;
-            scrollingTextView.sendScrollImage(slicer.getNextSlice(), sliceIndexNumber, scrollFirst);
-            // we'll wait until the glasses confirm each line has arrived, although this is not
-            // necessary as the underlying queue does this. But it demonstrates this mechanism which
-            // could allow us to synchronize our UI with the glasses UI
-            ackWaiter.waitForAck("Send line of text as image");
-            // When this wait finishes, the glasses have replied that they received the text we just sent
-            i++;
-        }
-        // Continue slicing the rest of that same content with some pauses in between
-        while (slicer.hasMoreSlices()) {
-            demoActivityViewModel.pause(2000);
-            // Now we will just send the bottom slice, and request that the previous bottom be
-            // scrolled up one position before accepting this as the new bottom slice
-            final boolean scrollFirst = true;
-            final int bottomSliceIndex = 0;
-            scrollingTextView.sendScrollImage(slicer.getNextSlice(), bottomSliceIndex, scrollFirst);
+        // The text is broken up into multiple slices. Each slice represents a single line of text.
+        // These slices be sent to the glasses which can efficiently show them and animate them as
+        // we expect in a teleprompter. The SDK TextToImageSlicer can do this too, but it renders
+        // every line again on each start. TextSlices renders them once and stores them on disk.
+        PayloadStore.Entry lines = TextSlices.get(context, teleprompterContents, sliceHeight, fontSize);
+        // Expanding the stored lines happens on a worker thread that stays a few slices ahead of us,
+        // so this thread only ever waits on the link.
+        try (SlicePipeline slices = new SlicePipeline(lines.slices(), lookaheadSlices)) {
+            int i = 0;
+            long lastLineId = 0;
+            LVGLImage slice;
+            // First let's fill the entire screen without waiting, and without scrolling
+            while ((i < maxLinesShowing) && (slice = slices.take()) != null) {
+                // We send the line to the explicit index of the screen without scrolling the screen
+                final boolean scrollFirst = false;
+                final int sliceIndexNumber = maxLinesShowing - 1 - i;
+                final LVGLImage line = slice;
+                // Each line gets a sequence id, and an acknowledgement is requested behind it
+                lastLineId = ackTracker.send(() ->
+                        scrollingTextView.sendScrollImage(line, sliceIndexNumber, scrollFirst));
+                i++;
+            }
+            // Once the glasses acknowledge the last line, we know the whole screen is showing. This is
+            // where we could update the phone UI to match the glasses UI.
+            if (lastLineId != 0) {
+                ackTracker.awaitThrough(lastLineId);
+            }
+            // Continue slicing the rest of that same content with some pauses in between
+            while ((slice = slices.take()) != null) {
+                demoActivityViewModel.pause(2000);
+                // Now we will just send the bottom slice, and request that the previous bottom be
+                // scrolled up one position before accepting this as the new bottom slice
+                final boolean scrollFirst = true;
+                final int bottomSliceIndex = 0;
+                scrollingTextView.sendScrollImage(slice, bottomSliceIndex, scrollFirst);
+            }
         }
         demoActivityViewModel.pause(2000);
 
         // We can then reconfigure to have a 4 second animation time
         scrollingTextView.scrollLayoutConfig(sliceHeight, lowestLineShowing, maxLinesShowing, 4000, false);
+        // The glasses tell us when they finish the scroll animation. We ask for that future before
+        // scrolling, so we cannot miss the event even if it arrives before we wait.
+        CompletableFuture<EventHub.Event> scrolled = demoActivityViewModel.getFutures().scrollCompletion();
         // We can also just manually scroll the screen, which now takes 4 seconds
         scrollingTextView.scrollNow();
-
-        // And we can use an EventListener to find out when the glasses finish the scroll animation
-        final EventListener eventListener = new EventListener() {
-            @Override
-            public void onScrolled(boolean isScreenEmpty) {
-                synchronized (this) {
-                    notifyAll();
-                }
-            }
-        };
-        // That listener must be registered
-        ultralite.addEventListener(eventListener);
-        // Now we wait here for the glasses to tell us the 4s animation has finished
-        synchronized (eventListener) {
-            try {
-                eventListener.wait();
-            } catch (InterruptedException e) {
-                throw new MainActivity.Stop(true);
-            }
-        }
-        // And we can unregister the listener now that we're done
-        ultralite.removeEventListener(eventListener);
+        // Now we wait here for the glasses to tell us the 4s animation has finished. We give up
+        // if it takes far longer than the animation should.
+        UltraliteFutures.await(UltraliteFutures.withTimeout(scrolled, 10000));
 
         // Then we can manually clear an arbitrary slice. In this case, our topmost one.
         scrollingTextView.clear(maxLinesShowing - 1);
         demoActivityViewModel.pause(2000);
     }
+
+    /**
+     * Renders the lines of this demo ahead of time, see {@link PayloadStore}.
+     */
+    static void warmUp(Context context) {
+        String text = context.getString(R.string.scroll_layout_native_text);
+        TextSlices.get(context, text, sliceHeight, fontSize).load();
+    }
 }
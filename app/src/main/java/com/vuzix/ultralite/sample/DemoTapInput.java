@@ -1,85 +1,78 @@
 package com.vuzix.ultralite.sample;
 
 import android.content.Context;
+import android.util.Log;
 
-import com.vuzix.ultralite.EventListener;
-import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.Anchor;
 import com.vuzix.ultralite.Layout;
 import com.vuzix.ultralite.UltraliteSDK;
-import com.vuzix.ultralite.utils.scroll.TextToImageSlicer;
 
 /**
  * This class demonstrates using tap input from the glasses.
+ *
+ * Sending a new image after each tap makes the user wait for the transfer before anything happens.
+ * Here the screens are a small {@link TapMenu}, which uploads the screens a tap can lead to ahead of
+ * time into hidden canvas images. A tap then only switches which image is visible.
  */
 public class DemoTapInput {
     final static int sliceHeight = 60; // Height of each slice of text (including inter-line padding)
     final static int fontSize = 48;    // Font size within one slice of text (smaller than the sliceHeight
-    final static int lowestLineShowing = 3;
-    final static int maxLinesShowing = 2;
-    final static int fastScrollMilliSecs = 500;
 
     public static void runDemo(Context context, MainActivity.DemoActivityViewModel demoActivityViewModel, UltraliteSDK ultralite) throws MainActivity.Stop {
         final int SCREEN_TIMEOUT_SECS = 15;
         final boolean HIDE_STATUS_BAR = false;
         final int maxTaps = 2;
         boolean animateTaps = true;
-        // Taps work in all layouts, and we'll use the scroll layout since it is convenient.
+        // Taps work in all layouts. We use the canvas, since it can hold hidden images.
         // We specify the tap behavior when calling setLayout.
-        ultralite.setLayout(Layout.SCROLL, SCREEN_TIMEOUT_SECS, HIDE_STATUS_BAR, animateTaps, maxTaps);
-        UltraliteSDK.ScrollingTextView scrollingTextView = ultralite.getScrollingTextView();
-        scrollingTextView.scrollLayoutConfig(sliceHeight, lowestLineShowing, maxLinesShowing, fastScrollMilliSecs, false);
+        MeteredUltralite link = demoActivityViewModel.getLink();
+        link.setLayout(Layout.CANVAS, SCREEN_TIMEOUT_SECS, HIDE_STATUS_BAR, animateTaps, maxTaps);
 
-        // Create several images of text we can choose between to show the status
-        LVGLImage tapOnce = new TextToImageSlicer(context.getString(R.string.tap_once), sliceHeight, fontSize).getSliceAt(0);
-        LVGLImage tapTwice = new TextToImageSlicer(context.getString(R.string.tap_twice), sliceHeight, fontSize).getSliceAt(0);
-        LVGLImage tappedOnce = new TextToImageSlicer(context.getString(R.string.tapped_1), sliceHeight, fontSize).getSliceAt(0);
-        LVGLImage tappedTwice = new TextToImageSlicer(context.getString(R.string.tapped_2), sliceHeight, fontSize).getSliceAt(0);
+        // Create several images of text we can choose between to show the status. These are fixed
+        // strings, so the SliceCache renders each one only once no matter how often the demo runs.
+        TapMenu.Screen tapOnce = screen(context, R.string.tap_once);
+        TapMenu.Screen tapTwice = screen(context, R.string.tap_twice);
+        TapMenu.Screen tappedOnce = screen(context, R.string.tapped_1);
+        TapMenu.Screen tappedTwice = screen(context, R.string.tapped_2);
+        // Where each number of taps leads from each screen. The tap a screen asks for is the most
+        // likely, so it is declared first and preloaded first.
+        tapOnce.on(1, tappedOnce).on(2, tappedTwice);
+        tappedOnce.on(1, tapTwice).on(2, tappedTwice);
+        tapTwice.on(2, tappedTwice).on(1, tappedOnce);
 
-        // We need to add an event listener if we want to know when the taps occur
-        TapListener tapListener = new TapListener();
-        ultralite.addEventListener(tapListener);
+        // The view model's event hub receives the taps. We open a cursor before showing the
+        // instructions, so every tap from then on is kept for us even while we are busy sending.
+        EventHub.Cursor taps = demoActivityViewModel.getEvents().newCursor();
 
-        // Show the instructions on the glasses
-        scrollingTextView.sendScrollImage(tapOnce, lowestLineShowing, false);
-        int numTaps;
-        do {
-            numTaps = tapListener.waitForTaps();
-            if(numTaps == 1) {
-                // Got one tap, indicate we got it
-                scrollingTextView.sendScrollImage(tappedOnce, lowestLineShowing, true);
-                // Now configures to allow double-taps, and instruct the user to tap twice
-                scrollingTextView.sendScrollImage(tapTwice, lowestLineShowing, true);
-            }
-        } while (numTaps != 2);
-        // We got 2 taps, indicate this on the glasses
-        scrollingTextView.sendScrollImage(tappedTwice, lowestLineShowing, true);
-        scrollingTextView.scrollNow();
-        demoActivityViewModel.pause(2000);
-        // Unregister this so our listener stops being called
-        ultralite.removeEventListener(tapListener);
-    }
-
-    // The event listener has many indications, this one is occurs when the frames are touched
-    static class TapListener implements EventListener {
-        private volatile int userTapCount;
-
-        @Override
-        public void onTap(int tapCount) {
-            synchronized (this) {
-                userTapCount = tapCount;
-                this.notifyAll();
+        // The canvas has three image slots: one for the screen showing, two for what comes next
+        TapMenu menu = new TapMenu(link, demoActivityViewModel.getSession(), ElementPool.MAX_IMAGES, 0);
+        try {
+            // Show the instructions on the glasses. This also starts uploading the two screens a tap
+            // can lead to, while the user reads.
+            menu.show(tapOnce);
+            while (menu.getCurrent() != tappedTwice) {
+                // This blocks the thread until the next tap arrives
+                int numTaps = taps.await(EventHub.Type.TAP, 0).value;
+                // Only a visibility change goes out, since the next screen is already there
+                menu.onTap(numTaps);
+                if (menu.getCurrent() == tappedOnce) {
+                    // Confirm the single tap for a moment, then instruct the user to tap twice. That
+                    // screen was uploaded while the confirmation showed.
+                    demoActivityViewModel.pause(1000);
+                    menu.show(tapTwice);
+                }
             }
+            demoActivityViewModel.pause(2000);
+            Log.d(MainActivity.TAG, "Tap menu: " + menu);
+            UltraliteFutures.await(menu.removeAll());
+        } finally {
+            menu.close();
         }
+    }
 
-        // This method blocks the calling thread until the taps are received
-        public synchronized int waitForTaps() throws MainActivity.Stop {
-            userTapCount = 0;
-            try {
-                this.wait();   // Block the thread here
-            } catch (InterruptedException e) {
-                throw new MainActivity.Stop(true);
-            }
-            return userTapCount;
-        }
-    };
+    private static TapMenu.Screen screen(Context context, int text) {
+        String string = context.getString(text);
+        return TapMenu.Screen.image(string, SliceCache.getSlice(string, sliceHeight, fontSize),
+                SliceCache.getSliceBytes(sliceHeight), Anchor.CENTER, 0, 0);
+    }
 }
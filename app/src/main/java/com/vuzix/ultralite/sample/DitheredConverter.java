@@ -0,0 +1,102 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Bitmap;
+
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.sample.lvgl.Ditherer;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class converts photos and video frames for the glasses with dithering.
+ *
+ * LVGLImage.fromBitmap rounds every pixel to the nearest gray the glasses can show, so soft
+ * shading turns into flat bands. Here we dither the frame first with a {@link Ditherer}, so every
+ * pixel is already one of the palette grays, and fromBitmap keeps them exactly as they are. The
+ * same works for {@link BackgroundCompositor#draw}, which only sends the tiles that changed.
+ *
+ * The pixel buffers and the output bitmap are reused from one frame to the next, and large frames
+ * are dithered in bands on all cores, so this can keep up with live video. Since the output bitmap
+ * is reused, use it before converting the next frame.
+ *
+ * This class is not thread safe. Use one instance per conversion thread.
+ */
+class DitheredConverter {
+    // The gray of each palette level, as an opaque ARGB color
+    private static final int[][] LEVEL_COLORS = {
+            grays(IndexedPacker.BPP_1),
+            grays(IndexedPacker.BPP_2)
+    };
+
+    private final Ditherer ditherer;
+    private final int colorFormat;
+    private final Executor executor;
+    private final int bands;
+
+    private int[] pixels = new int[0];
+    private byte[] levels = new byte[0];
+    private Bitmap output;
+
+    /**
+     * @param mode How to dither. ORDERED is the fastest and keeps still areas of a video still;
+     *             FLOYD_STEINBERG looks best on photos.
+     * @param singleBit True for single-bit (black and white) images. The background does not allow
+     *                  single-bit images, so use false for anything sent with drawBackground.
+     */
+    public DitheredConverter(Ditherer.Mode mode, boolean singleBit) {
+        this.ditherer = new Ditherer(mode, singleBit ? IndexedPacker.BPP_1 : IndexedPacker.BPP_2);
+        this.colorFormat = singleBit ? LVGLImage.CF_INDEXED_1_BIT : LVGLImage.CF_INDEXED_2_BIT;
+        this.executor = ForkJoinPool.commonPool();
+        this.bands = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Dithers the bitmap into a reused bitmap made only of palette grays.
+     *
+     * @return A bitmap owned by this converter, valid until the next call
+     */
+    public Bitmap dither(Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int count = width * height;
+        if (pixels.length < count) {
+            pixels = new int[count];
+            levels = new byte[count];
+        }
+        if (output == null || output.getWidth() != width || output.getHeight() != height) {
+            output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        source.getPixels(pixels, 0, width, 0, 0, width, height);
+        ditherer.dither(pixels, 0, width, width, height, levels, executor, bands);
+        int[] colors = LEVEL_COLORS[ditherer.getBitsPerPixel() - 1];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = colors[levels[i]];
+        }
+        output.setPixels(pixels, 0, width, 0, 0, width, height);
+        return output;
+    }
+
+    /**
+     * Dithers and converts the bitmap in one step.
+     */
+    public LVGLImage convert(Bitmap source) {
+        Bitmap dithered = dither(source);
+        LVGLImage image = LVGLImage.fromBitmap(dithered, colorFormat);
+        LinkMetrics.registerImage(image, ImageCache.estimateBytes(
+                dithered.getWidth(), dithered.getHeight(), colorFormat));
+        return image;
+    }
+
+    private static int[] grays(int bitsPerPixel) {
+        int colors = 1 << bitsPerPixel;
+        int[] grays = new int[colors];
+        for (int i = 0; i < colors; i++) {
+            int gray = i * 255 / (colors - 1);
+            grays[i] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+        }
+        return grays;
+    }
+}
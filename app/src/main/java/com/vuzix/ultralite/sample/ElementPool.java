@@ -0,0 +1,459 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Bitmap;
+
+import com.vuzix.ultralite.Anchor;
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.TextAlignment;
+import com.vuzix.ultralite.TextWrapMode;
+import com.vuzix.ultralite.UltraliteColor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class lets the app use more text and image elements than the canvas has slots for.
+ *
+ * The canvas only has 7 text fields and 3 images, and createText or createImage returns -1 once
+ * they are used up. A dashboard easily has 20 widgets. This class holds any number of widgets,
+ * each with a priority, and on every {@link #commit()} decides how to show them:
+ * <ul>
+ *     <li>The visible widgets with the highest priority, and among those the ones that changed most
+ *     recently, get one of the real slots.</li>
+ *     <li>The rest rarely change, so they are baked into the background: rendered into an image
+ *     and drawn there once. Nothing is sent for them again until they change.</li>
+ * </ul>
+ * The slots are created once and then reused. Giving a slot to another widget costs an update and
+ * a move of the existing element, never a remove and a create. Text slots keep the size they were
+ * created with, so a text slot only goes to a widget of another size if no slot of the right size
+ * is free.
+ *
+ * Widgets are placed by their top left corner, in screen pixels. Baked text is drawn on the phone
+ * with the given font size, so it looks a little different from the font of the glasses.
+ *
+ * This class sends through a {@link CanvasBatcher} and has the same threading rules. Don't create
+ * elements or draw the background on that batcher directly while a pool uses it, apart from the
+ * slots left over when the pool was made smaller than the canvas.
+ */
+class ElementPool {
+    static final int MAX_TEXTS = 7;
+    static final int MAX_IMAGES = 3;
+
+    private static final int TEXT = 0;
+    private static final int IMAGE = 1;
+
+    private final CanvasBatcher canvas;
+    private final int textSlots;
+    private final int imageSlots;
+    private final int fontSize;
+
+    // Every widget by handle, in the order they were added
+    private final Map<Integer, Widget> widgets = new LinkedHashMap<>();
+    private final List<Slot> texts = new ArrayList<>();
+    private final List<Slot> images = new ArrayList<>();
+    // One renderer per text size, for baking
+    private final Map<Long, TextLineRenderer> renderers = new HashMap<>();
+    private int nextHandle = 1;
+    // Counts changes, to tell which widget changed most recently
+    private long clock;
+
+    private int slotsCreated;
+    private int slotsReassigned;
+    private int widgetsBaked;
+
+    /**
+     * Uses every slot of the canvas.
+     */
+    public ElementPool(CanvasBatcher canvas, int fontSize) {
+        this(canvas, MAX_TEXTS, MAX_IMAGES, fontSize);
+    }
+
+    /**
+     * @param textSlots How many text slots the pool may use. Leave some free for elements the app
+     *                  creates itself.
+     * @param imageSlots How many image slots the pool may use
+     * @param fontSize Text size in pixels for baked text
+     */
+    public ElementPool(CanvasBatcher canvas, int textSlots, int imageSlots, int fontSize) {
+        if (textSlots < 0 || textSlots > MAX_TEXTS || imageSlots < 0 || imageSlots > MAX_IMAGES) {
+            throw new IllegalArgumentException("The canvas has " + MAX_TEXTS + " text and " + MAX_IMAGES + " image slots");
+        }
+        this.canvas = canvas;
+        this.textSlots = textSlots;
+        this.imageSlots = imageSlots;
+        this.fontSize = fontSize;
+    }
+
+    /**
+     * Adds a single line of text in a box.
+     *
+     * @param priority Higher priorities get a slot first
+     * @return The handle for the other methods
+     */
+    public int addText(String text, int x, int y, int width, int height, int priority) {
+        Widget widget = add(TEXT, x, y, width, height, priority);
+        widget.text = text;
+        return widget.handle;
+    }
+
+    /**
+     * Adds an image. It is converted when it is first shown.
+     *
+     * @param priority Higher priorities get a slot first
+     * @return The handle for the other methods
+     */
+    public int addImage(Bitmap bitmap, int x, int y, int priority) {
+        Widget widget = add(IMAGE, x, y, bitmap.getWidth(), bitmap.getHeight(), priority);
+        widget.bitmap = bitmap;
+        return widget.handle;
+    }
+
+    public void setText(int handle, String text) {
+        Widget widget = get(handle, TEXT);
+        if (!text.equals(widget.text)) {
+            widget.text = text;
+            widget.bakedImage = null;
+            changed(widget);
+        }
+    }
+
+    public void setImage(int handle, Bitmap bitmap) {
+        Widget widget = get(handle, IMAGE);
+        if (bitmap != widget.bitmap) {
+            widget.bitmap = bitmap;
+            widget.width = bitmap.getWidth();
+            widget.height = bitmap.getHeight();
+            widget.liveImage = null;
+            widget.bakedImage = null;
+            changed(widget);
+        }
+    }
+
+    public void move(int handle, int x, int y) {
+        Widget widget = get(handle, -1);
+        if (x != widget.x || y != widget.y) {
+            widget.x = x;
+            widget.y = y;
+            changed(widget);
+        }
+    }
+
+    public void setVisible(int handle, boolean visible) {
+        Widget widget = get(handle, -1);
+        if (visible != widget.visible) {
+            widget.visible = visible;
+            changed(widget);
+        }
+    }
+
+    /**
+     * Changes the priority. This does not count as a change of the widget itself.
+     */
+    public void setPriority(int handle, int priority) {
+        get(handle, -1).priority = priority;
+    }
+
+    public void remove(int handle) {
+        Widget widget = get(handle, -1);
+        widget.visible = false;
+        widget.removed = true;
+        changed(widget);
+    }
+
+    /**
+     * Decides which widgets get a slot and which are baked, sends what changed, and commits.
+     */
+    public void commit() {
+        List<Widget> live = new ArrayList<>();
+        List<Widget> baked = new ArrayList<>();
+        rank(TEXT, textSlots, live, baked);
+        rank(IMAGE, imageSlots, live, baked);
+
+        // Take widgets off the background that left it or changed. Anything else baked under the
+        // cleared area has to be drawn again.
+        Set<Widget> damaged = new HashSet<>();
+        for (Widget widget : widgets.values()) {
+            boolean stillBaked = baked.contains(widget) && widget.drawnVersion == widget.version;
+            if (widget.drawn && !stillBaked) {
+                canvas.clearBackgroundRect(widget.drawnX, widget.drawnY, widget.drawnWidth, widget.drawnHeight);
+                for (Widget other : baked) {
+                    if (other != widget && other.drawn && other.overlapsDrawn(widget)) {
+                        damaged.add(other);
+                    }
+                }
+                widget.drawn = false;
+            }
+        }
+        for (Widget widget : baked) {
+            if (!widget.drawn || damaged.contains(widget)) {
+                bake(widget);
+            }
+        }
+
+        // Free the slots of widgets that lost them, then hand out free slots
+        for (Widget widget : widgets.values()) {
+            if (widget.slot != null && !live.contains(widget)) {
+                widget.slot.widget = null;
+                widget.slot = null;
+            }
+        }
+        for (Widget widget : live) {
+            if (widget.slot == null) {
+                assign(widget);
+            }
+            show(widget);
+        }
+        for (Slot slot : texts) {
+            hideIfFree(slot);
+        }
+        for (Slot slot : images) {
+            hideIfFree(slot);
+        }
+
+        Iterator<Widget> iterator = widgets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().removed) {
+                iterator.remove();
+            }
+        }
+        canvas.commit();
+    }
+
+    /**
+     * @return How many canvas elements the pool has created
+     */
+    public int getSlotsCreated() {
+        return slotsCreated;
+    }
+
+    /**
+     * @return How often a slot went to another widget, each time saving a remove and a create
+     */
+    public int getSlotsReassigned() {
+        return slotsReassigned;
+    }
+
+    /**
+     * @return How often a widget was drawn into the background
+     */
+    public int getWidgetsBaked() {
+        return widgetsBaked;
+    }
+
+    private Widget add(int kind, int x, int y, int width, int height, int priority) {
+        Widget widget = new Widget(kind, nextHandle++);
+        widget.x = x;
+        widget.y = y;
+        widget.width = width;
+        widget.height = height;
+        widget.priority = priority;
+        widgets.put(widget.handle, widget);
+        changed(widget);
+        return widget;
+    }
+
+    private Widget get(int handle, int kind) {
+        Widget widget = widgets.get(handle);
+        if (widget == null || widget.removed || (kind >= 0 && widget.kind != kind)) {
+            throw new IllegalArgumentException("No such widget: " + handle);
+        }
+        return widget;
+    }
+
+    private void changed(Widget widget) {
+        widget.version++;
+        widget.lastChange = ++clock;
+    }
+
+    // The visible widgets of one kind, best first. The first "slots" of them go live.
+    private void rank(int kind, int slots, List<Widget> live, List<Widget> baked) {
+        List<Widget> visible = new ArrayList<>();
+        for (Widget widget : widgets.values()) {
+            if (widget.kind == kind && widget.visible) {
+                visible.add(widget);
+            }
+        }
+        visible.sort(Comparator.comparingInt((Widget w) -> w.priority).reversed()
+                .thenComparing(Comparator.comparingLong((Widget w) -> w.lastChange).reversed()));
+        for (int i = 0; i < visible.size(); i++) {
+            (i < slots ? live : baked).add(visible.get(i));
+        }
+    }
+
+    private void bake(Widget widget) {
+        // Widgets that are only drawn again because a neighbour changed keep their image
+        if (widget.bakedImage == null) {
+            if (widget.kind == TEXT) {
+                widget.bakedImage = renderer(widget.width, widget.height).render(widget.text, 0, widget.text.length());
+                widget.bakedOffsetX = 0;
+                widget.bakedOffsetY = 0;
+            } else {
+                // The background only takes 2-bit images, and the empty borders need not be sent
+                PayloadMinimizer.Minimized minimized = PayloadMinimizer.forBackground(widget.bitmap);
+                widget.bakedImage = minimized.image;
+                widget.bakedOffsetX = minimized.offsetX;
+                widget.bakedOffsetY = minimized.offsetY;
+            }
+        }
+        canvas.drawBackground(widget.bakedImage, widget.x + widget.bakedOffsetX, widget.y + widget.bakedOffsetY);
+        widget.drawn = true;
+        widget.drawnVersion = widget.version;
+        widget.drawnX = widget.x;
+        widget.drawnY = widget.y;
+        widget.drawnWidth = widget.width;
+        widget.drawnHeight = widget.height;
+        widgetsBaked++;
+    }
+
+    private TextLineRenderer renderer(int width, int height) {
+        long key = ((long) width << 32) | (height & 0xFFFFFFFFL);
+        TextLineRenderer renderer = renderers.get(key);
+        if (renderer == null) {
+            renderer = new TextLineRenderer(width, height, fontSize, false);
+            renderers.put(key, renderer);
+        }
+        return renderer;
+    }
+
+    // Finds a slot for a widget that just went live
+    private void assign(Widget widget) {
+        List<Slot> slots = widget.kind == TEXT ? texts : images;
+        int limit = widget.kind == TEXT ? textSlots : imageSlots;
+        Slot best = null;
+        for (Slot slot : slots) {
+            if (slot.widget == null && (best == null || slot.fits(widget) && !best.fits(widget))) {
+                best = slot;
+            }
+        }
+        if (best == null || !best.fits(widget) && slots.size() < limit) {
+            // No free slot, or none of the right size while there is still room for one
+            best = create(widget);
+            slots.add(best);
+        } else if (!best.fits(widget)) {
+            // Text boxes cannot be resized, so this one slot has to be made again
+            canvas.removeText(best.id);
+            slots.remove(best);
+            best = create(widget);
+            slots.add(best);
+        } else {
+            slotsReassigned++;
+        }
+        best.widget = widget;
+        widget.slot = best;
+    }
+
+    private Slot create(Widget widget) {
+        int id;
+        if (widget.kind == TEXT) {
+            id = canvas.createText(widget.text, TextAlignment.AUTO, UltraliteColor.WHITE, Anchor.TOP_LEFT,
+                    widget.x, widget.y, widget.width, widget.height, TextWrapMode.WRAP, true);
+        } else {
+            id = canvas.createImage(liveImage(widget), Anchor.TOP_LEFT);
+        }
+        if (id == -1) {
+            throw new IllegalStateException("The canvas is out of slots. Are other elements using them?");
+        }
+        slotsCreated++;
+        return new Slot(id, widget.width, widget.height);
+    }
+
+    // Makes the slot show the widget. The batcher drops whatever the slot already shows.
+    private void show(Widget widget) {
+        Slot slot = widget.slot;
+        if (widget.kind == TEXT) {
+            canvas.updateText(slot.id, widget.text);
+            canvas.moveText(slot.id, Anchor.TOP_LEFT, widget.x, widget.y);
+            canvas.setTextVisible(slot.id, true);
+        } else {
+            canvas.updateImage(slot.id, liveImage(widget));
+            canvas.moveImage(slot.id, widget.x, widget.y);
+            canvas.setImageVisible(slot.id, true);
+        }
+    }
+
+    private void hideIfFree(Slot slot) {
+        if (slot.widget != null) {
+            return;
+        }
+        if (texts.contains(slot)) {
+            canvas.setTextVisible(slot.id, false);
+        } else {
+            canvas.setImageVisible(slot.id, false);
+        }
+    }
+
+    private static LVGLImage liveImage(Widget widget) {
+        if (widget.liveImage == null) {
+            // Cropping the left and top borders would move an image placed by its top left corner
+            widget.liveImage = PayloadMinimizer.forAnchor(widget.bitmap, Anchor.TOP_LEFT).image;
+        }
+        return widget.liveImage;
+    }
+
+    // One canvas element the pool owns
+    private static class Slot {
+        final int id;
+        final int width;
+        final int height;
+        Widget widget;
+
+        Slot(int id, int width, int height) {
+            this.id = id;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean fits(Widget widget) {
+            // Images take the size of whatever they show
+            return widget.kind == IMAGE || widget.width == width && widget.height == height;
+        }
+    }
+
+    private static class Widget {
+        final int kind;
+        final int handle;
+
+        String text;
+        Bitmap bitmap;
+        LVGLImage liveImage;
+        LVGLImage bakedImage;
+        int bakedOffsetX;
+        int bakedOffsetY;
+        int x;
+        int y;
+        int width;
+        int height;
+        int priority;
+        boolean visible = true;
+        boolean removed;
+        long version;
+        long lastChange;
+
+        // The slot showing this widget, or null
+        Slot slot;
+        // Where this widget was last baked into the background, if it still is
+        boolean drawn;
+        long drawnVersion;
+        int drawnX;
+        int drawnY;
+        int drawnWidth;
+        int drawnHeight;
+
+        Widget(int kind, int handle) {
+            this.kind = kind;
+            this.handle = handle;
+        }
+
+        boolean overlapsDrawn(Widget other) {
+            return drawnX < other.drawnX + other.drawnWidth && other.drawnX < drawnX + drawnWidth
+                    && drawnY < other.drawnY + other.drawnHeight && other.drawnY < drawnY + drawnHeight;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.vuzix.ultralite.sample;
+
+import com.vuzix.ultralite.EventListener;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class collects the events from the glasses into a ring buffer so no event is ever missed.
+ *
+ * Waiting for an event with wait() and notify() loses any event that arrives before the waiter
+ * starts waiting, and cannot hold more than one event. Here a single {@link EventListener} is
+ * registered once, and every event is stored with a monotonic timestamp in a fixed-size ring.
+ * Storing an event never takes a lock or blocks, so the SDK callback thread is never held up.
+ *
+ * Each consumer reads through its own {@link Cursor}. A cursor sees every event published after it
+ * was created, in order, whether the consumer was waiting at that moment or not. Consumers can
+ * poll, block with a timeout, or ask for a future of the next event of a type.
+ *
+ * If a consumer falls more than the ring size behind, the oldest events are overwritten and the
+ * cursor skips ahead; {@link Cursor#getMissedCount()} reports how many were lost.
+ */
+class EventHub implements EventListener {
+
+    enum Type {
+        TAP,
+        SCROLLED
+    }
+
+    /**
+     * One event from the glasses.
+     */
+    static final class Event {
+        public final Type type;
+        // The position of this event in the stream, starting at 0
+        public final long sequence;
+        // When the event arrived, from System.nanoTime()
+        public final long timestampNanos;
+        // The tap count for TAP, or 1 if the screen is empty for SCROLLED
+        public final int value;
+
+        Event(Type type, long sequence, long timestampNanos, int value) {
+            this.type = type;
+            this.sequence = sequence;
+            this.timestampNanos = timestampNanos;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return type + "(" + value + ") #" + sequence;
+        }
+    }
+
+    private final AtomicReferenceArray<Event> ring;
+    private final int mask;
+    // The sequence number the next event will get
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Threads blocked in Cursor.await(), woken after every publish
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    // Futures handed out by next(), completed by the event that satisfies them
+    private final ConcurrentLinkedQueue<PendingFuture> futures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param capacity How many events are kept for slow consumers, rounded up to a power of two
+     */
+    public EventHub(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    public EventHub() {
+        this(64);
+    }
+
+    @Override
+    public void onTap(int tapCount) {
+        publish(Type.TAP, tapCount);
+    }
+
+    @Override
+    public void onScrolled(boolean isScreenEmpty) {
+        publish(Type.SCROLLED, isScreenEmpty ? 1 : 0);
+    }
+
+    /**
+     * @return A cursor that sees every event published from now on
+     */
+    public Cursor newCursor() {
+        return new Cursor(nextSequence.get());
+    }
+
+    /**
+     * @return A future completed by the next event of this type published after this call. It is
+     *         completed from a pool thread, never from the SDK callback thread. Cancel it to stop
+     *         waiting, for example after a timeout, and the hub forgets it.
+     */
+    public CompletableFuture<Event> next(Type type) {
+        PendingFuture pending = new PendingFuture(type);
+        futures.add(pending);
+        // However the future ends, an event no longer needs to complete it
+        pending.future.whenComplete((event, error) -> futures.remove(pending));
+        return pending.future;
+    }
+
+    private void publish(Type type, int value) {
+        long sequence = nextSequence.getAndIncrement();
+        Event event = new Event(type, sequence, System.nanoTime(), value);
+        ring.set((int) sequence & mask, event);
+
+        for (Thread waiter : waiters) {
+            LockSupport.unpark(waiter);
+        }
+        if (!futures.isEmpty()) {
+            Iterator<PendingFuture> iterator = futures.iterator();
+            while (iterator.hasNext()) {
+                PendingFuture pending = iterator.next();
+                if (pending.type == type && pending.claim()) {
+                    iterator.remove();
+                    // Dependent actions must not run on the SDK callback thread
+                    CompletableFuture.runAsync(() -> pending.future.complete(event));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads events in order for one consumer. A cursor is meant for a single thread.
+     */
+    final class Cursor {
+        private long next;
+        private long missed;
+
+        private Cursor(long next) {
+            this.next = next;
+        }
+
+        /**
+         * @return The next event, or null if there is none yet. Never blocks.
+         */
+        public Event poll() {
+            while (true) {
+                long published = nextSequence.get();
+                if (next >= published) {
+                    return null;
+                }
+                if (published - next > ring.length()) {
+                    // We fell too far behind and the ring wrapped past us
+                    missed += published - ring.length() - next;
+                    next = published - ring.length();
+                }
+                Event event = ring.get((int) next & mask);
+                if (event == null || event.sequence < next) {
+                    // Claimed by the publisher but not stored yet
+                    return null;
+                }
+                if (event.sequence > next) {
+                    // Overwritten between our checks, go around again
+                    continue;
+                }
+                next++;
+                return event;
+            }
+        }
+
+        /**
+         * @return The next event of the given type, skipping other types, or null if there is none yet
+         */
+        public Event poll(Type type) {
+            Event event;
+            while ((event = poll()) != null) {
+                if (event.type == type) {
+                    return event;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Blocks until an event of the given type arrives.
+         *
+         * @param type The type of event to wait for
+         * @param timeoutMs How long to wait, or 0 to wait until the event arrives
+         * @return The event, or null if the timeout expired first
+         */
+        public Event await(Type type, long timeoutMs) throws MainActivity.Stop {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            Thread self = Thread.currentThread();
+            waiters.add(self);
+            try {
+                while (true) {
+                    Event event = poll(type);
+                    if (event != null) {
+                        return event;
+                    }
+                    if (timeoutMs > 0) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return null;
+                        }
+                        LockSupport.parkNanos(this, remaining);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                    if (Thread.interrupted()) {
+                        // Interrupted because we lost control or are shutting down
+                        throw new MainActivity.Stop(true);
+                    }
+                }
+            } finally {
+                waiters.remove(self);
+            }
+        }
+
+        /**
+         * @return How many events this cursor lost because it fell more than the ring size behind
+         */
+        public long getMissedCount() {
+            return missed;
+        }
+    }
+
+    private static class PendingFuture {
+        final Type type;
+        final CompletableFuture<Event> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        PendingFuture(Type type) {
+            this.type = type;
+        }
+
+        // Makes sure only one event completes this, even if two publishers race
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
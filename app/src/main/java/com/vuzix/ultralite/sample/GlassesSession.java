@@ -0,0 +1,251 @@
+package com.vuzix.ultralite.sample;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class runs timed sessions on the glasses from a single reusable worker thread, and stops
+ * them the moment we lose control of the glasses.
+ *
+ * Sleeping for a fixed time and then checking whether we still have control means we can keep
+ * sending commands to glasses we no longer own for several seconds. Instead, every wait in this
+ * class wakes up as soon as the control state changes. When control is lost, the worker thread is
+ * also interrupted, so any other blocking wait in the session (acknowledgements, taps, scrolling)
+ * ends right away with a {@link MainActivity.Stop}. The one exception is
+ * {@link #pause(long, long, Task)}, which waits for control to come back instead.
+ *
+ * Feed the state of {@link com.vuzix.ultralite.UltraliteSDK#getControlledByMe()} into
+ * {@link #setControlled(boolean)}.
+ */
+class GlassesSession {
+
+    /**
+     * The work of one session. Throw {@link MainActivity.Stop} to end it early.
+     */
+    interface Task {
+        void run() throws MainActivity.Stop;
+    }
+
+    /**
+     * Told about every change of the control state, for work that runs outside the session thread.
+     */
+    interface ControlListener {
+        /**
+         * Called on the thread that called {@link #setControlled(boolean)}. Don't block here.
+         */
+        void onControlChanged(boolean controlled);
+    }
+
+    private final CopyOnWriteArrayList<ControlListener> controlListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "GlassesSession"));
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition controlChanged = lock.newCondition();
+
+    private volatile boolean controlled;
+    // The worker thread while a task runs, otherwise null. Guarded by lock.
+    private Thread running;
+    // Tasks submitted and not finished yet, including the running one. Guarded by lock.
+    private int unfinished;
+    // True while the worker waits in a pause that rides out a loss of control. It is woken through
+    // controlChanged instead of an interrupt then, since an interrupt would also end the wait for
+    // control to come back. Guarded by lock.
+    private boolean resumable;
+
+    /**
+     * Call this whenever the control state of the glasses changes. Losing control wakes up and
+     * interrupts a running session, unless it is in a pause that can resume.
+     */
+    public void setControlled(boolean controlled) {
+        lock.lock();
+        try {
+            this.controlled = controlled;
+            controlChanged.signalAll();
+            if (!controlled && running != null && !resumable) {
+                running.interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (ControlListener listener : controlListeners) {
+            listener.onControlChanged(controlled);
+        }
+    }
+
+    public void addControlListener(ControlListener listener) {
+        controlListeners.add(listener);
+    }
+
+    public void removeControlListener(ControlListener listener) {
+        controlListeners.remove(listener);
+    }
+
+    /**
+     * @return True if we currently have control of the glasses. Safe to call from any thread.
+     */
+    public boolean isControlled() {
+        return controlled;
+    }
+
+    /**
+     * @return True while a session task is running or queued to run
+     */
+    public boolean isRunning() {
+        lock.lock();
+        try {
+            return unfinished > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a session on the worker thread. Sessions run one at a time, in order.
+     *
+     * @param task The work to do while we have control
+     * @param onStop Called on the worker thread if the task throws Stop, or null
+     */
+    public void submit(Task task, StopHandler onStop) {
+        lock.lock();
+        try {
+            unfinished++;
+        } finally {
+            lock.unlock();
+        }
+        worker.execute(() -> {
+            lock.lock();
+            try {
+                if (!controlled) {
+                    unfinished--;
+                    return;
+                }
+                running = Thread.currentThread();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                task.run();
+            } catch (MainActivity.Stop stop) {
+                if (onStop != null) {
+                    onStop.onStop(stop, !controlled);
+                }
+            } finally {
+                lock.lock();
+                try {
+                    running = null;
+                    unfinished--;
+                    // Do not let an interrupt for this session leak into the next one
+                    Thread.interrupted();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the given time, but returns early with a Stop as soon as we lose control.
+     */
+    public void pause(long ms) throws MainActivity.Stop {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(ms);
+        lock.lock();
+        try {
+            while (controlled) {
+                if (remaining <= 0) {
+                    return;
+                }
+                remaining = controlChanged.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            // We were interrupted because control was lost or the session is shutting down
+        } finally {
+            lock.unlock();
+        }
+        throw new MainActivity.Stop(false);
+    }
+
+    /**
+     * Like {@link #pause(long)}, but rides out a short loss of control. Notifications and other apps
+     * often take the glasses for a few seconds. If that happens, this waits up to resumeTimeoutMs
+     * for control to come back, runs onResume to put our screen back, and then waits out the rest
+     * of the pause. Losing control anywhere else in the session still stops it.
+     *
+     * @param onResume Called on the session thread once we have control again
+     */
+    public void pause(long ms, long resumeTimeoutMs, Task onResume) throws MainActivity.Stop {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms);
+        lock.lock();
+        try {
+            resumable = true;
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                while (controlled && remaining > 0) {
+                    remaining = controlChanged.awaitNanos(remaining);
+                }
+                if (controlled) {
+                    return;
+                }
+                // Lost control, wait for it to come back
+                long resumeRemaining = TimeUnit.MILLISECONDS.toNanos(resumeTimeoutMs);
+                while (!controlled && resumeRemaining > 0) {
+                    resumeRemaining = controlChanged.awaitNanos(resumeRemaining);
+                }
+                if (!controlled) {
+                    throw new MainActivity.Stop(false);
+                }
+                // Losing control again while we put the screen back stops the session as usual
+                resumable = false;
+                lock.unlock();
+                try {
+                    onResume.run();
+                } finally {
+                    lock.lock();
+                    resumable = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Only shutdown interrupts us here
+            throw new MainActivity.Stop(false);
+        } finally {
+            resumable = false;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Throws a Stop if we no longer have control. Call this before sending anything.
+     */
+    public void checkControl() throws MainActivity.Stop {
+        if (!controlled) {
+            throw new MainActivity.Stop(false);
+        }
+    }
+
+    /**
+     * Stops the running session and the worker thread.
+     */
+    public void shutdown() {
+        int dropped = worker.shutdownNow().size();
+        lock.lock();
+        try {
+            unfinished -= dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Receives the Stop that ended a session.
+     */
+    interface StopHandler {
+        /**
+         * @param stop The Stop the task threw
+         * @param lostControl True if we had lost control of the glasses by then
+         */
+        void onStop(MainActivity.Stop stop, boolean lostControl);
+    }
+}
@@ -0,0 +1,202 @@
+package com.vuzix.ultralite.sample;
+
+import com.vuzix.ultralite.LVGLImage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * This class keeps converted {@link LVGLImage}s in memory so we only pay for the conversion once.
+ *
+ * Converting a bitmap to an LVGL image is CPU heavy and creates a lot of garbage. Most apps push
+ * the same icons over and over, so we keep the results in a least-recently-used cache with a byte
+ * budget. When two threads ask for the same image at the same time, only one of them converts it
+ * and the other one waits for that result.
+ *
+ * @param <K> The key type. It must implement equals() and hashCode() over everything that affects
+ *            the converted image, such as the source, color format and size.
+ */
+class ImageCache<K> {
+
+    /**
+     * Converts the image for a key that is not in the cache.
+     */
+    interface Loader<K> {
+        Converted load(K key);
+    }
+
+    private final long maxBytes;
+
+    // Access-ordered so the eldest entry is always the least recently used. Guarded by "this".
+    private final LinkedHashMap<K, Converted> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, CompletableFuture<LVGLImage>> loading = new HashMap<>();
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached image for the key, converting it with the loader if needed. If another
+     * thread is already converting the same key, this waits for that conversion instead of
+     * starting a second one.
+     */
+    public LVGLImage get(K key, Loader<K> loader) {
+        CompletableFuture<LVGLImage> inFlight;
+        boolean owner = false;
+        synchronized (this) {
+            Converted entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.image;
+            }
+            misses++;
+            inFlight = loading.get(key);
+            if (inFlight == null) {
+                inFlight = new CompletableFuture<>();
+                loading.put(key, inFlight);
+                owner = true;
+            }
+        }
+
+        if (!owner) {
+            return join(inFlight);
+        }
+
+        Converted converted;
+        try {
+            converted = loader.load(key);
+            LinkMetrics.registerImage(converted.image, converted.bytes);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading.remove(key);
+            }
+            inFlight.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            loading.remove(key);
+            put(key, converted);
+        }
+        inFlight.complete(converted.image);
+        return converted.image;
+    }
+
+    /**
+     * Returns the cached image for the key without loading it, or null.
+     */
+    public synchronized LVGLImage peek(K key) {
+        Converted entry = entries.get(key);
+        return entry == null ? null : entry.image;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, entries.size(), currentBytes, maxBytes);
+    }
+
+    // Must be called while holding the lock
+    private void put(K key, Converted converted) {
+        if (converted.bytes > maxBytes) {
+            // Larger than the whole budget. The caller still gets it, but we do not keep it.
+            return;
+        }
+        Converted previous = entries.put(key, converted);
+        if (previous != null) {
+            currentBytes -= previous.bytes;
+        }
+        currentBytes += converted.bytes;
+        Iterator<Converted> eldest = entries.values().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static LVGLImage join(CompletableFuture<LVGLImage> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // Keep waiting, the converting thread is about to finish anyway
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Approximate number of bytes an indexed LVGL image uses: the palette followed by the packed
+     * rows, where each row starts on a byte boundary.
+     */
+    static long estimateBytes(int width, int height, int colorFormat) {
+        int bitsPerPixel = colorFormat == LVGLImage.CF_INDEXED_1_BIT ? 1 : 2;
+        long paletteBytes = 4L << bitsPerPixel;
+        long rowBytes = (width * bitsPerPixel + 7) / 8;
+        return paletteBytes + rowBytes * height;
+    }
+
+    /**
+     * The result of a conversion along with the number of bytes it is charged against the budget.
+     */
+    static class Converted {
+        final LVGLImage image;
+        final long bytes;
+
+        Converted(LVGLImage image, long bytes) {
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A point-in-time copy of the cache counters.
+     */
+    static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final int entryCount;
+        public final long bytes;
+        public final long maxBytes;
+
+        Stats(long hits, long misses, long evictions, int entryCount, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entryCount = entryCount;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                    + " entries=" + entryCount + " bytes=" + bytes + "/" + maxBytes;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.vuzix.ultralite.sample;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.vuzix.ultralite.LVGLImage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class measures what we send to the glasses: how many bytes each kind of command costs, how
+ * many commands are still in the Bluetooth queue, and how long the glasses take to confirm a
+ * commit or acknowledgement.
+ *
+ * The SDK does not report the real size of each message, so byte counts are estimates: a fixed
+ * overhead per command plus the text or image payload. Image sizes are known for every image our
+ * code converts, see {@link #registerImage}. Sending any other image is counted as an image of
+ * unknown size, so a missing size shows up instead of silently costing nothing. The estimates are
+ * close enough to tell which screens blow the latency budget.
+ *
+ * The unconfirmed count is the number of commands sent up to the last commit callback or
+ * acknowledgement that the glasses have not confirmed yet. Commands sent after that one are not
+ * counted, since nothing will tell us when they are processed.
+ *
+ * A running {@link AdaptiveScroller} also reports how many upcoming lines it has buffered, and how
+ * early the last one arrived.
+ *
+ * The numbers are published as {@link LiveData} so the phone UI can show them.
+ */
+class LinkMetrics {
+
+    enum Command {
+        SET_LAYOUT,
+        CREATE_TEXT,
+        UPDATE_TEXT,
+        CREATE_IMAGE,
+        UPDATE_IMAGE,
+        CREATE_ANIMATION,
+        MOVE,
+        SET_VISIBLE,
+        REMOVE,
+        DRAW_BACKGROUND,
+        CLEAR_BACKGROUND,
+        COMMIT,
+        SEND_SCROLL_IMAGE,
+        SCROLL,
+        SEND_NOTIFICATION,
+        ACKNOWLEDGEMENT
+    }
+
+    // Estimated framing and arguments of every command, on top of its payload
+    static final int COMMAND_OVERHEAD_BYTES = 8;
+    // Upper bounds in ms of the latency histogram buckets. The last bucket has no upper bound.
+    static final long[] LATENCY_BUCKETS_MS = {10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+    // How often the LiveData is updated at most. A change in between is published at the end of
+    // the interval.
+    private static final long PUBLISH_INTERVAL_MS = 250;
+
+    // Sizes of images we converted, so we can tell what sending them costs
+    private static final Map<LVGLImage, Long> imageBytes = new WeakHashMap<>();
+
+    private final long[] counts = new long[Command.values().length];
+    private final long[] bytes = new long[Command.values().length];
+    private final long[] latencyHistogram = new long[LATENCY_BUCKETS_MS.length + 1];
+    private long commandsSent;
+    // The sequence of the last fence we sent, and of the last one the glasses confirmed
+    private long lastFence;
+    private long commandsConfirmed;
+    private long unmeasuredImages;
+    private long lastPublishMs;
+    private boolean publishScheduled;
+    // -1 while no scroller is running
+    private int scrollBufferLines = -1;
+    private long scrollSlackMs;
+
+    private final MutableLiveData<Snapshot> snapshots = new MutableLiveData<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable trailingPublish = () -> {
+        synchronized (this) {
+            publishScheduled = false;
+        }
+        maybePublish(true);
+    };
+
+    /**
+     * Remembers the payload size of an image we converted.
+     */
+    static void registerImage(LVGLImage image, long payloadBytes) {
+        if (image == null) {
+            return;
+        }
+        synchronized (imageBytes) {
+            imageBytes.put(image, payloadBytes);
+        }
+    }
+
+    /**
+     * @return The payload size of an image, or 0 if we did not convert it ourselves
+     */
+    static long imageBytes(LVGLImage image) {
+        synchronized (imageBytes) {
+            Long size = imageBytes.get(image);
+            return size == null ? 0 : size;
+        }
+    }
+
+    /**
+     * Call this for every image a command carries.
+     *
+     * @return The payload size of the image, or 0 if we did not convert it ourselves. Those images
+     *         are counted, so the phone UI shows that the byte counts are missing them.
+     */
+    public long imagePayload(LVGLImage image) {
+        boolean known;
+        synchronized (imageBytes) {
+            known = imageBytes.containsKey(image);
+        }
+        if (!known) {
+            synchronized (this) {
+                unmeasuredImages++;
+            }
+            return 0;
+        }
+        return imageBytes(image);
+    }
+
+    static long textBytes(String text) {
+        // Close enough for the mostly ASCII text we send
+        return text == null ? 0 : text.length();
+    }
+
+    /**
+     * Counts a command we sent.
+     *
+     * @param payloadBytes The size of the text or image it carries
+     */
+    public void record(Command command, long payloadBytes) {
+        synchronized (this) {
+            count(command, payloadBytes);
+        }
+        maybePublish(false);
+    }
+
+    /**
+     * Records the state of the scroll buffer.
+     *
+     * @param lines Lines rendered or sent that are not on screen yet, or -1 once scrolling stops
+     * @param slackMs How early the last line arrived, negative if it was late
+     */
+    public void recordScrollBuffer(int lines, long slackMs) {
+        synchronized (this) {
+            scrollBufferLines = lines;
+            scrollSlackMs = slackMs;
+        }
+        maybePublish(lines < 0);
+    }
+
+    /**
+     * Call this when sending a commit with a callback or an acknowledgement request. Pass the
+     * returned token to {@link #fenceDone} when the glasses confirm it.
+     */
+    public Fence fenceSent(Command command) {
+        Fence fence;
+        synchronized (this) {
+            count(command, 0);
+            lastFence = commandsSent;
+            fence = new Fence(commandsSent, SystemClock.elapsedRealtime());
+        }
+        maybePublish(false);
+        return fence;
+    }
+
+    /**
+     * Call this when the glasses confirm a commit or acknowledgement.
+     */
+    public void fenceDone(Fence fence) {
+        long latency = SystemClock.elapsedRealtime() - fence.sentAtMs;
+        synchronized (this) {
+            commandsConfirmed = Math.max(commandsConfirmed, fence.sequence);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MS.length && latency >= LATENCY_BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            latencyHistogram[bucket]++;
+        }
+        maybePublish(true);
+    }
+
+    // Must be called while holding the lock
+    private void count(Command command, long payloadBytes) {
+        counts[command.ordinal()]++;
+        bytes[command.ordinal()] += COMMAND_OVERHEAD_BYTES + payloadBytes;
+        commandsSent++;
+    }
+
+    public LiveData<Snapshot> getSnapshots() {
+        return snapshots;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(counts.clone(), bytes.clone(), latencyHistogram.clone(),
+                Math.max(0, lastFence - commandsConfirmed), unmeasuredImages, scrollBufferLines, scrollSlackMs);
+    }
+
+    private void maybePublish(boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        Snapshot snapshot;
+        synchronized (this) {
+            if (!force && now - lastPublishMs < PUBLISH_INTERVAL_MS) {
+                // Publish the last change too, even if nothing else is recorded after it
+                if (!publishScheduled) {
+                    publishScheduled = true;
+                    handler.postDelayed(trailingPublish, lastPublishMs + PUBLISH_INTERVAL_MS - now);
+                }
+                return;
+            }
+            lastPublishMs = now;
+            snapshot = snapshot();
+        }
+        snapshots.postValue(snapshot);
+    }
+
+    /**
+     * Marks a point in the command stream the glasses will confirm.
+     */
+    static final class Fence {
+        final long sequence;
+        final long sentAtMs;
+
+        Fence(long sequence, long sentAtMs) {
+            this.sequence = sequence;
+            this.sentAtMs = sentAtMs;
+        }
+    }
+
+    /**
+     * A point-in-time copy of the metrics.
+     */
+    static final class Snapshot {
+        public final long[] counts;
+        public final long[] bytes;
+        public final long[] latencyHistogram;
+        public final long unconfirmed;
+        public final long unmeasuredImages;
+        public final int scrollBufferLines;
+        public final long scrollSlackMs;
+
+        Snapshot(long[] counts, long[] bytes, long[] latencyHistogram, long unconfirmed,
+                 long unmeasuredImages, int scrollBufferLines, long scrollSlackMs) {
+            this.counts = counts;
+            this.bytes = bytes;
+            this.latencyHistogram = latencyHistogram;
+            this.unconfirmed = unconfirmed;
+            this.unmeasuredImages = unmeasuredImages;
+            this.scrollBufferLines = scrollBufferLines;
+            this.scrollSlackMs = scrollSlackMs;
+        }
+
+        public long getTotalBytes() {
+            long total = 0;
+            for (long b : bytes) {
+                total += b;
+            }
+            return total;
+        }
+
+        /**
+         * @param percentile Between 0 and 100
+         * @return The upper bound in ms of the histogram bucket holding that percentile, -1 if
+         *         nothing was measured, or Long.MAX_VALUE for the open-ended last bucket
+         */
+        public long latencyPercentileMs(int percentile) {
+            long total = 0;
+            for (long count : latencyHistogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return -1;
+            }
+            long rank = (total * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < latencyHistogram.length; i++) {
+                seen += latencyHistogram[i];
+                if (seen >= rank) {
+                    return i < LATENCY_BUCKETS_MS.length ? LATENCY_BUCKETS_MS[i] : Long.MAX_VALUE;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * @return A short multi-line summary for the phone UI
+         */
+        public String toDisplayString() {
+            StringBuilder text = new StringBuilder();
+            text.append("Sent ").append(getTotalBytes() / 1024).append(" KB, unconfirmed ")
+                    .append(unconfirmed).append(", ack p50 ").append(formatLatency(latencyPercentileMs(50)))
+                    .append(" p95 ").append(formatLatency(latencyPercentileMs(95)));
+            if (unmeasuredImages > 0) {
+                text.append("\n").append(unmeasuredImages).append(" images of unknown size not counted");
+            }
+            if (scrollBufferLines >= 0) {
+                text.append("\nScroll buffer ").append(scrollBufferLines).append(" lines, slack ")
+                        .append(scrollSlackMs).append("ms");
+            }
+            // The three most expensive commands
+            Integer[] order = new Integer[bytes.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(bytes[b], bytes[a]));
+            for (int i = 0; i < 3 && counts[order[i]] > 0; i++) {
+                Command command = Command.values()[order[i]];
+                text.append('\n').append(command).append(": ").append(counts[order[i]])
+                        .append(" x, ").append(bytes[order[i]] / 1024).append(" KB");
+            }
+            return text.toString();
+        }
+
+        private static String formatLatency(long ms) {
+            if (ms < 0) {
+                return "-";
+            }
+            if (ms == Long.MAX_VALUE) {
+                return ">" + LATENCY_BUCKETS_MS[LATENCY_BUCKETS_MS.length - 1] + "ms";
+            }
+            return "<" + ms + "ms";
+        }
+    }
+}
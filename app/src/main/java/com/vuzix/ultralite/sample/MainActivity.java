@@ -2,11 +2,13 @@ package com.vuzix.ultralite.sample;
 
 import android.app.Application;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.SystemClock;
+import android.util.Log;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -20,8 +22,14 @@ import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 
+import com.vuzix.ultralite.Anchor;
 import com.vuzix.ultralite.LVGLImage;
 import com.vuzix.ultralite.UltraliteSDK;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+import com.vuzix.ultralite.sample.lvgl.PayloadAnalyzer;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class sets up a basic connection to the Z100 glasses using the ultralite SDK
@@ -29,7 +37,7 @@ import com.vuzix.ultralite.UltraliteSDK;
  * The primary role of this class is to monitor the Z100 state, and handle the request and release
  * of control.
  *
- * It also demonstrates sending notifications.
+ * It also demonstrates sending notifications, and shows what the demo costs on the Bluetooth link.
  */
 public class MainActivity extends AppCompatActivity {
 
@@ -47,6 +55,7 @@ public class MainActivity extends AppCompatActivity {
         ImageView controlledImageView = findViewById(R.id.controlled);
         Button demoButton = findViewById(R.id.run_demo);
         Button notificationButton = findViewById(R.id.send_notification);
+        TextView linkStatsTextView = findViewById(R.id.link_stats);
 
         // Get the instance of the SDK
         UltraliteSDK ultralite = UltraliteSDK.get(this);
@@ -87,9 +96,14 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        // Show how many bytes each kind of command costs and how quickly the glasses confirm them,
+        // so we can tell which screens are too heavy for the link
+        model.getMetrics().getSnapshots().observe(this, snapshot ->
+                linkStatsTextView.setText(snapshot.toDisplayString()));
+
         // Now set the click listeners to kick-off the two demos
         demoButton.setOnClickListener(v -> model.runDemo());
-        notificationButton.setOnClickListener(v -> sendSampleNotification() );
+        notificationButton.setOnClickListener(v -> sendSampleNotification(model.getLink()) );
     }
 
     /**
@@ -106,32 +120,81 @@ public class MainActivity extends AppCompatActivity {
      *
      * When you run this demo, try hitting the "send notification" button while the app is idle, and
      * while a demo is running to see the difference.
+     *
+     * Loading the image may hash, decode or convert the drawable when the warm-up has not got to it
+     * yet, so it is done off the main thread and the notification goes out when it is ready.
      */
-    private void sendSampleNotification() {
-        UltraliteSDK ultralite = UltraliteSDK.get(this);
-        ultralite.sendNotification("Ultralite SDK Sample", "Hello from a sample app!",
-                loadLVGLImage(this, R.drawable.rocket, false));
+    private void sendSampleNotification(MeteredUltralite ultralite) {
+        Context context = getApplicationContext();
+        CompletableFuture.supplyAsync(() -> loadLVGLImage(context, R.drawable.rocket, false))
+                .thenAccept(image -> ultralite.sendNotification("Ultralite SDK Sample",
+                        "Hello from a sample app!", image))
+                .exceptionally(e -> {
+                    Log.e(TAG, "Cannot send the sample notification", e);
+                    return null;
+                });
     }
 
     /**
      * This ViewModel will hold our state during the demo.
      */
     public static class DemoActivityViewModel extends AndroidViewModel {
+        // How long a demo waits for control to come back after another app took the glasses
+        private static final long RESUME_TIMEOUT_MS = 15000;
 
         private final UltraliteSDK ultralite;
 
         private final MutableLiveData<Boolean> running = new MutableLiveData<>();
-        private boolean haveControlOfGlasses;
+        // Runs the demo on one reusable worker thread and stops it as soon as we lose control
+        private final GlassesSession session = new GlassesSession();
+        // Our one listener for events from the glasses. The demos read from it with cursors.
+        private final EventHub events = new EventHub();
+        // Everything the demos send goes through this, so we can measure the Bluetooth link
+        private final MeteredUltralite link;
+        private final UltraliteFutures futures;
+        // True from starting a demo until it ends. Control that comes back after that is not ours
+        // to keep.
+        private volatile boolean demoWanted;
+        // True while a request for control we made to resume the demo is unanswered. Only used on
+        // the main thread.
+        private boolean controlBackPending;
 
         public DemoActivityViewModel(@NonNull Application application) {
             super(application);
             ultralite = UltraliteSDK.get(application);
             ultralite.getControlledByMe().observeForever(controlledObserver);
+            ultralite.addEventListener(events);
+            link = new MeteredUltralite(ultralite, new LinkMetrics());
+            futures = new UltraliteFutures(link, events);
+            // Get the images and text slices ready while the user is still connecting the glasses
+            Thread warmUp = new Thread(() -> warmUp(application), "PayloadWarmUp");
+            warmUp.setDaemon(true);
+            warmUp.setPriority(Thread.MIN_PRIORITY);
+            warmUp.start();
+        }
+
+        // Converts or maps everything the demos send first, so the first frame does not wait for
+        // it. On the first start this fills the PayloadStore, later it only pages the files in.
+        private static void warmUp(Context context) {
+            long startMs = SystemClock.elapsedRealtime();
+            try {
+                loadLVGLImage(context, R.drawable.rocket, false);
+                DemoCanvasLayout.warmUp(context);
+                DemoScrollAdaptive.warmUp(context);
+                DemoScrollNative.warmUp(context);
+            } catch (RuntimeException e) {
+                // The demos convert whatever is missing themselves
+                Log.w(TAG, "Warm-up failed", e);
+            }
+            Log.d(TAG, "Warm-up took " + (SystemClock.elapsedRealtime() - startMs) + "ms, store: "
+                    + PayloadStore.get(context));
         }
 
         @Override
         protected void onCleared() {
             ultralite.releaseControl();
+            ultralite.removeEventListener(events);
+            session.shutdown();
             // We can delay removing the observer to allow us to be notified of losing control
             // Or we could have just set our state from here.
             new Handler(Looper.getMainLooper()).postDelayed(() ->
@@ -142,39 +205,85 @@ public class MainActivity extends AppCompatActivity {
         // an application will have other logic that drives the UI, and the Z100 output will be
         // driven by that.
         private void runDemo() {
-            if (haveControlOfGlasses) {
-                startDemoThread();
+            if (session.isControlled()) {
+                startDemo();
             } else {
+                // Whatever answers this request is wanted again, even an old one
+                controlBackPending = false;
                 ultralite.requestControl();
             }
         }
 
-        private void startDemoThread() {
-            new Thread(() -> {
-                // Always be sure we have control before any drawing starts
-                if(haveControlOfGlasses) {
-                    running.postValue(true);
-                    try {
-                        DemoCanvasLayout.runDemo(getApplication(), this, ultralite);
-                        DemoScrollAutoScroller.runDemo(getApplication(), this, ultralite);
-                        DemoScrollLiveText.runDemo(getApplication(), this, ultralite);
-                        DemoScrollNative.runDemo(getApplication(), this, ultralite);
-                        DemoTapInput.runDemo(getApplication(), this, ultralite);
-
-                        // Always release control when finished drawing to the glasses
-                        ultralite.releaseControl();
-                        ultralite.sendNotification("Demo Success", "The demo is over");
-                    } catch (Stop stop) {
-                        ultralite.releaseControl(); // Release when aborting, too.
-                        if (stop.error) {
-                            ultralite.sendNotification("Demo Error", "An error occurred during the demo");
-                        } else {
-                            ultralite.sendNotification("Demo Control Lost", "The demo lost control of the glasses");
-                        }
-                    }
-                    running.postValue(false);
+        private void startDemo() {
+            if (session.isRunning()) {
+                return;
+            }
+            demoWanted = true;
+            // The session only runs this while we have control, so drawing never starts without it
+            session.submit(() -> {
+                running.postValue(true);
+                DemoCanvasLayout.runDemo(getApplication(), this, ultralite);
+                DemoScrollAutoScroller.runDemo(getApplication(), this, ultralite);
+                DemoScrollAdaptive.runDemo(getApplication(), this, ultralite);
+                DemoScrollLiveText.runDemo(getApplication(), this, ultralite);
+                DemoScrollNative.runDemo(getApplication(), this, ultralite);
+                DemoTapInput.runDemo(getApplication(), this, ultralite);
+
+                // Always release control when finished drawing to the glasses
+                demoWanted = false;
+                ultralite.releaseControl();
+                link.sendNotification("Demo Success", "The demo is over");
+                Log.d(TAG, "Image cache: " + getImageCacheStats());
+                Log.d(TAG, "Slice cache: " + SliceCache.getStats());
+                Log.d(TAG, "Payload store: " + PayloadStore.get(getApplication()));
+                Log.d(TAG, "Link: " + link.getMetrics().snapshot().toDisplayString());
+                running.postValue(false);
+            }, (stop, lostControl) -> {
+                demoWanted = false;
+                ultralite.releaseControl(); // Release when aborting, too.
+                // Any wait that was cut short by losing control counts as losing control
+                if (stop.error && !lostControl) {
+                    link.sendNotification("Demo Error", "An error occurred during the demo");
+                } else {
+                    link.sendNotification("Demo Control Lost", "The demo lost control of the glasses");
                 }
-            }).start();
+                running.postValue(false);
+            });
+        }
+
+        /**
+         * @return The hub that receives every event from the glasses while this model exists
+         */
+        public EventHub getEvents() {
+            return events;
+        }
+
+        /**
+         * @return The session the demos run in, which follows the control state of the glasses
+         */
+        public GlassesSession getSession() {
+            return session;
+        }
+
+        /**
+         * @return The metered wrapper around the SDK that the demos send through
+         */
+        public MeteredUltralite getLink() {
+            return link;
+        }
+
+        /**
+         * @return The transfer metrics of everything sent through {@link #getLink()}
+         */
+        public LinkMetrics getMetrics() {
+            return link.getMetrics();
+        }
+
+        /**
+         * @return Future-based versions of the SDK operations the demos wait on
+         */
+        public UltraliteFutures getFutures() {
+            return futures;
         }
 
         // This is a convenience class to pause our thread and generate a Stop exception if the
@@ -184,25 +293,55 @@ public class MainActivity extends AppCompatActivity {
         }
 
         // This is a convenience class to pause our thread and generate a Stop exception if the
-        // user wants to abort
+        // user wants to abort. If another app takes the glasses for a moment, it waits for them to
+        // come back and puts our screen back as it was, instead of starting over. If the screen
+        // was drawn by something the scene does not retain, the demo stops instead.
         public void pause(long ms) throws Stop {
-            SystemClock.sleep(ms);
-            if (!haveControlOfGlasses) {
-                // Throw Stop when we lose control
+            session.pause(ms, RESUME_TIMEOUT_MS, this::resumeScene);
+        }
+
+        // Only what is on the screen right now is sent again, not every step that led there
+        private void resumeScene() throws Stop {
+            if (!link.restoreScene()) {
+                // Carrying on would leave the user looking at a screen the demo did not draw
+                Log.w(TAG, "Part of the screen could not be restored");
                 throw new Stop(false);
             }
+            Log.d(TAG, "Resumed after losing control: " + link.getMetrics().snapshot().toDisplayString());
+        }
+
+        private void requestControlBack() {
+            controlBackPending = true;
+            ultralite.requestControl();
+        }
+
+        private void giveControlBack() {
+            ultralite.releaseControl();
         }
 
         private final Observer<Boolean> controlledObserver = controlled -> {
+            // The session wakes up any waits as soon as this changes
+            session.setControlled(controlled);
+            if (controlled && controlBackPending) {
+                controlBackPending = false;
+                // The demo gave up waiting, or finished, before the glasses answered. Give control
+                // straight back rather than starting the demo over.
+                if (!demoWanted) {
+                    giveControlBack();
+                    return;
+                }
+            }
             if (controlled) {
                 // We wait to start the demo until the SDK confirms we have received control.
-                haveControlOfGlasses = true;
-                startDemoThread();
-            } else {
-                // If we later lose control of the glasses we stop the demo. (Your app may choose to
-                // continue running without the glasses UI and wait for them to reconnect to begin,
-                // streaming to them again.).
-                haveControlOfGlasses = false;
+                startDemo();
+            }
+            // If we later lose control of the glasses in the middle of a demo, we ask for it back.
+            // The glasses hand it over once the other app is done, and the demo carries on where
+            // it was. If that takes too long, the session stops the demo. (Your app may choose to
+            // continue running without the glasses UI and wait for them to reconnect to begin,
+            // streaming to them again.).
+            if (!controlled && session.isRunning()) {
+                requestControlBack();
             }
         };
     }
@@ -217,6 +356,11 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // Converted resource images are shared by every demo and the notification button. Full-screen
+    // 2-bit images are about 77KB, so this holds a couple of backgrounds plus plenty of icons.
+    private static final long IMAGE_CACHE_BYTES = 512 * 1024;
+    private static final ImageCache<ResourceImageKey> resourceImages = new ImageCache<>(IMAGE_CACHE_BYTES);
+
     /**
      * This is a convenience method to get LVGL images from resources
      * @param context Application context
@@ -226,9 +370,122 @@ public class MainActivity extends AppCompatActivity {
      * @return LVGLImage at the original bitmap dimensions
      */
     static LVGLImage loadLVGLImage(Context context, int resource, boolean singleBit) {
+        return loadLVGLImage(context, resource, singleBit, 0, 0);
+    }
+
+    /**
+     * This is a convenience method to get LVGL images from resources, scaled to a target size.
+     *
+     * The result is cached, so asking for the same resource, color format and size again does not
+     * decode or convert the bitmap a second time. It is also kept in the {@link PayloadStore}, so
+     * later starts of the app skip the conversion too. The conversion itself decodes the resource
+     * in bands with a {@link BandedDecoder}, so its memory does not grow with the image size.
+     *
+     * @param context Application context
+     * @param resource Resource ID of a bitmap
+     * @param singleBit True to render as single-bit (black and white) only. False for 2-bit per pixel.
+     * @param width Target width in pixels, or 0 to keep the original bitmap width
+     * @param height Target height in pixels, or 0 to keep the original bitmap height
+     * @return LVGLImage at the requested dimensions
+     */
+    static LVGLImage loadLVGLImage(Context context, int resource, boolean singleBit, int width, int height) {
+        int colorSpace = singleBit ? LVGLImage.CF_INDEXED_1_BIT : LVGLImage.CF_INDEXED_2_BIT ;
+        ResourceImageKey key = new ResourceImageKey(resource, colorSpace, width, height, null);
+        return resourceImages.get(key, k -> {
+            // Decoding and converting is done once per install, after that the stored levels are used
+            PayloadStore store = PayloadStore.get(context);
+            int bitsPerPixel = singleBit ? IndexedPacker.BPP_1 : IndexedPacker.BPP_2;
+            String storeKey = "image/" + store.hashResource(context, k.resource) + "/" + bitsPerPixel
+                    + "/" + k.width + "x" + k.height;
+            PayloadStore.Entry entry = store.getOrRender(storeKey, out -> {
+                // Decode a band of rows at a time straight into the packed image, so a large
+                // drawable is never in the heap whole
+                if (BandedDecoder.decode(context, k.resource, k.width, k.height, bitsPerPixel, out)) {
+                    return;
+                }
+                Bitmap bitmap = loadBitmap(context, k.resource);
+                int targetWidth = k.width > 0 ? k.width : bitmap.getWidth();
+                int targetHeight = k.height > 0 ? k.height : bitmap.getHeight();
+                if (targetWidth != bitmap.getWidth() || targetHeight != bitmap.getHeight()) {
+                    bitmap = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+                }
+                out.add(bitmap, bitsPerPixel);
+            });
+            return new ImageCache.Converted(entry.image(0), entry.getBytes(0));
+        });
+    }
+
+    /**
+     * This is a convenience method to get the smallest LVGL image of a resource for
+     * createImage and updateImage. Instead of choosing single-bit or 2-bit yourself, this looks at
+     * the pixels, picks the format and crops empty borders without moving the image, see
+     * {@link PayloadMinimizer}. The result is cached in memory and in the {@link PayloadStore}.
+     *
+     * @param context Application context
+     * @param resource Resource ID of a bitmap
+     * @param anchor The anchor the image will be created with
+     */
+    static LVGLImage loadMinimizedImage(Context context, int resource, Anchor anchor) {
+        ResourceImageKey key = new ResourceImageKey(resource, 0, 0, 0, anchor);
+        return resourceImages.get(key, k -> {
+            PayloadStore store = PayloadStore.get(context);
+            String storeKey = "minimized/" + store.hashResource(context, k.resource) + "/" + k.anchor;
+            PayloadStore.Entry entry = store.getOrRender(storeKey, out -> {
+                Bitmap bitmap = loadBitmap(context, k.resource);
+                PayloadAnalyzer.Result analysis = PayloadMinimizer.analyzeForAnchor(bitmap, k.anchor);
+                out.add(PayloadMinimizer.crop(bitmap, analysis), analysis.bitsPerPixel);
+            });
+            return new ImageCache.Converted(entry.image(0), entry.getBytes(0));
+        });
+    }
+
+    /**
+     * This is a convenience method to get the decoded bitmap of a drawable resource
+     * @param context Application context
+     * @param resource Resource ID of a bitmap
+     * @return The Bitmap at its original dimensions
+     */
+    static Bitmap loadBitmap(Context context, int resource) {
         BitmapDrawable drawable = (BitmapDrawable) ResourcesCompat.getDrawable(
                 context.getResources(), resource, context.getTheme());
-        int colorSpace = singleBit ? LVGLImage.CF_INDEXED_1_BIT : LVGLImage.CF_INDEXED_2_BIT ;
-        return LVGLImage.fromBitmap(drawable.getBitmap(), colorSpace);
+        return drawable.getBitmap();
+    }
+
+    static ImageCache.Stats getImageCacheStats() {
+        return resourceImages.getStats();
+    }
+
+    // Everything that changes the converted output of a resource image
+    private static class ResourceImageKey {
+        final int resource;
+        // 0 when the minimizer picks the format
+        final int colorSpace;
+        final int width;
+        final int height;
+        // Only set for minimized images, since it decides the crop
+        final Anchor anchor;
+
+        ResourceImageKey(int resource, int colorSpace, int width, int height, Anchor anchor) {
+            this.resource = resource;
+            this.colorSpace = colorSpace;
+            this.width = width;
+            this.height = height;
+            this.anchor = anchor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ResourceImageKey)) {
+                return false;
+            }
+            ResourceImageKey other = (ResourceImageKey) o;
+            return resource == other.resource && colorSpace == other.colorSpace
+                    && width == other.width && height == other.height && anchor == other.anchor;
+        }
+
+        @Override
+        public int hashCode() {
+            return (((resource * 31 + colorSpace) * 31 + width) * 31 + height) * 31 + Objects.hashCode(anchor);
+        }
     }
 }
@@ -0,0 +1,245 @@
+package com.vuzix.ultralite.sample;
+
+import com.vuzix.ultralite.Anchor;
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.Layout;
+import com.vuzix.ultralite.TextAlignment;
+import com.vuzix.ultralite.TextWrapMode;
+import com.vuzix.ultralite.UltraliteColor;
+import com.vuzix.ultralite.UltraliteSDK;
+
+/**
+ * This class wraps the {@link UltraliteSDK} calls this app uses to send data to the glasses, and
+ * records each one in {@link LinkMetrics}.
+ *
+ * Canvas commands are recorded by the {@link CanvasBatcher} from {@link #newCanvasBatcher()}, or by
+ * the {@link CanvasView} from {@link #getCanvas()} for code that sends them in its own order, and
+ * scroll commands by the {@link ScrollView} from {@link #getScrollingTextView()}. The SDK helpers
+ * such as AutoScroller send on their own and are not counted.
+ *
+ * What we send through the batcher and the scroll view is also kept in a {@link RetainedScene}, so
+ * {@link #restoreScene()} can put the screen back after another app had control of the glasses.
+ * The {@link CanvasView} is not retained, so drawing with it marks the scene as lost until the next
+ * layout is set. Code that sends around this class must call {@link #invalidateScene()}.
+ */
+class MeteredUltralite {
+    private final UltraliteSDK ultralite;
+    private final LinkMetrics metrics;
+    private final ScrollView scrollView;
+    private final CanvasView canvasView;
+    private final RetainedScene scene = new RetainedScene();
+
+    public MeteredUltralite(UltraliteSDK ultralite, LinkMetrics metrics) {
+        this.ultralite = ultralite;
+        this.metrics = metrics;
+        this.scrollView = new ScrollView();
+        this.canvasView = new CanvasView();
+    }
+
+    /**
+     * Wraps the SDK with metrics nobody looks at, for code that does not care about them.
+     */
+    public MeteredUltralite(UltraliteSDK ultralite) {
+        this(ultralite, new LinkMetrics());
+    }
+
+    public UltraliteSDK getSdk() {
+        return ultralite;
+    }
+
+    public LinkMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setLayout(Layout layout, int timeout, boolean hideStatusBar) {
+        ultralite.setLayout(layout, timeout, hideStatusBar);
+        metrics.record(LinkMetrics.Command.SET_LAYOUT, 0);
+        scene.layoutSet(layout, timeout, hideStatusBar);
+    }
+
+    public void setLayout(Layout layout, int timeout, boolean hideStatusBar, boolean animateTaps, int maxTaps) {
+        ultralite.setLayout(layout, timeout, hideStatusBar, animateTaps, maxTaps);
+        metrics.record(LinkMetrics.Command.SET_LAYOUT, 0);
+        scene.layoutSet(layout, timeout, hideStatusBar, animateTaps, maxTaps);
+    }
+
+    public void sendNotification(String title, String message) {
+        ultralite.sendNotification(title, message);
+        metrics.record(LinkMetrics.Command.SEND_NOTIFICATION,
+                LinkMetrics.textBytes(title) + LinkMetrics.textBytes(message));
+    }
+
+    public void sendNotification(String title, String message, LVGLImage image) {
+        ultralite.sendNotification(title, message, image);
+        metrics.record(LinkMetrics.Command.SEND_NOTIFICATION,
+                LinkMetrics.textBytes(title) + LinkMetrics.textBytes(message) + metrics.imagePayload(image));
+    }
+
+    /**
+     * Requests an acknowledgement, and measures how long the glasses take to send it.
+     */
+    public void requestAcknowledgement(Runnable callback) {
+        LinkMetrics.Fence fence = metrics.fenceSent(LinkMetrics.Command.ACKNOWLEDGEMENT);
+        ultralite.requestAcknowledgement(() -> {
+            metrics.fenceDone(fence);
+            callback.run();
+        });
+    }
+
+    /**
+     * @return A new batcher for the canvas that records what it sends. This is the batcher whose
+     *         elements {@link #restoreScene()} puts back, until the next one is created.
+     */
+    public CanvasBatcher newCanvasBatcher() {
+        CanvasBatcher canvas = new CanvasBatcher(ultralite.getCanvas(), metrics);
+        scene.canvasCreated(canvas);
+        return canvas;
+    }
+
+    /**
+     * Sends the layout and content we last sent again. Call this when we get control back after
+     * another app had it. This must run on the thread that drives the glasses UI, since it uses
+     * the current {@link CanvasBatcher}.
+     *
+     * @return False if part of the screen could not be restored and must be drawn again
+     */
+    public boolean restoreScene() {
+        return scene.restore(this);
+    }
+
+    /**
+     * Tells the scene that something it does not know about was drawn, such as by the SDK
+     * AutoScroller. {@link #restoreScene()} then only sends the layout and returns false, until
+     * the next layout is set.
+     */
+    public void invalidateScene() {
+        scene.invalidate();
+    }
+
+    public ScrollView getScrollingTextView() {
+        return scrollView;
+    }
+
+    /**
+     * @return The canvas, sending every command right away. Use a {@link CanvasBatcher} instead
+     *         unless the commands must go out in an order of your own, as in {@link CommandScheduler}.
+     */
+    public CanvasView getCanvas() {
+        return canvasView;
+    }
+
+    /**
+     * The metered version of {@link UltraliteSDK.Canvas}. Images carry the size of their payload,
+     * since the SDK cannot tell us what an image costs. What it draws is not retained.
+     */
+    class CanvasView {
+        public int createText(String text, TextAlignment alignment, UltraliteColor color, Anchor anchor,
+                              int x, int y, int width, int height, TextWrapMode wrapMode, boolean visible) {
+            int id = ultralite.getCanvas().createText(text, alignment, color, anchor, x, y, width, height, wrapMode, visible);
+            sent(LinkMetrics.Command.CREATE_TEXT, LinkMetrics.textBytes(text));
+            return id;
+        }
+
+        public void updateText(int id, String text) {
+            ultralite.getCanvas().updateText(id, text);
+            sent(LinkMetrics.Command.UPDATE_TEXT, LinkMetrics.textBytes(text));
+        }
+
+        public void moveText(int id, Anchor anchor, int x, int y) {
+            ultralite.getCanvas().moveText(id, anchor, x, y);
+            sent(LinkMetrics.Command.MOVE, 0);
+        }
+
+        public void setTextVisible(int id, boolean visible) {
+            ultralite.getCanvas().setTextVisible(id, visible);
+            sent(LinkMetrics.Command.SET_VISIBLE, 0);
+        }
+
+        public void removeText(int id) {
+            ultralite.getCanvas().removeText(id);
+            sent(LinkMetrics.Command.REMOVE, 0);
+        }
+
+        public int createImage(LVGLImage image, long bytes, Anchor anchor) {
+            int id = ultralite.getCanvas().createImage(image, anchor);
+            sent(LinkMetrics.Command.CREATE_IMAGE, bytes);
+            return id;
+        }
+
+        public void updateImage(int id, LVGLImage image, long bytes) {
+            ultralite.getCanvas().updateImage(id, image);
+            sent(LinkMetrics.Command.UPDATE_IMAGE, bytes);
+        }
+
+        public void moveImage(int id, int x, int y) {
+            ultralite.getCanvas().moveImage(id, x, y);
+            sent(LinkMetrics.Command.MOVE, 0);
+        }
+
+        public void setImageVisible(int id, boolean visible) {
+            ultralite.getCanvas().setImageVisible(id, visible);
+            sent(LinkMetrics.Command.SET_VISIBLE, 0);
+        }
+
+        public void removeImage(int id) {
+            ultralite.getCanvas().removeImage(id);
+            sent(LinkMetrics.Command.REMOVE, 0);
+        }
+
+        public void drawBackground(LVGLImage image, long bytes, int x, int y) {
+            ultralite.getCanvas().drawBackground(image, x, y);
+            sent(LinkMetrics.Command.DRAW_BACKGROUND, bytes);
+        }
+
+        public void clearBackgroundRect(int x, int y, int width, int height) {
+            ultralite.getCanvas().clearBackgroundRect(x, y, width, height);
+            sent(LinkMetrics.Command.CLEAR_BACKGROUND, 0);
+        }
+
+        /**
+         * Commits, and measures how long the glasses take to confirm it.
+         */
+        public void commit(Runnable callback) {
+            LinkMetrics.Fence fence = metrics.fenceSent(LinkMetrics.Command.COMMIT);
+            ultralite.getCanvas().commit(() -> {
+                metrics.fenceDone(fence);
+                callback.run();
+            });
+        }
+
+        // The scene cannot put back what we draw here, so it is lost once we draw
+        private void sent(LinkMetrics.Command command, long bytes) {
+            metrics.record(command, bytes);
+            scene.invalidate();
+        }
+    }
+
+    /**
+     * The metered version of {@link UltraliteSDK.ScrollingTextView}.
+     */
+    class ScrollView {
+        public void scrollLayoutConfig(int sliceHeight, int lowestLine, int linesShowing, int scrollMs, boolean autoScroll) {
+            ultralite.getScrollingTextView().scrollLayoutConfig(sliceHeight, lowestLine, linesShowing, scrollMs, autoScroll);
+            metrics.record(LinkMetrics.Command.SET_LAYOUT, 0);
+            scene.scrollConfigured(sliceHeight, lowestLine, linesShowing, scrollMs, autoScroll);
+        }
+
+        public void sendScrollImage(LVGLImage image, int index, boolean scrollFirst) {
+            ultralite.getScrollingTextView().sendScrollImage(image, index, scrollFirst);
+            metrics.record(LinkMetrics.Command.SEND_SCROLL_IMAGE, metrics.imagePayload(image));
+            scene.scrollImageSent(image, index, scrollFirst);
+        }
+
+        public void scrollNow() {
+            ultralite.getScrollingTextView().scrollNow();
+            metrics.record(LinkMetrics.Command.SCROLL, 0);
+            scene.scrolled();
+        }
+
+        public void clear(int index) {
+            ultralite.getScrollingTextView().clear(index);
+            metrics.record(LinkMetrics.Command.SCROLL, 0);
+            scene.cleared(index);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Bitmap;
+
+import com.vuzix.ultralite.Anchor;
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+import com.vuzix.ultralite.sample.lvgl.PayloadAnalyzer;
+
+/**
+ * This class converts bitmaps into the smallest LVGLImage that looks the same on the glasses.
+ *
+ * Instead of the caller picking single-bit or 2-bit by hand, a {@link PayloadAnalyzer} looks at
+ * the actual pixels first. Black and transparent borders are cropped, and line art is sent as a
+ * single-bit image. The crop depends on the anchor, so the image stays exactly where it would have
+ * been: an image anchored at its center loses the same amount on both sides, an image anchored at
+ * its left edge only loses its right border, and so on.
+ *
+ * Background images are placed by their top left corner, so they can lose every border and come
+ * with an offset to add to the position. The background does not allow single-bit images, so they
+ * are always 2-bit.
+ */
+class PayloadMinimizer {
+    // Line art with antialiased edges has roughly a quarter of its pixels gray. Rounding those is
+    // hard to see on the glasses, while photos are mostly gray and stay 2-bit.
+    static final float LINE_ART_GRAY_TOLERANCE = 0.3f;
+
+    /**
+     * A converted image, and where to draw it.
+     */
+    static final class Minimized {
+        public final LVGLImage image;
+        // Add these to the position of the uncropped image. Always 0 for anchored images.
+        public final int offsetX;
+        public final int offsetY;
+        public final int colorFormat;
+        public final PayloadAnalyzer.Result analysis;
+
+        Minimized(LVGLImage image, int offsetX, int offsetY, int colorFormat, PayloadAnalyzer.Result analysis) {
+            this.image = image;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.colorFormat = colorFormat;
+            this.analysis = analysis;
+        }
+
+        public long getBytes() {
+            return analysis.getBytes();
+        }
+    }
+
+    private PayloadMinimizer() {
+    }
+
+    /**
+     * Converts an image for createImage or updateImage, placed by the given anchor.
+     */
+    static Minimized forAnchor(Bitmap bitmap, Anchor anchor) {
+        return convert(bitmap, analyzeForAnchor(bitmap, anchor), false);
+    }
+
+    /**
+     * Picks the format and crop {@link #forAnchor} would use, without converting. Use
+     * {@link #crop} to apply the crop, for callers that store the pixels themselves.
+     */
+    static PayloadAnalyzer.Result analyzeForAnchor(Bitmap bitmap, Anchor anchor) {
+        return analyze(bitmap, LINE_ART_GRAY_TOLERANCE, anchor);
+    }
+
+    /**
+     * @return The part of the bitmap the analysis keeps, or the bitmap itself if nothing is cropped
+     */
+    static Bitmap crop(Bitmap bitmap, PayloadAnalyzer.Result analysis) {
+        if (!analysis.isCropped()) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, analysis.left, analysis.top, analysis.width, analysis.height);
+    }
+
+    /**
+     * Converts the frames of an animation. They are cropped and converted alike, since the frames
+     * of an animation must match.
+     */
+    static LVGLImage[] forAnimation(Bitmap[] frames, Anchor anchor) {
+        PayloadAnalyzer.Result analysis = null;
+        for (Bitmap frame : frames) {
+            PayloadAnalyzer.Result result = analyze(frame, LINE_ART_GRAY_TOLERANCE, anchor);
+            analysis = analysis == null ? result : analysis.union(result);
+        }
+        LVGLImage[] images = new LVGLImage[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            images[i] = convert(frames[i], analysis, false).image;
+        }
+        return images;
+    }
+
+    /**
+     * Converts an image for drawBackground. Draw it at the original position plus the offset.
+     */
+    static Minimized forBackground(Bitmap bitmap) {
+        // A negative tolerance rules out single-bit
+        PayloadAnalyzer.Result analysis = analyze(bitmap, -1, null);
+        return convert(bitmap, analysis, true);
+    }
+
+    private static PayloadAnalyzer.Result analyze(Bitmap bitmap, float grayTolerance, Anchor anchor) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        return PayloadAnalyzer.analyze(pixels, width, height, grayTolerance,
+                horizontal(anchor), vertical(anchor));
+    }
+
+    private static Minimized convert(Bitmap bitmap, PayloadAnalyzer.Result analysis, boolean background) {
+        Bitmap cropped = crop(bitmap, analysis);
+        int colorFormat = analysis.bitsPerPixel == IndexedPacker.BPP_1
+                ? LVGLImage.CF_INDEXED_1_BIT : LVGLImage.CF_INDEXED_2_BIT;
+        LVGLImage image = LVGLImage.fromBitmap(cropped, colorFormat);
+        LinkMetrics.registerImage(image, analysis.getBytes());
+        return new Minimized(image, background ? analysis.left : 0, background ? analysis.top : 0,
+                colorFormat, analysis);
+    }
+
+    // Which edge of the image stays put horizontally. Null means the top left corner is positioned.
+    private static PayloadAnalyzer.Align horizontal(Anchor anchor) {
+        if (anchor == null) {
+            return PayloadAnalyzer.Align.FREE;
+        }
+        switch (anchor) {
+            case TOP_LEFT:
+            case CENTER_LEFT:
+            case BOTTOM_LEFT:
+                return PayloadAnalyzer.Align.START;
+            case TOP_RIGHT:
+            case CENTER_RIGHT:
+            case BOTTOM_RIGHT:
+                return PayloadAnalyzer.Align.END;
+            default:
+                return PayloadAnalyzer.Align.CENTER;
+        }
+    }
+
+    private static PayloadAnalyzer.Align vertical(Anchor anchor) {
+        if (anchor == null) {
+            return PayloadAnalyzer.Align.FREE;
+        }
+        switch (anchor) {
+            case TOP_LEFT:
+            case TOP_CENTER:
+            case TOP_RIGHT:
+                return PayloadAnalyzer.Align.START;
+            case BOTTOM_LEFT:
+            case BOTTOM_CENTER:
+            case BOTTOM_RIGHT:
+                return PayloadAnalyzer.Align.END;
+            default:
+                return PayloadAnalyzer.Align.CENTER;
+        }
+    }
+}
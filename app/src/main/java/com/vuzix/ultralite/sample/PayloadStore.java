@@ -0,0 +1,479 @@
+package com.vuzix.ultralite.sample;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * This class keeps converted images and rendered text slices on disk, so a cold start does not
+ * have to convert them again.
+ *
+ * {@link ImageCache} and {@link SliceCache} only live as long as the process. Every cold start
+ * decodes the drawables, scales and crops them, and rasterizes the teleprompter texts line by
+ * line before the first command can go out. This class stores the result of all that work as
+ * gray levels packed by {@link IndexedPacker}, in one file per entry under the cache directory.
+ * IndexedPacker does its own rounding to the palette grays, which may differ from fromBitmap for a
+ * few in-between grays. Later starts map the file into memory and expand the levels straight from the
+ * mapping, see {@link IndexedPacker#unpack}, without reading the file into the heap first.
+ *
+ * Entries are keyed by a string that holds everything the output depends on: a hash of the
+ * content, such as the text or the bytes of the drawable, and the render parameters. A change to
+ * any of those makes a new key. A change to how we convert or to the file layout must bump
+ * {@link #FORMAT_VERSION}, which moves the store to a new directory and deletes the old one.
+ *
+ * The methods can be called from any thread. When two threads ask for the same entry at the same
+ * time, only one of them renders it.
+ */
+class PayloadStore {
+    private static final String TAG = "PayloadStore";
+
+    // Bump this whenever stored entries would come out different, so old files are never used
+    static final int FORMAT_VERSION = 2;
+
+    private static final String DIRECTORY = "payloads";
+    private static final int MAGIC = 0x4C56474C; // "LVGL"
+    // Magic, format version and image count
+    private static final int FILE_HEADER_BYTES = 12;
+    // Width, height and bits per pixel of each image
+    private static final int IMAGE_HEADER_BYTES = 12;
+
+    /**
+     * Renders an entry that is not in the store yet.
+     */
+    interface Renderer {
+        void render(Output out);
+    }
+
+    /**
+     * Receives the images of an entry in order.
+     */
+    interface Output {
+        /**
+         * Packs the bitmap right away, so the renderer may reuse it for the next image.
+         */
+        void add(Bitmap bitmap, int bitsPerPixel);
+
+        /**
+         * Adds an image that is already packed, see {@link IndexedPacker#pack}. The array is kept
+         * as it is, so do not change it afterwards.
+         */
+        void addPacked(int width, int height, int bitsPerPixel, byte[] packed);
+    }
+
+    // A teleprompter text has hundreds of slices. Only the ones scrolled through lately are kept
+    // expanded, the rest are expanded from the mapping again when they come around.
+    private static final long SLICE_CACHE_BYTES = 512 * 1024;
+    private static final ImageCache<SliceKey> expandedSlices = new ImageCache<>(SLICE_CACHE_BYTES);
+
+    private static PayloadStore instance;
+
+    private final File directory;
+    // Guarded by "this"
+    private final Map<String, CompletableFuture<Entry>> entries = new HashMap<>();
+    private final Map<Integer, String> resourceHashes = new HashMap<>();
+    private long mapped;
+    private long rendered;
+    private long writeFailures;
+
+    private PayloadStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the store of the app, deleting entries of older format versions the first time.
+     */
+    static synchronized PayloadStore get(Context context) {
+        if (instance == null) {
+            File root = new File(context.getApplicationContext().getCacheDir(), DIRECTORY);
+            File current = new File(root, "v" + FORMAT_VERSION);
+            File[] versions = root.listFiles();
+            if (versions != null) {
+                for (File version : versions) {
+                    if (!version.equals(current)) {
+                        delete(version);
+                    }
+                }
+            }
+            if (!current.isDirectory() && !current.mkdirs()) {
+                Log.w(TAG, "Cannot create " + current + ", entries will only be kept in memory");
+            }
+            instance = new PayloadStore(current);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the entry for the key, rendering and storing it first if it is not on disk. The
+     * entry stays open for the life of the process, so asking again is cheap. An open entry only
+     * holds its mapping, whose pages the system can drop at any time, and never the expanded
+     * images.
+     */
+    Entry getOrRender(String key, Renderer renderer) {
+        CompletableFuture<Entry> future;
+        boolean owner = false;
+        synchronized (this) {
+            future = entries.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                entries.put(key, future);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                // Rethrow what the owner threw, as if we had rendered it ourselves
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            File file = new File(directory, hash(key) + ".lvgl");
+            Entry entry = open(file);
+            if (entry == null) {
+                entry = write(file, renderer);
+            }
+            future.complete(entry);
+            return entry;
+        } catch (RuntimeException | Error e) {
+            // Let the next caller try again, and never leave the waiters hanging
+            synchronized (this) {
+                entries.remove(key);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return A hash of the bytes of a drawable, so a changed drawable gets new entries even though
+     *         its resource id stays the same
+     */
+    String hashResource(Context context, int resource) {
+        synchronized (this) {
+            String hash = resourceHashes.get(resource);
+            if (hash != null) {
+                return hash;
+            }
+        }
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = context.getResources().openRawResource(resource)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read resource " + resource, e);
+        }
+        String hash = toHex(digest.digest());
+        synchronized (this) {
+            resourceHashes.put(resource, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * @return A hex SHA-256 of the text, short enough to put in a key or a file name
+     */
+    static String hash(String text) {
+        return toHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "mapped=" + mapped + " rendered=" + rendered + " writeFailures=" + writeFailures;
+    }
+
+    // Maps an existing file. Returns null if there is none, or if it is damaged or incomplete.
+    private Entry open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        // The mapping stays valid after the file is closed
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            Entry entry = Entry.parse(buffer);
+            if (entry != null) {
+                synchronized (this) {
+                    mapped++;
+                }
+                return entry;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot map " + file, e);
+        }
+        Log.w(TAG, "Discarding damaged entry " + file);
+        delete(file);
+        return null;
+    }
+
+    private Entry write(File file, Renderer renderer) {
+        List<byte[]> images = new ArrayList<>();
+        List<int[]> headers = new ArrayList<>();
+        renderer.render(new Output() {
+            @Override
+            public void add(Bitmap bitmap, int bitsPerPixel) {
+                int width = bitmap.getWidth();
+                int height = bitmap.getHeight();
+                int[] pixels = new int[width * height];
+                bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+                byte[] packed = new byte[IndexedPacker.packedSize(width, height, bitsPerPixel)];
+                IndexedPacker.pack(pixels, width, height, bitsPerPixel, packed);
+                addPacked(width, height, bitsPerPixel, packed);
+            }
+
+            @Override
+            public void addPacked(int width, int height, int bitsPerPixel, byte[] packed) {
+                if (packed.length != IndexedPacker.packedSize(width, height, bitsPerPixel)) {
+                    throw new IllegalArgumentException("Packed image is not " + width + "x" + height);
+                }
+                images.add(packed);
+                headers.add(new int[]{width, height, bitsPerPixel});
+            }
+        });
+
+        int size = FILE_HEADER_BYTES;
+        for (byte[] image : images) {
+            size += IMAGE_HEADER_BYTES + image.length;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        bytes.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            int[] header = headers.get(i);
+            bytes.putInt(header[0]).putInt(header[1]).putInt(header[2]).put(images.get(i));
+        }
+        bytes.flip();
+        synchronized (this) {
+            rendered++;
+        }
+
+        // Write a temporary file and rename it, so a crash never leaves half a file under the
+        // real name
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temporary)) {
+                out.getChannel().write(bytes.duplicate());
+            }
+            if (temporary.renameTo(file)) {
+                Entry entry = open(file);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot store " + file, e);
+        }
+        delete(temporary);
+        synchronized (this) {
+            writeFailures++;
+        }
+        // We have the bytes anyway, so this run can still use them
+        return Entry.parse(bytes);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Cannot delete " + file);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android version has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The images of one stored entry, such as one converted drawable or every slice of a text.
+     */
+    static final class Entry {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+        private final int[] widths;
+        private final int[] heights;
+        private final int[] bitsPerPixel;
+
+        private Entry(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            offsets = new int[count];
+            widths = new int[count];
+            heights = new int[count];
+            bitsPerPixel = new int[count];
+        }
+
+        // Reads the headers and checks every image fits the buffer. Returns null if not.
+        static Entry parse(ByteBuffer buffer) {
+            int limit = buffer.limit();
+            if (limit < FILE_HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                return null;
+            }
+            int count = buffer.getInt(8);
+            if (count < 0 || count > (limit - FILE_HEADER_BYTES) / IMAGE_HEADER_BYTES) {
+                return null;
+            }
+            Entry entry = new Entry(buffer, count);
+            long position = FILE_HEADER_BYTES;
+            for (int i = 0; i < count; i++) {
+                if (position + IMAGE_HEADER_BYTES > limit) {
+                    return null;
+                }
+                int width = buffer.getInt((int) position);
+                int height = buffer.getInt((int) position + 4);
+                int bpp = buffer.getInt((int) position + 8);
+                if (width <= 0 || height <= 0 || (bpp != IndexedPacker.BPP_1 && bpp != IndexedPacker.BPP_2)) {
+                    return null;
+                }
+                position += IMAGE_HEADER_BYTES;
+                entry.offsets[i] = (int) position;
+                entry.widths[i] = width;
+                entry.heights[i] = height;
+                entry.bitsPerPixel[i] = bpp;
+                position += (long) IndexedPacker.rowBytes(width, bpp) * height + IndexedPacker.paletteSize(bpp);
+            }
+            return position == limit ? entry : null;
+        }
+
+        public int size() {
+            return offsets.length;
+        }
+
+        public int getWidth(int index) {
+            return widths[index];
+        }
+
+        public int getHeight(int index) {
+            return heights[index];
+        }
+
+        /**
+         * @return How many bytes this image is on the link
+         */
+        public long getBytes(int index) {
+            return IndexedPacker.packedSize(widths[index], heights[index], bitsPerPixel[index]);
+        }
+
+        /**
+         * Expands one stored image into an LVGLImage. Only the pixels of this image are read, so the
+         * pages of the other images are never touched. Every call expands it again, so keep the
+         * result in an {@link ImageCache} if it is used more than once.
+         */
+        public LVGLImage image(int index) {
+            int width = widths[index];
+            int height = heights[index];
+            int[] pixels = new int[width * height];
+            IndexedPacker.unpack(buffer, offsets[index], width, height, bitsPerPixel[index], pixels);
+            // The SDK can only make an LVGLImage from a bitmap. The pixels are already exactly the
+            // palette grays, so rounding to the nearest gray keeps every level as it is.
+            Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+            int colorFormat = bitsPerPixel[index] == IndexedPacker.BPP_1
+                    ? LVGLImage.CF_INDEXED_1_BIT : LVGLImage.CF_INDEXED_2_BIT;
+            LVGLImage image = LVGLImage.fromBitmap(bitmap, colorFormat);
+            LinkMetrics.registerImage(image, getBytes(index));
+            return image;
+        }
+
+        /**
+         * @return The images in order, for a {@link SlicePipeline}. Each call starts from the first.
+         *         Slices expanded lately, by this or an earlier call, come from a shared cache with
+         *         a byte budget.
+         */
+        public SlicePipeline.SliceSource slices() {
+            return new SlicePipeline.SliceSource() {
+                private int next;
+
+                @Override
+                public boolean hasMoreSlices() {
+                    return next < size();
+                }
+
+                @Override
+                public LVGLImage getNextSlice() {
+                    return expandedSlices.get(new SliceKey(Entry.this, next++),
+                            key -> new ImageCache.Converted(key.entry.image(key.index), key.entry.getBytes(key.index)));
+                }
+            };
+        }
+
+        /**
+         * Reads the whole file into the page cache, so the first use does not wait for the disk.
+         */
+        public void load() {
+            if (buffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) buffer).load();
+            }
+        }
+    }
+
+    // One slice of an entry. Entries stay open for the life of the process, so they are compared
+    // by identity.
+    private static class SliceKey {
+        final Entry entry;
+        final int index;
+
+        SliceKey(Entry entry, int index) {
+            this.entry = entry;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SliceKey)) {
+                return false;
+            }
+            SliceKey other = (SliceKey) o;
+            return entry == other.entry && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(entry) * 31 + index;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.vuzix.ultralite.sample;
+
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.Layout;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class remembers what the glasses should be showing, so it can be put back after another app
+ * had control.
+ *
+ * A notification or another app can take the glasses for a few seconds. The glasses forget our
+ * screen then, and building it up again by running the whole demo from the start sends every
+ * command we ever sent. This class keeps only the final state instead: the layout, the
+ * {@link CanvasBatcher} that knows every canvas element and the background, and the line images
+ * in each slot of the scroll layout. {@link #restore} sends just what is needed to show that
+ * state again, reusing the images we already converted.
+ *
+ * {@link MeteredUltralite} feeds this class with what its batchers and scroll view send. Anything
+ * else that draws, such as its plain canvas or the SDK AutoScroller, must call {@link #invalidate}.
+ * Restoring the scene after that would show a screen that is not the one the user saw, so
+ * {@link #restore} only sends the layout and reports that the rest must be drawn again.
+ */
+class RetainedScene {
+    // The last setLayout call, or null before the first one
+    private Layout layout;
+    private int timeout;
+    private boolean hideStatusBar;
+    private boolean tapArgs;
+    private boolean animateTaps;
+    private int maxTaps;
+
+    // The batcher the current canvas is drawn with
+    private CanvasBatcher canvas;
+    // True once something we do not retain has drawn on the current layout
+    private boolean stale;
+
+    // The last scroll configuration. sliceHeight is 0 before the first one.
+    private int sliceHeight;
+    private int lowestLine;
+    private int linesShowing;
+    private int scrollMs;
+    private boolean autoScroll;
+    // The line image in each screen slot of the scroll layout
+    private final TreeMap<Integer, LVGLImage> slots = new TreeMap<>();
+
+    synchronized void layoutSet(Layout layout, int timeout, boolean hideStatusBar) {
+        layoutSet(layout, timeout, hideStatusBar, false, false, 0);
+    }
+
+    synchronized void layoutSet(Layout layout, int timeout, boolean hideStatusBar, boolean animateTaps, int maxTaps) {
+        layoutSet(layout, timeout, hideStatusBar, true, animateTaps, maxTaps);
+    }
+
+    private void layoutSet(Layout layout, int timeout, boolean hideStatusBar, boolean tapArgs,
+                           boolean animateTaps, int maxTaps) {
+        this.layout = layout;
+        this.timeout = timeout;
+        this.hideStatusBar = hideStatusBar;
+        this.tapArgs = tapArgs;
+        this.animateTaps = animateTaps;
+        this.maxTaps = maxTaps;
+        // A new layout starts out empty. A batcher from the old one would draw elements that no
+        // longer exist, until the new layout creates its own.
+        canvas = null;
+        slots.clear();
+        sliceHeight = 0;
+        stale = false;
+    }
+
+    /**
+     * Marks the current layout as showing something this class did not record.
+     */
+    synchronized void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Makes the given batcher the one whose elements are restored.
+     */
+    synchronized void canvasCreated(CanvasBatcher canvas) {
+        this.canvas = canvas;
+    }
+
+    synchronized void scrollConfigured(int sliceHeight, int lowestLine, int linesShowing, int scrollMs, boolean autoScroll) {
+        this.sliceHeight = sliceHeight;
+        this.lowestLine = lowestLine;
+        this.linesShowing = linesShowing;
+        this.scrollMs = scrollMs;
+        this.autoScroll = autoScroll;
+        dropHiddenSlots();
+    }
+
+    synchronized void scrollImageSent(LVGLImage image, int index, boolean scrollFirst) {
+        if (scrollFirst) {
+            scrollUp();
+        }
+        slots.put(index, image);
+        dropHiddenSlots();
+    }
+
+    synchronized void scrolled() {
+        scrollUp();
+    }
+
+    synchronized void cleared(int index) {
+        slots.remove(index);
+    }
+
+    /**
+     * Sends the layout and its content again.
+     *
+     * @return False if part of the scene could not be restored, so the caller has to draw it again
+     */
+    synchronized boolean restore(MeteredUltralite link) {
+        if (layout == null) {
+            return true;
+        }
+        if (tapArgs) {
+            link.getSdk().setLayout(layout, timeout, hideStatusBar, animateTaps, maxTaps);
+        } else {
+            link.getSdk().setLayout(layout, timeout, hideStatusBar);
+        }
+        link.getMetrics().record(LinkMetrics.Command.SET_LAYOUT, 0);
+
+        // The layout alone gives a clean screen, which is better than the wrong one
+        if (stale) {
+            return false;
+        }
+        if (layout == Layout.CANVAS) {
+            return canvas == null || canvas.restore();
+        }
+        if (sliceHeight > 0) {
+            link.getSdk().getScrollingTextView().scrollLayoutConfig(sliceHeight, lowestLine, linesShowing, scrollMs, autoScroll);
+            link.getMetrics().record(LinkMetrics.Command.SET_LAYOUT, 0);
+            // Put each line straight into its slot, without the scroll animations that got it there
+            for (Map.Entry<Integer, LVGLImage> slot : slots.entrySet()) {
+                link.getSdk().getScrollingTextView().sendScrollImage(slot.getValue(), slot.getKey(), false);
+                link.getMetrics().record(LinkMetrics.Command.SEND_SCROLL_IMAGE, link.getMetrics().imagePayload(slot.getValue()));
+            }
+        }
+        return true;
+    }
+
+    // Every line moves one slot up
+    private void scrollUp() {
+        TreeMap<Integer, LVGLImage> moved = new TreeMap<>();
+        for (Map.Entry<Integer, LVGLImage> slot : slots.entrySet()) {
+            moved.put(slot.getKey() + 1, slot.getValue());
+        }
+        slots.clear();
+        slots.putAll(moved);
+        dropHiddenSlots();
+    }
+
+    // Lines that scrolled out of the showing area are gone from the glasses
+    private void dropHiddenSlots() {
+        if (sliceHeight > 0) {
+            slots.headMap(lowestLine).clear();
+            slots.tailMap(lowestLine + linesShowing).clear();
+        }
+    }
+}
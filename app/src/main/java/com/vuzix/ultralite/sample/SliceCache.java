@@ -0,0 +1,80 @@
+package com.vuzix.ultralite.sample;
+
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.UltraliteSDK;
+import com.vuzix.ultralite.utils.scroll.TextToImageSlicer;
+
+/**
+ * This class keeps rendered text slices for fixed strings such as prompts, labels and menu entries.
+ *
+ * Creating a {@link TextToImageSlicer} lays out and rasterizes the text every time. Apps show the
+ * same short strings over and over, so we render each one once and keep the slice in a
+ * memory-bounded {@link ImageCache}. The cache is shared by the whole app.
+ */
+class SliceCache {
+    // A full-width 48 pixel slice is under 8KB, so this holds a few dozen labels
+    private static final long CACHE_BYTES = 256 * 1024;
+    private static final ImageCache<Key> slices = new ImageCache<>(CACHE_BYTES);
+
+    private SliceCache() {
+    }
+
+    /**
+     * Returns the first slice of the text, rendering it only if it is not already cached. This is
+     * meant for strings that fit on one line.
+     *
+     * @param text The text to render
+     * @param sliceHeight Height of the slice including the padding between lines
+     * @param fontSize Font size within the slice
+     */
+    static LVGLImage getSlice(String text, int sliceHeight, int fontSize) {
+        // The SDK slicer always renders slices the full width of the screen
+        Key key = new Key(text, sliceHeight, fontSize, UltraliteSDK.Canvas.WIDTH);
+        return slices.get(key, k -> {
+            LVGLImage slice = new TextToImageSlicer(k.text, k.sliceHeight, k.fontSize).getSliceAt(0);
+            return new ImageCache.Converted(slice, getSliceBytes(k.sliceHeight));
+        });
+    }
+
+    /**
+     * @return About how many bytes sending a slice from {@link #getSlice} costs
+     */
+    static long getSliceBytes(int sliceHeight) {
+        // We do not know which indexed format the slicer picked, so charge for the larger one
+        return ImageCache.estimateBytes(UltraliteSDK.Canvas.WIDTH, sliceHeight, LVGLImage.CF_INDEXED_2_BIT);
+    }
+
+    static ImageCache.Stats getStats() {
+        return slices.getStats();
+    }
+
+    // Everything that changes the rendered slice
+    private static class Key {
+        final String text;
+        final int sliceHeight;
+        final int fontSize;
+        final int width;
+
+        Key(String text, int sliceHeight, int fontSize, int width) {
+            this.text = text;
+            this.sliceHeight = sliceHeight;
+            this.fontSize = fontSize;
+            this.width = width;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return sliceHeight == other.sliceHeight && fontSize == other.fontSize
+                    && width == other.width && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((text.hashCode() * 31 + sliceHeight) * 31 + fontSize) * 31 + width;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.vuzix.ultralite.sample;
+
+import android.util.Log;
+
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.utils.scroll.TextToImageSlicer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class renders text slices on a worker thread ahead of the thread that sends them.
+ *
+ * Rendering text into an image and sending that image over Bluetooth both take time. If the sending
+ * thread does both, the link sits idle while each slice renders. Here a worker thread renders the
+ * upcoming slices into a bounded queue while the sender drains it. The queue size is the lookahead
+ * depth: once it is full the worker waits, so we never render far more than the sender can use.
+ *
+ * A {@link TextToImageSlicer} produces its slices in order and is not safe to share between
+ * threads, so each pipeline has exactly one worker. Run one pipeline per text to use more cores.
+ */
+class SlicePipeline implements AutoCloseable {
+
+    /**
+     * Anything that produces slices in order. {@link #of(TextToImageSlicer)} adapts the SDK slicer.
+     */
+    interface SliceSource {
+        boolean hasMoreSlices();
+        LVGLImage getNextSlice();
+    }
+
+    // Marks the end of the slices in the queue
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Thread worker;
+    private volatile RuntimeException failure;
+    private boolean finished;
+
+    /**
+     * Creates the pipeline and starts rendering immediately.
+     *
+     * @param source Produces the slices, and is only used from the worker thread from now on
+     * @param lookahead How many rendered slices may wait in the queue
+     */
+    public SlicePipeline(SliceSource source, int lookahead) {
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("lookahead must be at least 1");
+        }
+        queue = new ArrayBlockingQueue<>(lookahead);
+        worker = new Thread(() -> render(source), "SlicePipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public static SliceSource of(TextToImageSlicer slicer) {
+        return new SliceSource() {
+            @Override
+            public boolean hasMoreSlices() {
+                return slicer.hasMoreSlices();
+            }
+
+            @Override
+            public LVGLImage getNextSlice() {
+                return slicer.getNextSlice();
+            }
+        };
+    }
+
+    /**
+     * Returns the next slice, waiting for the worker if it has not rendered it yet.
+     *
+     * @return The next slice, or null when there are no more
+     */
+    public LVGLImage take() throws MainActivity.Stop {
+        if (finished) {
+            return null;
+        }
+        Object next;
+        try {
+            next = queue.take();
+        } catch (InterruptedException e) {
+            throw new MainActivity.Stop(true);
+        }
+        if (next == END) {
+            finished = true;
+            if (failure != null) {
+                Log.e(MainActivity.TAG, "Slice rendering failed", failure);
+                throw new MainActivity.Stop(true);
+            }
+            return null;
+        }
+        return (LVGLImage) next;
+    }
+
+    /**
+     * @return How many rendered slices are waiting to be sent
+     */
+    public int getBufferedCount() {
+        int count = queue.size();
+        return queue.contains(END) ? count - 1 : count;
+    }
+
+    /**
+     * Stops the worker. Slices already rendered are discarded.
+     */
+    @Override
+    public void close() {
+        worker.interrupt();
+        queue.clear();
+        finished = true;
+    }
+
+    private void render(SliceSource source) {
+        try {
+            while (source.hasMoreSlices()) {
+                // Blocks while the queue is full, which is our backpressure
+                queue.put(source.getNextSlice());
+            }
+        } catch (InterruptedException e) {
+            // Closed by the sender
+            return;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // Closed by the sender
+        }
+    }
+}
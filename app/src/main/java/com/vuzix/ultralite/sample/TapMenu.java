@@ -0,0 +1,466 @@
+package com.vuzix.ultralite.sample;
+
+import android.util.Log;
+
+import com.vuzix.ultralite.Anchor;
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.TextAlignment;
+import com.vuzix.ultralite.TextWrapMode;
+import com.vuzix.ultralite.UltraliteColor;
+import com.vuzix.ultralite.UltraliteSDK;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class shows a menu of screens on the canvas, and answers taps without waiting for an image
+ * transfer.
+ *
+ * Showing a new image after a tap means sending the whole image, so the user waits a few hundred
+ * milliseconds for any feedback. But a menu only leads to a few places from each screen. This
+ * class keeps the screens the current one can lead to already uploaded, in hidden canvas images or
+ * text elements. A tap then only hides the current element and shows the next one, which is a few
+ * bytes. After that, the screens the new one can lead to are uploaded in the background.
+ *
+ * The screens and where each tap count leads form a small state machine, see {@link Screen#on}.
+ * The screens one tap away are preloaded first, in the order their taps were declared, then the
+ * screens two taps away, and so on while hidden elements are left. A screen that was not preloaded
+ * still works, it just costs the transfer.
+ *
+ * Everything is sent through a {@link CommandScheduler}. Showing a screen is interactive, so it
+ * overtakes any preload still queued. The canvas must have the image and text slots this menu uses
+ * free. Call the methods from one thread.
+ */
+class TapMenu {
+    private static final String TAG = "TapMenu";
+
+    /**
+     * One screen of the menu: an image, or a text element.
+     */
+    static final class Screen {
+        final String name;
+        final LVGLImage image;
+        final String text;
+        // What sending the screen costs. Preloads are paced by it.
+        final long bytes;
+        final Anchor anchor;
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        // Where each tap count leads, in the order they were declared
+        private final LinkedHashMap<Integer, Screen> next = new LinkedHashMap<>();
+
+        private Screen(String name, LVGLImage image, String text, long bytes, Anchor anchor, int x, int y,
+                       int width, int height) {
+            this.name = name;
+            this.image = image;
+            this.text = text;
+            this.bytes = bytes;
+            this.anchor = anchor;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * A screen showing an image, placed like {@link UltraliteSDK.Canvas#createImage} followed by
+         * moveImage.
+         *
+         * @param bytes The payload size of the image, see {@link ImageCache#estimateBytes}
+         */
+        static Screen image(String name, LVGLImage image, long bytes, Anchor anchor, int x, int y) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Image size must be known to pace it, got " + bytes);
+            }
+            return new Screen(name, image, null, bytes, anchor, x, y, 0, 0);
+        }
+
+        /**
+         * A screen showing text, placed like {@link UltraliteSDK.Canvas#createText}.
+         */
+        static Screen text(String name, String text, Anchor anchor, int x, int y, int width, int height) {
+            return new Screen(name, null, text, LinkMetrics.textBytes(text), anchor, x, y, width, height);
+        }
+
+        /**
+         * Makes the given number of taps lead to another screen. Declare the most likely taps
+         * first, since they are preloaded first.
+         *
+         * @return This screen, so calls can be chained
+         */
+        Screen on(int taps, Screen next) {
+            this.next.put(taps, next);
+            return this;
+        }
+
+        /**
+         * @return The screen the taps lead to, or null if they do nothing here
+         */
+        Screen next(int taps) {
+            return next.get(taps);
+        }
+
+        boolean isImage() {
+            return image != null;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // One canvas element that holds a screen
+    private static final class Slot {
+        final boolean image;
+        // What the slot holds once its queued commands have run. Only used by the calling thread.
+        Screen screen;
+        // Commands queued for this slot that have not run yet. While there are any, new commands
+        // for the slot must queue behind them instead of overtaking them.
+        final AtomicInteger pending = new AtomicInteger();
+        // The element. Only used on the worker thread of the scheduler.
+        int id = -1;
+        Anchor anchor;
+        int width;
+        int height;
+        boolean shown;
+
+        Slot(boolean image) {
+            this.image = image;
+        }
+    }
+
+    private final CommandScheduler scheduler;
+    private final MeteredUltralite.CanvasView canvas;
+    private final List<Slot> slots = new ArrayList<>();
+    private Screen current;
+    private Slot currentSlot;
+
+    private int hits;
+    private int misses;
+    private int preloads;
+
+    /**
+     * @param link The SDK instance to send through. The canvas layout must be set already.
+     * @param session The session the menu runs in. Queued commands are dropped when it loses control.
+     * @param imageSlots How many canvas images to use, up to {@link ElementPool#MAX_IMAGES}
+     * @param textSlots How many canvas text elements to use, up to {@link ElementPool#MAX_TEXTS}
+     */
+    public TapMenu(MeteredUltralite link, GlassesSession session, int imageSlots, int textSlots) {
+        if (imageSlots < 0 || imageSlots > ElementPool.MAX_IMAGES || textSlots < 0
+                || textSlots > ElementPool.MAX_TEXTS || imageSlots + textSlots == 0) {
+            throw new IllegalArgumentException("Unsupported slots: " + imageSlots + " images, " + textSlots + " texts");
+        }
+        for (int i = 0; i < imageSlots; i++) {
+            slots.add(new Slot(true));
+        }
+        for (int i = 0; i < textSlots; i++) {
+            slots.add(new Slot(false));
+        }
+        scheduler = new CommandScheduler(link, session);
+        canvas = link.getCanvas();
+    }
+
+    /**
+     * Shows a screen, and preloads the screens it leads to. Use this for the first screen, and to
+     * move on without a tap, such as after a confirmation.
+     */
+    public void show(Screen screen) {
+        if (screen == current) {
+            return;
+        }
+        Slot previous = currentSlot;
+        Slot target = slotHolding(screen);
+        boolean preloaded = target != null;
+        if (preloaded) {
+            hits++;
+        } else {
+            misses++;
+            target = freeSlot(screen.isImage(), null);
+            if (target == null) {
+                throw new IllegalArgumentException("No " + (screen.isImage() ? "image" : "text") + " slots for " + screen);
+            }
+        }
+
+        // The user is waiting for this, so it goes ahead of the preloads if it can. This is decided
+        // once, so a load and the change that shows it stay in order.
+        CommandScheduler.Priority priority = priorityFor(true, previous, target);
+        if (!preloaded) {
+            load(target, screen, priority);
+        }
+        Slot shown = target;
+        enqueue(priority, 0, () -> {
+            if (previous != null && previous != shown) {
+                setShown(previous, false);
+            }
+            setShown(shown, true);
+        }, previous, shown);
+        scheduler.commit(priority);
+
+        current = screen;
+        currentSlot = target;
+        preload();
+    }
+
+    /**
+     * Moves to wherever the taps lead from the current screen.
+     *
+     * @return The screen showing now
+     */
+    public Screen onTap(int taps) {
+        Screen next = current == null ? null : current.next(taps);
+        if (next != null) {
+            show(next);
+        }
+        return current;
+    }
+
+    public Screen getCurrent() {
+        return current;
+    }
+
+    /**
+     * Removes every element this menu created.
+     *
+     * @return A future that completes once the glasses have received the removal
+     */
+    public CompletableFuture<Void> removeAll() {
+        for (Slot slot : slots) {
+            enqueue(CommandScheduler.Priority.BULK, 0, () -> {
+                if (slot.id != -1) {
+                    if (slot.image) {
+                        canvas.removeImage(slot.id);
+                    } else {
+                        canvas.removeText(slot.id);
+                    }
+                    slot.id = -1;
+                }
+            }, slot);
+            slot.screen = null;
+        }
+        current = null;
+        currentSlot = null;
+        return scheduler.commit(CommandScheduler.Priority.BULK);
+    }
+
+    /**
+     * Stops the scheduler. Commands still queued are dropped.
+     */
+    public void close() {
+        scheduler.close();
+    }
+
+    /**
+     * @return How many screens were shown from a preloaded element, without a transfer
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return How many screens had to be sent when they were shown
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return How many screens were uploaded ahead of time
+     */
+    public int getPreloads() {
+        return preloads;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + " misses=" + misses + " preloads=" + preloads;
+    }
+
+    // Fills the hidden slots with the screens the current one leads to
+    private void preload() {
+        int freeImages = 0;
+        int freeTexts = 0;
+        for (Slot slot : slots) {
+            if (slot != currentSlot) {
+                if (slot.image) {
+                    freeImages++;
+                } else {
+                    freeTexts++;
+                }
+            }
+        }
+        Set<Screen> wanted = new HashSet<>();
+        List<Screen> order = new ArrayList<>();
+        for (Screen screen : reachable(current)) {
+            if (screen.isImage() ? freeImages-- > 0 : freeTexts-- > 0) {
+                wanted.add(screen);
+                order.add(screen);
+            }
+        }
+        for (Screen screen : order) {
+            if (slotHolding(screen) == null) {
+                Slot slot = freeSlot(screen.isImage(), wanted);
+                if (slot != null) {
+                    load(slot, screen, CommandScheduler.Priority.BULK);
+                    preloads++;
+                }
+            }
+        }
+    }
+
+    // Every screen reachable from the given one, nearest first, not including itself
+    private static List<Screen> reachable(Screen from) {
+        List<Screen> found = new ArrayList<>();
+        Set<Screen> seen = new HashSet<>();
+        ArrayDeque<Screen> queue = new ArrayDeque<>();
+        seen.add(from);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            for (Screen next : queue.removeFirst().next.values()) {
+                if (seen.add(next)) {
+                    found.add(next);
+                    queue.addLast(next);
+                }
+            }
+        }
+        return found;
+    }
+
+    private Slot slotHolding(Screen screen) {
+        for (Slot slot : slots) {
+            if (slot.screen == screen) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    // A slot of the kind that holds nothing we want. The slot of the current screen is only used if
+    // there is no other one, in which case the screen changes in place like a plain update. Slots
+    // with nothing queued come first, since they can be used right away.
+    private Slot freeSlot(boolean image, Set<Screen> wanted) {
+        Slot found = null;
+        Slot fallback = null;
+        for (Slot slot : slots) {
+            if (slot.image != image) {
+                continue;
+            }
+            if (slot == currentSlot) {
+                fallback = wanted == null ? slot : null;
+            } else if (slot.screen == null || wanted == null || !wanted.contains(slot.screen)) {
+                if (slot.pending.get() == 0) {
+                    return slot;
+                }
+                if (found == null) {
+                    found = slot;
+                }
+            }
+        }
+        return found != null ? found : fallback;
+    }
+
+    private void load(Slot slot, Screen screen, CommandScheduler.Priority priority) {
+        slot.screen = screen;
+        enqueue(priority, screen.bytes, () -> write(slot, screen), slot);
+    }
+
+    // A command may only go out as interactive if none of the slots it touches has commands still
+    // queued, since it must not overtake those
+    private static CommandScheduler.Priority priorityFor(boolean interactive, Slot... touched) {
+        if (!interactive) {
+            return CommandScheduler.Priority.BULK;
+        }
+        for (Slot slot : touched) {
+            if (slot != null && slot.pending.get() > 0) {
+                return CommandScheduler.Priority.BULK;
+            }
+        }
+        return CommandScheduler.Priority.INTERACTIVE;
+    }
+
+    // Queues a command, counting it as pending on the slots it touches until it has run
+    private void enqueue(CommandScheduler.Priority priority, long bytes, Runnable command, Slot... touched) {
+        for (Slot slot : touched) {
+            if (slot != null) {
+                slot.pending.incrementAndGet();
+            }
+        }
+        scheduler.submit(priority, bytes, () -> {
+            try {
+                command.run();
+            } finally {
+                for (Slot slot : touched) {
+                    if (slot != null) {
+                        slot.pending.decrementAndGet();
+                    }
+                }
+            }
+        });
+    }
+
+    // Runs on the worker thread. Puts the screen into the element of the slot, creating or
+    // replacing the element if it does not fit the screen, without changing its visibility.
+    private void write(Slot slot, Screen screen) {
+        if (slot.image) {
+            if (slot.id != -1 && slot.anchor != screen.anchor) {
+                canvas.removeImage(slot.id);
+                slot.id = -1;
+            }
+            if (slot.id == -1) {
+                slot.id = canvas.createImage(screen.image, screen.bytes, screen.anchor);
+                if (slot.id == -1) {
+                    Log.w(TAG, "No free canvas image for " + screen);
+                    return;
+                }
+                slot.anchor = screen.anchor;
+                // New images are visible until hidden
+                boolean shown = slot.shown;
+                slot.shown = true;
+                setShown(slot, shown);
+            } else {
+                canvas.updateImage(slot.id, screen.image, screen.bytes);
+            }
+            canvas.moveImage(slot.id, screen.x, screen.y);
+        } else {
+            if (slot.id != -1 && (slot.width != screen.width || slot.height != screen.height)) {
+                canvas.removeText(slot.id);
+                slot.id = -1;
+            }
+            if (slot.id == -1) {
+                slot.id = canvas.createText(screen.text, TextAlignment.AUTO, UltraliteColor.WHITE,
+                        screen.anchor, screen.x, screen.y, screen.width, screen.height, TextWrapMode.WRAP, slot.shown);
+                if (slot.id == -1) {
+                    Log.w(TAG, "No free canvas text for " + screen);
+                    return;
+                }
+                slot.width = screen.width;
+                slot.height = screen.height;
+            } else {
+                canvas.updateText(slot.id, screen.text);
+                canvas.moveText(slot.id, screen.anchor, screen.x, screen.y);
+            }
+        }
+    }
+
+    // Runs on the worker thread
+    private void setShown(Slot slot, boolean shown) {
+        if (slot.id == -1 || slot.shown == shown) {
+            slot.shown = shown;
+            return;
+        }
+        if (slot.image) {
+            canvas.setImageVisible(slot.id, shown);
+        } else {
+            canvas.setTextVisible(slot.id, shown);
+        }
+        slot.shown = shown;
+    }
+}
@@ -0,0 +1,97 @@
+package com.vuzix.ultralite.sample;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import com.vuzix.ultralite.LVGLImage;
+import com.vuzix.ultralite.sample.lvgl.LineLayout;
+
+/**
+ * This class draws a single line of text into an image slice for the SCROLL layout.
+ *
+ * {@link com.vuzix.ultralite.utils.scroll.TextToImageSlicer} does its own line breaking, so we
+ * cannot ask it for "just this line". When we break lines ourselves we need to render with the
+ * exact same Paint we measured with, otherwise a line we thought would fit could wrap. This class
+ * owns that Paint and reuses one bitmap for every slice it draws.
+ *
+ * This class is also the {@link LineLayout.Measurer} for such a layout, so lines are broken with
+ * the Paint they are drawn with.
+ *
+ * This class is not thread safe. Give each thread its own renderer.
+ */
+class TextLineRenderer implements LineLayout.Measurer {
+    private final int sliceWidth;
+    private final int sliceHeight;
+    private final int colorFormat;
+    private final Paint paint = new Paint();
+    private final Bitmap bitmap;
+    private final Canvas canvas;
+    private final float baseline;
+
+    /**
+     * @param sliceWidth Width of each slice in pixels, normally {@link com.vuzix.ultralite.UltraliteSDK.Canvas#WIDTH}
+     * @param sliceHeight Height of each slice including the padding between lines
+     * @param fontSize Text size in pixels, smaller than the slice height
+     * @param singleBit True for single-bit slices, which are half the size of 2-bit slices
+     */
+    public TextLineRenderer(int sliceWidth, int sliceHeight, int fontSize, boolean singleBit) {
+        this.sliceWidth = sliceWidth;
+        this.sliceHeight = sliceHeight;
+        this.colorFormat = singleBit ? LVGLImage.CF_INDEXED_1_BIT : LVGLImage.CF_INDEXED_2_BIT;
+        paint.setTextSize(fontSize);
+        paint.setColor(Color.WHITE);
+        // Anti-aliasing only adds gray pixels a single-bit image cannot show
+        paint.setAntiAlias(!singleBit);
+        bitmap = Bitmap.createBitmap(sliceWidth, sliceHeight, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(bitmap);
+        // Center the text vertically within the slice
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        baseline = (sliceHeight - (metrics.descent - metrics.ascent)) / 2f - metrics.ascent;
+    }
+
+    /**
+     * @return The width in pixels this text takes when rendered
+     */
+    @Override
+    public float measure(CharSequence text, int start, int end) {
+        return paint.measureText(text, start, end);
+    }
+
+    /**
+     * Renders the given range of text as one slice. The text is expected to fit the slice width;
+     * anything beyond it is cut off.
+     */
+    public LVGLImage render(CharSequence text, int start, int end) {
+        LVGLImage image = LVGLImage.fromBitmap(draw(text, start, end), colorFormat);
+        LinkMetrics.registerImage(image, ImageCache.estimateBytes(sliceWidth, sliceHeight, colorFormat));
+        return image;
+    }
+
+    public int getSliceWidth() {
+        return sliceWidth;
+    }
+
+    public int getSliceHeight() {
+        return sliceHeight;
+    }
+
+    public int getColorFormat() {
+        return colorFormat;
+    }
+
+    Paint getPaint() {
+        return paint;
+    }
+
+    /**
+     * Draws the given range of text without converting it, for callers that store the pixels
+     * themselves. The bitmap is reused by the next call.
+     */
+    Bitmap draw(CharSequence text, int start, int end) {
+        bitmap.eraseColor(Color.BLACK);
+        canvas.drawText(text, start, end, 0, baseline, paint);
+        return bitmap;
+    }
+}
@@ -0,0 +1,47 @@
+package com.vuzix.ultralite.sample;
+
+import android.content.Context;
+
+import com.vuzix.ultralite.UltraliteSDK;
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+import com.vuzix.ultralite.sample.lvgl.LineLayout;
+
+/**
+ * This class renders a long text into scroll slices once, and keeps them in the
+ * {@link PayloadStore}.
+ *
+ * {@link com.vuzix.ultralite.utils.scroll.TextToImageSlicer} lays out and rasterizes every line
+ * again each time the text is shown. Teleprompter texts are long and rarely change, so here the
+ * lines are broken by a {@link LineLayout} and rendered with a {@link TextLineRenderer} the first
+ * time, and stored. From then on, even after the app restarts, the slices are expanded straight
+ * from the stored file.
+ *
+ * The slices are single-bit, like the ones of {@link DemoScrollLiveText}, which halves what each
+ * line costs on the link.
+ */
+class TextSlices {
+
+    private TextSlices() {
+    }
+
+    /**
+     * Returns the stored slices of the text, rendering them first if needed. Use
+     * {@link PayloadStore.Entry#slices} to feed them to a {@link SlicePipeline}.
+     *
+     * @param text The text to show
+     * @param sliceHeight Height of each slice including the padding between lines
+     * @param fontSize Font size within the slice
+     */
+    static PayloadStore.Entry get(Context context, String text, int sliceHeight, int fontSize) {
+        final int width = UltraliteSDK.Canvas.WIDTH;
+        String key = "slices/" + PayloadStore.hash(text) + "/" + width + "x" + sliceHeight + "/" + fontSize;
+        return PayloadStore.get(context).getOrRender(key, out -> {
+            TextLineRenderer renderer = new TextLineRenderer(width, sliceHeight, fontSize, true);
+            LineLayout lines = new LineLayout(renderer, width);
+            lines.setText(text);
+            for (int i = 0; i < lines.getLineCount(); i++) {
+                out.add(renderer.draw(text, lines.getLineStart(i), lines.getLineEnd(i)), IndexedPacker.BPP_1);
+            }
+        });
+    }
+}
@@ -0,0 +1,186 @@
+package com.vuzix.ultralite.sample;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.Observer;
+
+import com.vuzix.ultralite.utils.scroll.AutoScroller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class turns the callback-style operations of the SDK into {@link CompletableFuture}s.
+ *
+ * The SDK reports completion through callbacks such as commit(Runnable) and
+ * requestAcknowledgement(Runnable). Waiting on those from a worker thread means writing a monitor
+ * object every time, and it ties up one blocked thread per operation. A future can instead be
+ * combined with others, given a timeout, or waited on only when the result is really needed. That
+ * lets us pipeline many independent glasses updates from one thread.
+ *
+ * Futures are completed on whatever thread the SDK calls back on, so use the *Async variants of
+ * thenRun() and friends for anything slow.
+ */
+class UltraliteFutures {
+    // One shared timer thread for every timeout
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+    private final MeteredUltralite ultralite;
+    private final EventHub events;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param ultralite The SDK instance, wrapped so commits and acknowledgements are measured
+     * @param events The hub registered with the SDK, used for scroll completion. May be null if
+     *               {@link #scrollCompletion()} is not needed.
+     */
+    public UltraliteFutures(MeteredUltralite ultralite, EventHub events) {
+        this.ultralite = ultralite;
+        this.events = events;
+    }
+
+    /**
+     * Commits the canvas.
+     *
+     * @return A future that completes when the glasses have received the commit
+     */
+    public CompletableFuture<Void> commit() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ultralite.getCanvas().commit(() -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * Sends the batched changes and commits them.
+     *
+     * @return A future that completes when the glasses have received the commit
+     */
+    public CompletableFuture<Void> commit(CanvasBatcher canvas) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        canvas.commit(() -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * Requests an acknowledgement behind everything sent so far.
+     *
+     * @return A future that completes when the glasses have processed everything sent before this call
+     */
+    public CompletableFuture<Void> acknowledgement() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ultralite.requestAcknowledgement(() -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * Call this before starting a scroll so its completion cannot be missed.
+     *
+     * @return A future of the next scroll completion event from the glasses
+     */
+    public CompletableFuture<EventHub.Event> scrollCompletion() {
+        if (events == null) {
+            throw new IllegalStateException("Scroll completion needs an EventHub");
+        }
+        return events.next(EventHub.Type.SCROLLED);
+    }
+
+    /**
+     * Takes over the callback of the AutoScroller. Call this before starting it.
+     *
+     * @return A future that completes when the AutoScroller is done
+     */
+    public CompletableFuture<Void> completion(AutoScroller autoScroller) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        autoScroller.setCallback(complete -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * Requests control of the glasses.
+     *
+     * @return A future that completes when the SDK confirms we have control
+     */
+    public CompletableFuture<Void> control() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        // LiveData may only be observed from the main thread
+        mainHandler.post(() -> {
+            Observer<Boolean> observer = new Observer<Boolean>() {
+                @Override
+                public void onChanged(Boolean controlled) {
+                    if (Boolean.TRUE.equals(controlled)) {
+                        ultralite.getSdk().getControlledByMe().removeObserver(this);
+                        future.complete(null);
+                    }
+                }
+            };
+            ultralite.getSdk().getControlledByMe().observeForever(observer);
+            // Stop observing if the caller gives up, for example because of a timeout
+            future.whenComplete((result, error) -> mainHandler.post(() ->
+                    ultralite.getSdk().getControlledByMe().removeObserver(observer)));
+            if (!future.isDone()) {
+                ultralite.getSdk().requestControl();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return A future that completes like the given one, or fails with a TimeoutException if it
+     *         has not completed within the time limit. If the result fails or is cancelled first,
+     *         the given future is cancelled, so whatever would have completed it can let go of it.
+     */
+    static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMs) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = timer.schedule(() ->
+                result.completeExceptionally(new TimeoutException("Timed out after " + timeoutMs + "ms")),
+                timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((value, error) -> {
+            timeout.cancel(false);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                future.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Blocks the calling thread until the future completes. This is for worker threads like the
+     * one our demo runs on.
+     *
+     * @return The result of the future
+     */
+    static <T> T await(CompletableFuture<T> future) throws MainActivity.Stop {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // Interrupted because we lost control, so nobody waits for the result any more
+            future.cancel(false);
+            throw new MainActivity.Stop(true);
+        } catch (ExecutionException e) {
+            // The operation failed or timed out
+            throw new MainActivity.Stop(true);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "UltraliteFutures timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
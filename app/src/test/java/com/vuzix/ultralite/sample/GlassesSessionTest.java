@@ -0,0 +1,156 @@
+package com.vuzix.ultralite.sample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drops and restores control around the pauses of a session, on a plain JVM.
+ */
+public class GlassesSessionTest {
+    private GlassesSession session;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final AtomicBoolean stoppedForControl = new AtomicBoolean();
+    private final AtomicInteger resumes = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        session = new GlassesSession();
+        session.setControlled(true);
+    }
+
+    @After
+    public void tearDown() {
+        session.shutdown();
+    }
+
+    @Test
+    public void shortLossOfControlResumes() throws Exception {
+        run(() -> session.pause(600, 2000, resumes::incrementAndGet));
+        Thread.sleep(100);
+        session.setControlled(false);
+        Thread.sleep(200);
+        session.setControlled(true);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue("the pause should run to its end", completed.get());
+        assertFalse(stopped.get());
+        assertEquals(1, resumes.get());
+    }
+
+    @Test
+    public void repeatedLossReportsAreRiddenOut() throws Exception {
+        run(() -> session.pause(600, 2000, resumes::incrementAndGet));
+        Thread.sleep(100);
+        // The control observer may report the same state more than once
+        session.setControlled(false);
+        session.setControlled(false);
+        Thread.sleep(100);
+        session.setControlled(true);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(completed.get());
+        assertEquals(1, resumes.get());
+    }
+
+    @Test
+    public void everyShortLossResumes() throws Exception {
+        run(() -> session.pause(1500, 2000, resumes::incrementAndGet));
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(50);
+            session.setControlled(false);
+            Thread.sleep(50);
+            session.setControlled(true);
+        }
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(completed.get());
+        assertEquals(5, resumes.get());
+    }
+
+    @Test
+    public void longLossOfControlStops() throws Exception {
+        run(() -> session.pause(5000, 200, resumes::incrementAndGet));
+        Thread.sleep(100);
+        session.setControlled(false);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertFalse(completed.get());
+        assertTrue(stopped.get());
+        assertTrue(stoppedForControl.get());
+        assertEquals(0, resumes.get());
+    }
+
+    @Test
+    public void plainPauseStopsRightAway() throws Exception {
+        run(() -> session.pause(5000));
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        session.setControlled(false);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(stopped.get());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void shutdownEndsResumablePause() throws Exception {
+        run(() -> session.pause(5000, 5000, resumes::incrementAndGet));
+        Thread.sleep(100);
+        session.setControlled(false);
+        Thread.sleep(100);
+        session.shutdown();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(stopped.get());
+        assertEquals(0, resumes.get());
+    }
+
+    @Test
+    public void submittedSessionCountsAsRunning() throws Exception {
+        run(() -> session.pause(200));
+        // Counts before the worker picks it up, so a second click cannot queue another demo
+        assertTrue(session.isRunning());
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50 && session.isRunning(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(session.isRunning());
+    }
+
+    @Test
+    public void sessionSkippedWithoutControlIsNotRunning() throws Exception {
+        session.setControlled(false);
+        session.submit(() -> completed.set(true), null);
+        for (int i = 0; i < 50 && session.isRunning(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(session.isRunning());
+        assertFalse(completed.get());
+    }
+
+    // The latch opens once the task completed or its Stop was handled
+    private void run(GlassesSession.Task task) {
+        session.submit(() -> {
+            task.run();
+            completed.set(true);
+            finished.countDown();
+        }, (stop, lostControl) -> {
+            stopped.set(true);
+            stoppedForControl.set(lostControl);
+            finished.countDown();
+        });
+    }
+}
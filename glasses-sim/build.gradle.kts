@@ -0,0 +1,17 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    implementation(project(":lvgl-packer"))
+    testImplementation("junit:junit:4.13.2")
+}
+
+application {
+    mainClass.set("com.vuzix.ultralite.sample.sim.GlassesBenchmark")
+}
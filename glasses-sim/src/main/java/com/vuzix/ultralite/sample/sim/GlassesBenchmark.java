@@ -0,0 +1,112 @@
+package com.vuzix.ultralite.sample.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs every demo scenario against the simulated glasses and reports how long each frame takes to
+ * reach the screen.
+ *
+ * Usage: GlassesBenchmark [--check] [good|typical|poor ...]
+ *
+ * With --check, the worst time-to-screen of every scenario on the typical link is compared with
+ * its budget, and the exit code is 1 if any of them is over. That lets a CI job catch changes
+ * that send more than they need to.
+ *
+ * Run it with ./gradlew :glasses-sim:run --args="--check"
+ */
+public final class GlassesBenchmark {
+
+    private GlassesBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        boolean check = false;
+        List<LinkProfile> profiles = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--check")) {
+                check = true;
+            } else {
+                LinkProfile profile = LinkProfile.named(arg);
+                if (profile == null) {
+                    System.err.println("Unknown link profile: " + arg);
+                    System.exit(2);
+                }
+                profiles.add(profile);
+            }
+        }
+        if (profiles.isEmpty()) {
+            profiles.add(LinkProfile.GOOD);
+            profiles.add(LinkProfile.TYPICAL);
+            profiles.add(LinkProfile.POOR);
+        }
+
+        List<String> overBudget = new ArrayList<>();
+        for (LinkProfile profile : profiles) {
+            System.out.println("Link: " + profile);
+            System.out.println(String.format(Locale.US, "  %-22s %7s %9s %9s %9s %8s",
+                    "scenario", "frames", "p50 ms", "max ms", "KB sent", "dropped"));
+            for (Scenario scenario : Scenarios.all()) {
+                Result result = run(scenario, profile);
+                System.out.println(String.format(Locale.US, "  %-22s %7d %9.1f %9.1f %9.1f %8d",
+                        scenario.getName(), result.frames, result.medianMs, result.worstMs,
+                        result.bytes / 1024.0, result.dropped));
+                if (profile == LinkProfile.TYPICAL && result.worstMs > scenario.getBudgetMs()) {
+                    overBudget.add(scenario.getName() + " took " + Math.round(result.worstMs)
+                            + " ms, budget " + scenario.getBudgetMs() + " ms");
+                }
+            }
+            System.out.println();
+        }
+
+        if (check) {
+            if (!profiles.contains(LinkProfile.TYPICAL)) {
+                System.err.println("--check needs the typical link profile");
+                System.exit(2);
+            }
+            for (String failure : overBudget) {
+                System.err.println("Over budget: " + failure);
+            }
+            System.exit(overBudget.isEmpty() ? 0 : 1);
+        }
+    }
+
+    static Result run(Scenario scenario, LinkProfile profile) {
+        return run(scenario, new SimulatedGlasses(profile));
+    }
+
+    /**
+     * Runs the scenario on the given glasses, which are left as the scenario ends so their state
+     * can be checked.
+     */
+    static Result run(Scenario scenario, SimulatedGlasses glasses) {
+        glasses.requestControl();
+        glasses.runUntil(glasses::isControlledByMe, 10_000_000);
+        // Time-to-screen starts counting from the demo's first command
+        glasses.getTimesToScreen().clear();
+        long bytesBefore = glasses.getBytesSent();
+
+        scenario.run(glasses);
+        glasses.runUntilIdle();
+
+        List<Long> times = new ArrayList<>(glasses.getTimesToScreen());
+        Collections.sort(times);
+        Result result = new Result();
+        result.frames = times.size();
+        result.medianMs = times.isEmpty() ? 0 : times.get(times.size() / 2) / 1000.0;
+        result.worstMs = times.isEmpty() ? 0 : times.get(times.size() - 1) / 1000.0;
+        result.bytes = glasses.getBytesSent() - bytesBefore;
+        result.dropped = glasses.getMessagesDropped();
+        return result;
+    }
+
+    static final class Result {
+        int frames;
+        double medianMs;
+        double worstMs;
+        long bytes;
+        int dropped;
+    }
+}
@@ -0,0 +1,60 @@
+package com.vuzix.ultralite.sample.sim;
+
+/**
+ * The speed of the Bluetooth link and of the glasses, for {@link SimulatedGlasses}.
+ */
+public final class LinkProfile {
+    // A reasonable connection with the 2M PHY and a large MTU
+    public static final LinkProfile GOOD = new LinkProfile("good", 120_000, 15_000, 2_000, 400);
+    // What we see on a busy phone or with the 1M PHY
+    public static final LinkProfile TYPICAL = new LinkProfile("typical", 60_000, 30_000, 3_000, 600);
+    // A congested link, such as with WiFi and other Bluetooth devices active
+    public static final LinkProfile POOR = new LinkProfile("poor", 20_000, 60_000, 5_000, 800);
+
+    public final String name;
+    // How fast bytes go over the air
+    public final long bytesPerSecond;
+    // One-way delay of every message on top of its transfer time
+    public final long latencyMicros;
+    // Time the glasses take to handle any command
+    public final long processingMicros;
+    // Extra time the glasses take per KB of image data, for decoding and drawing
+    public final long processingMicrosPerKilobyte;
+
+    public LinkProfile(String name, long bytesPerSecond, long latencyMicros, long processingMicros,
+                       long processingMicrosPerKilobyte) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive");
+        }
+        this.name = name;
+        this.bytesPerSecond = bytesPerSecond;
+        this.latencyMicros = latencyMicros;
+        this.processingMicros = processingMicros;
+        this.processingMicrosPerKilobyte = processingMicrosPerKilobyte;
+    }
+
+    /**
+     * @return The profile with the given name, or null
+     */
+    public static LinkProfile named(String name) {
+        for (LinkProfile profile : new LinkProfile[]{GOOD, TYPICAL, POOR}) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    long transferMicros(long bytes) {
+        return bytes * 1_000_000 / bytesPerSecond;
+    }
+
+    long processingMicros(long payloadBytes) {
+        return processingMicros + payloadBytes * processingMicrosPerKilobyte / 1024;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + bytesPerSecond / 1000 + " KB/s, " + latencyMicros / 1000 + " ms latency)";
+    }
+}
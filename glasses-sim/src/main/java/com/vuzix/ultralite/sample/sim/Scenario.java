@@ -0,0 +1,21 @@
+package com.vuzix.ultralite.sample.sim;
+
+/**
+ * A scripted run of one of the demos against the simulated glasses.
+ */
+public interface Scenario {
+
+    String getName();
+
+    /**
+     * @return The worst time-to-screen in ms this scenario may take on the
+     *         {@link LinkProfile#TYPICAL} link before the benchmark reports a regression
+     */
+    long getBudgetMs();
+
+    /**
+     * Sends the same commands, in the same order and with the same waits, as the demo does. The
+     * glasses are already controlled by us when this is called.
+     */
+    void run(SimulatedGlasses glasses);
+}
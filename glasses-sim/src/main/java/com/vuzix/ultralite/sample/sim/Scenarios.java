@@ -0,0 +1,544 @@
+package com.vuzix.ultralite.sample.sim;
+
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+import com.vuzix.ultralite.sample.lvgl.TileCompiler;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The demos of the sample app, as scenarios for the simulator. Each one sends the commands the
+ * matching Demo* method sends, in the same order, with the same pauses and the same layout
+ * parameters. Pauses that only give the user time to read are kept, since they let the link drain
+ * just like on real glasses.
+ *
+ * The demos run on Android, so they cannot run here. Instead the constants below carry the name
+ * and value of the demo constant they stand for. Change them together with the demo. Text that a
+ * demo renders into images only matters for how many lines it takes, which is estimated from its
+ * length. The dashboard of DemoCanvasLayout is not scripted, since which widgets get a canvas slot
+ * is decided by ElementPool at runtime.
+ */
+final class Scenarios {
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+    private static final long SECOND = 1_000_000;
+    // MainActivity.DemoActivityViewModel.pause()
+    private static final long DEFAULT_PAUSE = 2 * SECOND;
+
+    // The rocket and poop drawables with their empty borders cropped, as PayloadMinimizer sends them
+    private static final SimImage ROCKET = new SimImage(30, 30, IndexedPacker.BPP_1);
+    private static final SimImage POOP = new SimImage(42, 42, IndexedPacker.BPP_1);
+    private static final SimImage ROCKET_BACKGROUND = new SimImage(30, 30, IndexedPacker.BPP_2);
+    // The happy face once, and the two frames of the eye that winks, as CompiledAnimation sends them
+    private static final SimImage FACE = new SimImage(84, 84, IndexedPacker.BPP_1);
+    private static final SimImage EYE = new SimImage(17, 13, IndexedPacker.BPP_1);
+    private static final SimImage FULL_SCREEN = new SimImage(WIDTH, HEIGHT, IndexedPacker.BPP_2);
+
+    // The scroll demos render their lines with TextToImageSlicer or TextLineRenderer
+    static final int SLICE_HEIGHT = 48;
+    // About how many characters of the 35 pixel font fit on one 640 pixel line
+    private static final int CHARS_PER_LINE = 36;
+    private static final SimImage LINE = new SimImage(WIDTH, SLICE_HEIGHT, IndexedPacker.BPP_1);
+
+    // DemoScrollAutoScroller
+    static final int AUTO_SCROLLER_LOWEST_LINE = 0;      // startingScreenLocation
+    static final int AUTO_SCROLLER_LINES_SHOWING = 4;    // numberLinesShowing
+    private static final int AUTO_SCROLLER_DURATION_MS = 1500; // scrollSpeedInMs
+    // The SDK AutoScroller picks its own scroll animation time
+    private static final int AUTO_SCROLLER_SCROLL_MS = 500;
+    // R.string.scroll_layout_demo_text
+    private static final String TELEPROMPTER_TEXT = "The text can also scroll like a teleprompter with "
+            + "the scroll layout. This layout also supports several configuration options such as "
+            + "font size and scroll speed.";
+
+    // DemoScrollLiveText
+    static final int LIVE_TEXT_LOWEST_LINE = 1;          // startingScreenLocation
+    static final int LIVE_TEXT_LINES_SHOWING = 3;        // numberLinesShowing
+    private static final int LIVE_TEXT_SCROLL_MS = 500;  // scrollMs
+    private static final long LIVE_TEXT_CHUNK_PAUSE = 2 * SECOND;
+    private static final long LIVE_TEXT_UTTERANCE_PAUSE = SECOND;
+    // R.array.live_text_demo_text_1 and R.array.live_text_demo_text_2
+    private static final String[][] LIVE_TEXT_UTTERANCES = {
+            {"This is some text that simulates data coming", "from a", "speech recognition engine.",
+                    "It will get data in little chunks and", "keep appending it as we get more", "and more data."},
+            {"Then after a break, we might start over with a new", "sentence, and the recognizer will stop giving us",
+                    "original text, and just give us this new stuff.", "That's fine, too."}
+    };
+
+    // DemoScrollNative
+    static final int NATIVE_LOWEST_LINE = 0;             // lowestLineShowing
+    static final int NATIVE_LINES_SHOWING = 3;           // maxLinesShowing
+    private static final int NATIVE_SCROLL_MS = 500;     // fastScrollMilliSecs
+    private static final int NATIVE_SLOW_SCROLL_MS = 4000;
+    // R.string.scroll_layout_native_text
+    private static final String NATIVE_TEXT = "We can have complete control over the scroll layout if "
+            + "we make our own class to send the data to the glasses. This class just sends images "
+            + "full of text and graphics to the screen and scrolls them as we see fit.";
+
+    // CommandScheduler.DEFAULT_WINDOW_BYTES and DEFAULT_STRIP_BYTES
+    private static final int SCHEDULER_WINDOW_BYTES = 24 * 1024;
+    private static final int SCHEDULER_STRIP_BYTES = 4 * 1024;
+    // BackgroundCompositor.STAMP_TILE_SIZE
+    private static final int STAMP_TILE_SIZE = 16;
+
+    // DemoTapInput renders each screen with the SliceCache, which charges a 2-bit slice
+    private static final SimImage TAP_SCREEN = new SimImage(WIDTH, 60, IndexedPacker.BPP_2);
+
+    private Scenarios() {
+    }
+
+    static List<Scenario> all() {
+        return Arrays.asList(
+                scenario("canvas-text", 200, Scenarios::canvasText),
+                scenario("canvas-images", 200, Scenarios::canvasImages),
+                scenario("canvas-background", 2000, Scenarios::canvasBackground),
+                scenario("canvas-streaming", 1000, Scenarios::canvasStreaming),
+                scenario("scroll-autoscroller", 1000, Scenarios::autoScroller),
+                scenario("scroll-live-text", 1500, Scenarios::liveText),
+                scenario("scroll-native", 5000, Scenarios::scrollNative),
+                scenario("tap-input", 750, Scenarios::tapInput));
+    }
+
+    static Scenario named(String name) {
+        for (Scenario scenario : all()) {
+            if (scenario.getName().equals(name)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("No scenario " + name);
+    }
+
+    // DemoCanvasLayout.demoTextFields
+    private static void canvasText(SimulatedGlasses g) {
+        g.setLayout(SimulatedGlasses.Layout.CANVAS);
+        int text = g.createText("This is a canvas with a text field.", true);
+        g.commit();
+        g.advance(5 * SECOND);
+
+        g.updateText(text, "The text can be changed.");
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "The text can be moved.");
+        g.moveText(text, 0, 0);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "The text can be made invisible...");
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.setTextVisible(text, false);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "and visible again...");
+        g.setTextVisible(text, true);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "If requested, the text can wrap if it grows too large to show on a single line.");
+        g.commit();
+        g.advance(5 * SECOND);
+
+        g.removeText(text);
+        g.commit();
+    }
+
+    // DemoCanvasLayout.demoImages
+    private static void canvasImages(SimulatedGlasses g) {
+        int text = g.createText("You can create image objects.", true);
+        int image = g.createImage(ROCKET);
+        g.commit();
+        g.advance(5 * SECOND);
+
+        g.updateText(text, "You can change the image.");
+        g.updateImage(image, POOP);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "You can move the image.");
+        g.moveImage(image, 100, 100);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "You can hide an image.");
+        g.setImageVisible(image, false);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "You can show an image.");
+        g.setImageVisible(image, true);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.removeImage(image);
+        g.updateText(text, "Animations are possible too.");
+        int face = g.createImage(FACE);
+        int eye = g.createAnimation(new SimImage[]{EYE, EYE}, 1000);
+        g.commit();
+        g.advance(5 * SECOND);
+
+        g.updateText(text, "You can move animations.");
+        g.moveImage(face, 408, 308);
+        g.moveImage(eye, 454, 333);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "You can hide animations.");
+        g.setImageVisible(face, false);
+        g.setImageVisible(eye, false);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.updateText(text, "You can show animations.");
+        g.setImageVisible(face, true);
+        g.setImageVisible(eye, true);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.removeAnimation(eye);
+        g.removeImage(face);
+        g.removeText(text);
+        g.commit();
+    }
+
+    // DemoCanvasLayout.demoBackgroundDrawing. The batcher sends a new text with its final value.
+    private static void canvasBackground(SimulatedGlasses g) {
+        int text = g.createText("You can repeat an image across the background layer with a single command.", true);
+        g.drawBackground(ROCKET_BACKGROUND, 6);
+        g.commit();
+        g.advance(5 * SECOND);
+
+        g.updateText(text, "You can clear areas of the background layer.");
+        g.clearBackgroundRect(100, 100, 440, 280);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.clearBackgroundRect(100, 100, 440, 280);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        g.clearBackground();
+        g.updateText(text, "Finally, we're going to send a full screen image to the glasses.");
+        g.commit();
+        g.advance(4 * SECOND);
+
+        // The dithered photo has almost no repeated tiles, so the compositor sends it whole
+        g.removeText(text);
+        g.drawBackground(FULL_SCREEN, 0, 0);
+        g.commit();
+        g.advance(5 * SECOND);
+
+        // The form is mostly repeated tiles, so the compositor stamps them instead
+        TileCompiler.Plan plan = TileCompiler.compile(form(), WIDTH, HEIGHT, STAMP_TILE_SIZE,
+                STAMP_TILE_SIZE, IndexedPacker.BPP_2);
+        g.clearBackground();
+        for (TileCompiler.Rect rect : plan.whiteRects) {
+            g.clearBackgroundRect(rect.x, rect.y, rect.width, rect.height);
+        }
+        for (TileCompiler.Stamp stamp : plan.stamps) {
+            SimImage tile = new SimImage(stamp.width, stamp.height, IndexedPacker.BPP_2);
+            if (stamp.x.length == 1) {
+                g.drawBackground(tile, stamp.x[0], stamp.y[0]);
+            } else {
+                g.drawBackground(tile, stamp.x.length);
+            }
+        }
+        g.commit();
+        g.advance(5 * SECOND);
+    }
+
+    // The checklist of DemoCanvasLayout.drawForm without the labels, which the simulator cannot
+    // render. Each label adds a few unique tiles to the real form.
+    static int[] form() {
+        final int rowHeight = 48;
+        final int white = 0xFFFFFFFF;
+        final int gray = 0xFF888888;
+        int[] argb = new int[WIDTH * HEIGHT];
+        Arrays.fill(argb, 0xFF000000);
+        fill(argb, 0, 0, WIDTH, rowHeight, white);
+        for (int row = 1; row * rowHeight < HEIGHT; row++) {
+            int top = row * rowHeight;
+            fill(argb, 16, top + 8, 48, top + 10, white);
+            fill(argb, 16, top + 38, 48, top + 40, white);
+            fill(argb, 16, top + 8, 18, top + 40, white);
+            fill(argb, 46, top + 8, 48, top + 40, white);
+            fill(argb, 0, top + rowHeight - 1, WIDTH, top + rowHeight, gray);
+        }
+        return argb;
+    }
+
+    private static void fill(int[] argb, int left, int top, int right, int bottom, int color) {
+        for (int y = top; y < Math.min(bottom, HEIGHT); y++) {
+            Arrays.fill(argb, y * WIDTH + left, y * WIDTH + Math.min(right, WIDTH), color);
+        }
+    }
+
+    // DemoCanvasLayout.demoStreamingBackground. The CommandScheduler sends the background in strips
+    // while less than a window of them waits for an acknowledgement, and text updates go out as
+    // soon as they are made.
+    private static void canvasStreaming(SimulatedGlasses g) {
+        int text = g.createText("", true);
+        int rowBytes = IndexedPacker.rowBytes(WIDTH, IndexedPacker.BPP_2);
+        int rows = Math.max(1, SCHEDULER_STRIP_BYTES / rowBytes);
+        ArrayDeque<SimImage> strips = new ArrayDeque<>();
+        for (int top = 0; top < HEIGHT; top += rows) {
+            strips.add(new SimImage(WIDTH, Math.min(rows, HEIGHT - top), IndexedPacker.BPP_2));
+        }
+        BulkQueue bulk = new BulkQueue(g, strips);
+        bulk.pump();
+
+        int ticks = 0;
+        while (!bulk.isCommitted()) {
+            g.updateText(text, "Text stays responsive while a big image streams in: " + ++ticks);
+            g.commit();
+            g.advance(SECOND / 4);
+        }
+        g.updateText(text, "The image arrived after " + ticks + " updates.");
+        g.commit();
+        g.advance(4 * SECOND);
+
+        g.removeText(text);
+        boolean[] removed = new boolean[1];
+        g.commit(() -> removed[0] = true);
+        g.runUntil(() -> removed[0], 10 * SECOND);
+    }
+
+    // DemoScrollAutoScroller: the SDK AutoScroller sends each line at the bottom of the showing
+    // lines, and scrolls it in, every time the duration passes
+    private static void autoScroller(SimulatedGlasses g) {
+        g.setLayout(SimulatedGlasses.Layout.SCROLL);
+        g.scrollLayoutConfig(SLICE_HEIGHT, AUTO_SCROLLER_LOWEST_LINE, AUTO_SCROLLER_LINES_SHOWING,
+                AUTO_SCROLLER_SCROLL_MS, true);
+        for (int line = 0; line < lineCount(TELEPROMPTER_TEXT.length()); line++) {
+            g.sendScrollImage(LINE, AUTO_SCROLLER_LOWEST_LINE, true);
+            g.advance(AUTO_SCROLLER_DURATION_MS * 1000L);
+        }
+    }
+
+    // DemoScrollLiveText: the CaptionStream sends again only the showing lines a partial result
+    // changed, and scrolls in the lines it added
+    private static void liveText(SimulatedGlasses g) {
+        g.setLayout(SimulatedGlasses.Layout.SCROLL);
+        g.scrollLayoutConfig(SLICE_HEIGHT, LIVE_TEXT_LOWEST_LINE, LIVE_TEXT_LINES_SHOWING, LIVE_TEXT_SCROLL_MS, false);
+        int shownLines = 0;
+        for (String[] chunks : LIVE_TEXT_UTTERANCES) {
+            // A new utterance starts on a line of its own, after the final text before it
+            int firstLine = shownLines;
+            int length = 0;
+            for (String chunk : chunks) {
+                int oldLength = length;
+                length += (length > 0 ? 1 : 0) + chunk.length();
+                int oldCount = firstLine + lineCount(oldLength);
+                int newCount = firstLine + lineCount(length);
+                // Appending only changes the last line of the text so far
+                int changed = oldLength > 0 ? oldCount - 1 : newCount;
+                for (int line = changed; line < Math.min(newCount, shownLines); line++) {
+                    int slot = LIVE_TEXT_LOWEST_LINE + (shownLines - 1 - line);
+                    if (slot < LIVE_TEXT_LOWEST_LINE + LIVE_TEXT_LINES_SHOWING) {
+                        g.sendScrollImage(LINE, slot, false);
+                    }
+                }
+                for (; shownLines < newCount; shownLines++) {
+                    g.sendScrollImage(LINE, LIVE_TEXT_LOWEST_LINE, true);
+                }
+                g.advance(LIVE_TEXT_CHUNK_PAUSE);
+            }
+            g.advance(LIVE_TEXT_UTTERANCE_PAUSE);
+        }
+    }
+
+    // DemoScrollNative: fill the screen from the top down without scrolling, then scroll in one
+    // line at a time at the bottom
+    private static void scrollNative(SimulatedGlasses g) {
+        g.setLayout(SimulatedGlasses.Layout.SCROLL);
+        g.scrollLayoutConfig(SLICE_HEIGHT, NATIVE_LOWEST_LINE, NATIVE_LINES_SHOWING, NATIVE_SCROLL_MS, false);
+        int lines = lineCount(NATIVE_TEXT.length());
+
+        // The AckTracker window is a whole screen, so the first lines go out back to back
+        int line = 0;
+        boolean[] acked = new boolean[1];
+        for (; line < Math.min(NATIVE_LINES_SHOWING, lines); line++) {
+            g.sendScrollImage(LINE, NATIVE_LINES_SHOWING - 1 - line, false);
+        }
+        g.requestAcknowledgement(() -> acked[0] = true);
+        g.runUntil(() -> acked[0], 10 * SECOND);
+
+        for (; line < lines; line++) {
+            g.advance(DEFAULT_PAUSE);
+            g.sendScrollImage(LINE, NATIVE_LOWEST_LINE, true);
+        }
+        g.advance(DEFAULT_PAUSE);
+
+        g.scrollLayoutConfig(SLICE_HEIGHT, NATIVE_LOWEST_LINE, NATIVE_LINES_SHOWING, NATIVE_SLOW_SCROLL_MS, false);
+        ScrollWaiter scrolled = new ScrollWaiter(g);
+        g.scrollNow();
+        scrolled.await();
+        scrolled.close();
+
+        g.clear(NATIVE_LINES_SHOWING - 1);
+        g.advance(DEFAULT_PAUSE);
+    }
+
+    // DemoTapInput: a TapMenu of three image slots, with the screens a tap leads to uploaded and
+    // hidden ahead of time
+    private static void tapInput(SimulatedGlasses g) {
+        g.setLayout(SimulatedGlasses.Layout.CANVAS);
+        int[] taps = new int[1];
+        SimulatedGlasses.EventListener listener = new SimulatedGlasses.EventListener() {
+            @Override
+            public void onTap(int tapCount) {
+                taps[0] = tapCount;
+            }
+        };
+        g.addEventListener(listener);
+
+        // show(tapOnce), then preload tappedOnce and tappedTwice. A new slot is hidden until the
+        // command that shows it.
+        int tapOnce = preload(g);
+        g.setImageVisible(tapOnce, true);
+        g.commit();
+        int tappedOnce = preload(g);
+        int tappedTwice = preload(g);
+
+        // The user reads the prompt and taps once. Only the visibility changes.
+        tap(g, taps, 1);
+        g.setImageVisible(tapOnce, false);
+        g.setImageVisible(tappedOnce, true);
+        g.commit();
+        // tapTwice is loaded into the slot tapOnce no longer needs
+        int tapTwice = tapOnce;
+        g.updateImage(tapTwice, TAP_SCREEN);
+        g.moveImage(tapTwice, 0, 0);
+        g.advance(SECOND);
+
+        g.setImageVisible(tappedOnce, false);
+        g.setImageVisible(tapTwice, true);
+        g.commit();
+
+        tap(g, taps, 2);
+        g.setImageVisible(tapTwice, false);
+        g.setImageVisible(tappedTwice, true);
+        g.commit();
+        g.advance(DEFAULT_PAUSE);
+
+        // removeAll
+        g.removeImage(tapTwice);
+        g.removeImage(tappedOnce);
+        g.removeImage(tappedTwice);
+        boolean[] removed = new boolean[1];
+        g.commit(() -> removed[0] = true);
+        g.runUntil(() -> removed[0], 10 * SECOND);
+        g.removeEventListener(listener);
+    }
+
+    private static int preload(SimulatedGlasses g) {
+        int id = g.createImage(TAP_SCREEN);
+        g.setImageVisible(id, false);
+        g.moveImage(id, 0, 0);
+        return id;
+    }
+
+    // The user reads the screen for a second, then taps
+    private static void tap(SimulatedGlasses g, int[] taps, int count) {
+        g.advance(SECOND);
+        g.tap(count);
+        g.runUntil(() -> taps[0] == count, 10 * SECOND);
+    }
+
+    // How many lines the scroll demos break a text of this length into
+    static int lineCount(int length) {
+        return (length + CHARS_PER_LINE - 1) / CHARS_PER_LINE;
+    }
+
+    private static Scenario scenario(String name, long budgetMs, Script script) {
+        return new Scenario() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public long getBudgetMs() {
+                return budgetMs;
+            }
+
+            @Override
+            public void run(SimulatedGlasses glasses) {
+                script.run(glasses);
+            }
+        };
+    }
+
+    private interface Script {
+        void run(SimulatedGlasses glasses);
+    }
+
+    // The bulk queue of the CommandScheduler: strips go out while the window has room, each one
+    // followed by an acknowledgement, and a commit after the last one
+    private static class BulkQueue {
+        private final SimulatedGlasses glasses;
+        private final ArrayDeque<SimImage> strips;
+        private long inFlightBytes;
+        private boolean commitSent;
+        private boolean committed;
+
+        BulkQueue(SimulatedGlasses glasses, ArrayDeque<SimImage> strips) {
+            this.glasses = glasses;
+            this.strips = strips;
+        }
+
+        void pump() {
+            while (!strips.isEmpty()) {
+                SimImage strip = strips.peekFirst();
+                if (inFlightBytes > 0 && inFlightBytes + strip.getBytes() > SCHEDULER_WINDOW_BYTES) {
+                    return;
+                }
+                strips.removeFirst();
+                long bytes = strip.getBytes();
+                inFlightBytes += bytes;
+                glasses.drawBackground(strip, 0, 0);
+                glasses.requestAcknowledgement(() -> {
+                    inFlightBytes -= bytes;
+                    pump();
+                });
+            }
+            if (!commitSent) {
+                commitSent = true;
+                glasses.commit(() -> committed = true);
+            }
+        }
+
+        boolean isCommitted() {
+            return committed;
+        }
+    }
+
+    // Waits for scroll completion events, like the demos do with their EventHub cursor
+    private static class ScrollWaiter implements SimulatedGlasses.EventListener {
+        private final SimulatedGlasses glasses;
+        private int scrolls;
+        private int awaited;
+
+        ScrollWaiter(SimulatedGlasses glasses) {
+            this.glasses = glasses;
+            glasses.addEventListener(this);
+        }
+
+        @Override
+        public void onScrolled(boolean isScreenEmpty) {
+            scrolls++;
+        }
+
+        void await() {
+            int target = ++awaited;
+            glasses.runUntil(() -> scrolls >= target, 10 * SECOND);
+        }
+
+        void close() {
+            glasses.removeEventListener(this);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.vuzix.ultralite.sample.sim;
+
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+
+/**
+ * Stands in for an LVGLImage. Only its size matters to the simulator.
+ */
+public final class SimImage {
+    public final int width;
+    public final int height;
+    public final int bitsPerPixel;
+
+    public SimImage(int width, int height, int bitsPerPixel) {
+        this.width = width;
+        this.height = height;
+        this.bitsPerPixel = bitsPerPixel;
+    }
+
+    /**
+     * @return The size of the image on the wire, palette included
+     */
+    public int getBytes() {
+        return IndexedPacker.packedSize(width, height, bitsPerPixel);
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "@" + bitsPerPixel;
+    }
+}
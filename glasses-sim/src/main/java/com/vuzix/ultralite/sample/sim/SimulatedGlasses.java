@@ -0,0 +1,603 @@
+package com.vuzix.ultralite.sample.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class stands in for the Z100 glasses and the Bluetooth link, so the throughput of our
+ * glasses code can be measured on any JVM without hardware.
+ *
+ * It covers the part of the UltraliteSDK this app uses: the canvas, the scroll view,
+ * acknowledgements, taps and handing control between apps. Every command becomes a message of an
+ * estimated size. Messages go over the link one at a time at the bandwidth of the
+ * {@link LinkProfile}, arrive after its latency, and are processed by the glasses one at a time.
+ * That gives the time each commit or scroll actually shows up on the screen.
+ *
+ * Time is simulated. Calls from the phone side take no time, and the phone script moves time
+ * forward with {@link #advance}, {@link #runUntil} or {@link #runUntilIdle}. Callbacks and events
+ * run during those calls, on the calling thread, so every run gives the same numbers.
+ *
+ * Like the real glasses, the canvas holds at most 7 text fields and 3 images, and commands that
+ * arrive while another app has control are dropped. The scroll layout numbers its screen lines
+ * like the SDK, with 0 at the bottom. A scroll moves every showing line one up, and a line sent
+ * with scrollFirst lands in its slot once that scroll is done.
+ */
+public class SimulatedGlasses {
+
+    public enum Layout {
+        CANVAS,
+        SCROLL
+    }
+
+    /**
+     * Receives events from the glasses, like the SDK EventListener.
+     */
+    public interface EventListener {
+        default void onTap(int tapCount) {
+        }
+
+        default void onScrolled(boolean isScreenEmpty) {
+        }
+
+        default void onControlChanged(boolean controlledByMe) {
+        }
+    }
+
+    static final int MAX_TEXTS = 7;
+    static final int MAX_IMAGES = 3;
+    // Estimated framing and arguments of every command, on top of its payload
+    static final int COMMAND_OVERHEAD_BYTES = 8;
+    // Size of one coordinate in a repeated background draw
+    private static final int POINT_BYTES = 4;
+    private static final int SCREEN_LINES = 10;
+
+    private final LinkProfile link;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final List<EventListener> listeners = new ArrayList<>();
+    private long now;
+    private long eventSequence;
+
+    // When the link and the glasses are next free
+    private long linkFreeAt;
+    private long glassesFreeAt;
+    private long scrollFreeAt;
+
+    // Glasses state, as of the last processed message
+    private boolean glassesControlled;
+    private Layout layout = Layout.CANVAS;
+    private int scrollLowestLine;
+    private int scrollLinesShowing = SCREEN_LINES;
+    private final SimImage[] scrollSlots = new SimImage[SCREEN_LINES];
+    // Whether each canvas element is visible, or null if it does not exist
+    private final Boolean[] glassesTexts = new Boolean[MAX_TEXTS];
+    private final Boolean[] glassesImages = new Boolean[MAX_IMAGES];
+
+    // Phone state. The glasses process commands in order, so the phone can track which element
+    // slots are free and hand out ids without waiting for a reply.
+    private boolean controlledByMe;
+    private boolean wanted;
+    // Scrolls start in the order they are sent, so the phone knows how long each one takes
+    private int scrollMs;
+    private final boolean[] texts = new boolean[MAX_TEXTS];
+    private final boolean[] images = new boolean[MAX_IMAGES];
+
+    // Statistics
+    private long bytesSent;
+    private int messagesSent;
+    private int messagesDropped;
+    private long frameStartedAt = -1;
+    private final List<Long> timesToScreen = new ArrayList<>();
+
+    public SimulatedGlasses(LinkProfile link) {
+        this.link = link;
+    }
+
+    public LinkProfile getLink() {
+        return link;
+    }
+
+    // ---- Time ----
+
+    /**
+     * @return The simulated time in microseconds
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * Moves time forward, running every callback and event that falls in between. This is the
+     * simulated version of sleeping on the phone.
+     */
+    public void advance(long micros) {
+        long until = now + micros;
+        while (!events.isEmpty() && events.peek().time <= until) {
+            runNext();
+        }
+        now = until;
+    }
+
+    /**
+     * Runs events until the condition holds, or until the timeout.
+     *
+     * @return True if the condition holds
+     */
+    public boolean runUntil(BooleanSupplier condition, long timeoutMicros) {
+        long deadline = now + timeoutMicros;
+        while (!condition.getAsBoolean()) {
+            if (events.isEmpty() || events.peek().time > deadline) {
+                now = Math.max(now, deadline);
+                return condition.getAsBoolean();
+            }
+            runNext();
+        }
+        return true;
+    }
+
+    /**
+     * Runs events until the link and the glasses have nothing left to do.
+     */
+    public void runUntilIdle() {
+        while (!events.isEmpty()) {
+            runNext();
+        }
+    }
+
+    // ---- Control ----
+
+    public void addEventListener(EventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeEventListener(EventListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void requestControl() {
+        wanted = true;
+        // Handing over control is not subject to the control check
+        send(0, true, () -> setControlled(true));
+    }
+
+    public void releaseControl() {
+        wanted = false;
+        send(0, true, () -> setControlled(false));
+    }
+
+    /**
+     * Another app takes control of the glasses right now. We find out one link latency later.
+     */
+    public void otherAppTakesControl() {
+        schedule(now, () -> setControlled(false));
+    }
+
+    /**
+     * Another app gives control back, and the glasses return it to us if we still want it.
+     */
+    public void otherAppReleasesControl() {
+        schedule(now, () -> setControlled(wanted));
+    }
+
+    /**
+     * @return True if the glasses have given control to us, as last reported to the phone
+     */
+    public boolean isControlledByMe() {
+        return controlledByMe;
+    }
+
+    // ---- Layouts ----
+
+    public void setLayout(Layout layout) {
+        send(0, () -> {
+            this.layout = layout;
+            Arrays.fill(scrollSlots, null);
+            Arrays.fill(glassesTexts, null);
+            Arrays.fill(glassesImages, null);
+        });
+        Arrays.fill(texts, false);
+        Arrays.fill(images, false);
+    }
+
+    // ---- Canvas ----
+
+    /**
+     * @return The id of the text field, or -1 if all of them are in use
+     */
+    public int createText(String text, boolean visible) {
+        int id = claim(texts);
+        if (id != -1) {
+            send(text.length(), () -> glassesTexts[id] = visible);
+        }
+        return id;
+    }
+
+    public void updateText(int id, String text) {
+        send(text.length(), null);
+    }
+
+    public void moveText(int id, int x, int y) {
+        send(0, null);
+    }
+
+    public void setTextVisible(int id, boolean visible) {
+        send(0, () -> setVisible(glassesTexts, id, visible));
+    }
+
+    public void removeText(int id) {
+        texts[id] = false;
+        send(0, () -> glassesTexts[id] = null);
+    }
+
+    /**
+     * @return The id of the image, or -1 if all of them are in use
+     */
+    public int createImage(SimImage image) {
+        int id = claim(images);
+        if (id != -1) {
+            // New images are visible until hidden
+            send(image.getBytes(), () -> glassesImages[id] = true);
+        }
+        return id;
+    }
+
+    public void updateImage(int id, SimImage image) {
+        send(image.getBytes(), null);
+    }
+
+    public void moveImage(int id, int x, int y) {
+        send(0, null);
+    }
+
+    public void setImageVisible(int id, boolean visible) {
+        send(0, () -> setVisible(glassesImages, id, visible));
+    }
+
+    public void removeImage(int id) {
+        images[id] = false;
+        send(0, () -> glassesImages[id] = null);
+    }
+
+    /**
+     * Animations use an image slot on the glasses.
+     *
+     * @return The id of the animation, or -1 if all image slots are in use
+     */
+    public int createAnimation(SimImage[] frames, int durationMs) {
+        int id = claim(images);
+        if (id != -1) {
+            long bytes = 0;
+            for (SimImage frame : frames) {
+                bytes += frame.getBytes();
+            }
+            send(bytes, () -> glassesImages[id] = true);
+        }
+        return id;
+    }
+
+    public void removeAnimation(int id) {
+        removeImage(id);
+    }
+
+    public void drawBackground(SimImage image, int x, int y) {
+        send(image.getBytes(), null);
+    }
+
+    public void drawBackground(SimImage image, int coordinateCount) {
+        // The image is decoded once and copied to each position
+        send(image.getBytes() + (long) POINT_BYTES * coordinateCount, null);
+    }
+
+    public void clearBackgroundRect(int x, int y, int width, int height) {
+        send(0, null);
+    }
+
+    public void clearBackground() {
+        send(0, null);
+    }
+
+    /**
+     * Shows everything sent since the last commit.
+     *
+     * @return The simulated time at which it will be on the screen
+     */
+    public long commit() {
+        return commit(null);
+    }
+
+    /**
+     * @param callback Runs on the phone once the glasses have received the commit, or null
+     * @return The simulated time at which the commit will be on the screen
+     */
+    public long commit(Runnable callback) {
+        long shownAt = send(0, null);
+        frameShown(shownAt);
+        if (callback != null) {
+            reply(shownAt, callback);
+        }
+        return shownAt;
+    }
+
+    // ---- Scroll view ----
+
+    public void scrollLayoutConfig(int sliceHeight, int lowestLine, int linesShowing, int scrollMs,
+                                   boolean autoScroll) {
+        if (lowestLine < 0 || linesShowing < 1 || lowestLine + linesShowing > SCREEN_LINES) {
+            throw new IllegalArgumentException("Lines out of range: " + linesShowing + " from " + lowestLine);
+        }
+        this.scrollMs = scrollMs;
+        send(0, () -> {
+            scrollLowestLine = lowestLine;
+            scrollLinesShowing = linesShowing;
+        });
+    }
+
+    /**
+     * @param index Screen line to put the image in, 0 being the bottom of the screen
+     * @param scrollFirst Scroll the showing lines up one first, and put the image in once the
+     *                    scroll is done
+     * @return The simulated time at which the slice will be on the screen
+     */
+    public long sendScrollImage(SimImage image, int index, boolean scrollFirst) {
+        checkLine(index);
+        long shownAt;
+        if (scrollFirst) {
+            shownAt = scroll(send(image.getBytes(), null), index, image);
+        } else {
+            shownAt = send(image.getBytes(), () -> scrollSlots[index] = image);
+        }
+        frameShown(shownAt);
+        return shownAt;
+    }
+
+    /**
+     * @return The simulated time at which the scroll will be finished
+     */
+    public long scrollNow() {
+        long received = send(0, null);
+        long doneAt = scroll(received, -1, null);
+        frameShown(doneAt);
+        return doneAt;
+    }
+
+    public void clear(int index) {
+        checkLine(index);
+        send(0, () -> scrollSlots[index] = null);
+    }
+
+    /**
+     * @param index Screen line, 0 being the bottom of the screen
+     * @return The image the glasses show in that line right now, or null
+     */
+    public SimImage getScrollLine(int index) {
+        checkLine(index);
+        return scrollSlots[index];
+    }
+
+    // ---- Acknowledgements and taps ----
+
+    /**
+     * @param callback Runs on the phone once the glasses have processed everything sent before
+     */
+    public void requestAcknowledgement(Runnable callback) {
+        long processedAt = send(0, null);
+        reply(processedAt, callback);
+    }
+
+    /**
+     * The user taps the glasses right now.
+     */
+    public void tap(int tapCount) {
+        schedule(now, () -> {
+            if (glassesControlled) {
+                reply(now, () -> {
+                    for (EventListener listener : new ArrayList<>(listeners)) {
+                        listener.onTap(tapCount);
+                    }
+                });
+            }
+        });
+    }
+
+    // ---- Statistics ----
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public int getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * @return How many commands the glasses ignored because we did not have control
+     */
+    public int getMessagesDropped() {
+        return messagesDropped;
+    }
+
+    /**
+     * @return For every commit and scroll, the time in microseconds from sending its first
+     *         command to it showing on the screen. Commands the glasses had already processed
+     *         before the frame's first one, such as preloads, do not count.
+     */
+    public List<Long> getTimesToScreen() {
+        return timesToScreen;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @param visibleOnly Count only the text fields that are showing
+     * @return How many text fields the canvas on the glasses has right now
+     */
+    public int getTextCount(boolean visibleOnly) {
+        return count(glassesTexts, visibleOnly);
+    }
+
+    /**
+     * @param visibleOnly Count only the images and animations that are showing
+     * @return How many images and animations the canvas on the glasses has right now
+     */
+    public int getImageCount(boolean visibleOnly) {
+        return count(glassesImages, visibleOnly);
+    }
+
+    // ---- The model ----
+
+    private long send(long payloadBytes, Runnable effect) {
+        return send(payloadBytes, false, effect);
+    }
+
+    /**
+     * Puts one message on the link.
+     *
+     * @return The simulated time at which the glasses have finished processing it
+     */
+    private long send(long payloadBytes, boolean ignoresControl, Runnable effect) {
+        long bytes = COMMAND_OVERHEAD_BYTES + payloadBytes;
+        bytesSent += bytes;
+        messagesSent++;
+        // A frame starts with its first command, unless the glasses had already finished the
+        // ones before it, such as a preload sent long before
+        if (frameStartedAt < 0 || glassesFreeAt <= now) {
+            frameStartedAt = now;
+        }
+
+        // The link sends one message at a time, then the glasses process one at a time
+        long sendStart = Math.max(now, linkFreeAt);
+        linkFreeAt = sendStart + link.transferMicros(bytes);
+        long arrival = linkFreeAt + link.latencyMicros;
+        long processStart = Math.max(arrival, glassesFreeAt);
+        glassesFreeAt = processStart + link.processingMicros(payloadBytes);
+
+        schedule(glassesFreeAt, () -> {
+            if (!ignoresControl && !glassesControlled) {
+                messagesDropped++;
+                return;
+            }
+            if (effect != null) {
+                effect.run();
+            }
+        });
+        return glassesFreeAt;
+    }
+
+    // Scrolls one line when the glasses get to it, after any scroll already running. The image, if
+    // any, goes into its line once the scroll is done.
+    private long scroll(long startAt, int index, SimImage image) {
+        long start = Math.max(startAt, scrollFreeAt);
+        scrollFreeAt = start + scrollMs * 1000L;
+        schedule(scrollFreeAt, () -> {
+            if (!glassesControlled) {
+                return;
+            }
+            // Every showing line moves up one, and the top one scrolls off the screen
+            int top = scrollLowestLine + scrollLinesShowing - 1;
+            System.arraycopy(scrollSlots, scrollLowestLine, scrollSlots, scrollLowestLine + 1, top - scrollLowestLine);
+            scrollSlots[scrollLowestLine] = null;
+            if (image != null) {
+                scrollSlots[index] = image;
+            }
+            boolean empty = true;
+            for (SimImage slot : scrollSlots) {
+                empty &= slot == null;
+            }
+            boolean screenEmpty = empty;
+            reply(now, () -> {
+                for (EventListener listener : new ArrayList<>(listeners)) {
+                    listener.onScrolled(screenEmpty);
+                }
+            });
+        });
+        return scrollFreeAt;
+    }
+
+    private void setControlled(boolean controlled) {
+        // The glasses apply the change now, and the phone hears about it one latency later
+        glassesControlled = controlled;
+        reply(now, () -> {
+            controlledByMe = controlled;
+            for (EventListener listener : new ArrayList<>(listeners)) {
+                listener.onControlChanged(controlled);
+            }
+        });
+    }
+
+    private void frameShown(long shownAt) {
+        timesToScreen.add(shownAt - frameStartedAt);
+        frameStartedAt = -1;
+    }
+
+    // Sends a callback or event back to the phone
+    private void reply(long fromGlassesAt, Runnable onPhone) {
+        schedule(fromGlassesAt + link.latencyMicros, onPhone);
+    }
+
+    private void schedule(long time, Runnable action) {
+        events.add(new Event(time, eventSequence++, action));
+    }
+
+    private void runNext() {
+        Event event = events.poll();
+        now = Math.max(now, event.time);
+        event.action.run();
+    }
+
+    private static void setVisible(Boolean[] elements, int id, boolean visible) {
+        if (elements[id] != null) {
+            elements[id] = visible;
+        }
+    }
+
+    private static int count(Boolean[] elements, boolean visibleOnly) {
+        int count = 0;
+        for (Boolean visible : elements) {
+            if (visible != null && (visible || !visibleOnly)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void checkLine(int index) {
+        if (index < 0 || index >= SCREEN_LINES) {
+            throw new IllegalArgumentException("Screen line out of range: " + index);
+        }
+    }
+
+    private static int claim(boolean[] slots) {
+        for (int i = 0; i < slots.length; i++) {
+            if (!slots[i]) {
+                slots[i] = true;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Event implements Comparable<Event> {
+        final long time;
+        // Keeps events at the same time in the order they were scheduled
+        final long sequence;
+        final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.vuzix.ultralite.sample.sim;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the demo scenarios and checks what they leave on the screen, on top of the budgets the
+ * benchmark reports.
+ */
+public class ScenariosTest {
+
+    @Test
+    public void everyScenarioStaysInBudgetOnTheTypicalLink() {
+        for (Scenario scenario : Scenarios.all()) {
+            GlassesBenchmark.Result result = GlassesBenchmark.run(scenario, LinkProfile.TYPICAL);
+            assertTrue(scenario.getName() + " took " + result.worstMs + " ms",
+                    result.worstMs <= scenario.getBudgetMs());
+            assertEquals(scenario.getName(), 0, result.dropped);
+            assertTrue(scenario.getName() + " showed nothing", result.frames > 0);
+        }
+    }
+
+    @Test
+    public void scenariosAreRepeatable() {
+        for (Scenario scenario : Scenarios.all()) {
+            GlassesBenchmark.Result first = GlassesBenchmark.run(scenario, LinkProfile.POOR);
+            GlassesBenchmark.Result second = GlassesBenchmark.run(scenario, LinkProfile.POOR);
+            assertEquals(scenario.getName(), first.bytes, second.bytes);
+            assertEquals(scenario.getName(), first.worstMs, second.worstMs, 0);
+        }
+    }
+
+    @Test
+    public void canvasScenariosRemoveWhatTheyCreate() {
+        for (String name : new String[]{"canvas-text", "canvas-images", "canvas-background", "canvas-streaming", "tap-input"}) {
+            SimulatedGlasses glasses = run(name);
+            assertEquals(name, 0, glasses.getTextCount(false));
+            assertEquals(name, 0, glasses.getImageCount(false));
+        }
+    }
+
+    @Test
+    public void nativeScrollEndsWithTheTopLineCleared() {
+        SimulatedGlasses glasses = run("scroll-native");
+        // The last scroll moved the lines up and left the bottom empty, then the top was cleared
+        assertNull(glasses.getScrollLine(Scenarios.NATIVE_LOWEST_LINE));
+        assertNotNull(glasses.getScrollLine(Scenarios.NATIVE_LOWEST_LINE + 1));
+        assertNull(glasses.getScrollLine(Scenarios.NATIVE_LOWEST_LINE + Scenarios.NATIVE_LINES_SHOWING - 1));
+    }
+
+    @Test
+    public void scrollScenariosFillTheirShowingLines() {
+        SimulatedGlasses autoScroller = run("scroll-autoscroller");
+        for (int i = 0; i < Scenarios.AUTO_SCROLLER_LINES_SHOWING; i++) {
+            assertNotNull("line " + i, autoScroller.getScrollLine(Scenarios.AUTO_SCROLLER_LOWEST_LINE + i));
+        }
+
+        SimulatedGlasses liveText = run("scroll-live-text");
+        assertNull("the line below the captions stays empty", liveText.getScrollLine(0));
+        for (int i = 0; i < Scenarios.LIVE_TEXT_LINES_SHOWING; i++) {
+            assertNotNull("line " + i, liveText.getScrollLine(Scenarios.LIVE_TEXT_LOWEST_LINE + i));
+        }
+        assertNull(liveText.getScrollLine(Scenarios.LIVE_TEXT_LOWEST_LINE + Scenarios.LIVE_TEXT_LINES_SHOWING));
+    }
+
+    @Test
+    public void formIsSentAsStampedTiles() {
+        SimulatedGlasses glasses = new SimulatedGlasses(LinkProfile.TYPICAL);
+        GlassesBenchmark.Result background = GlassesBenchmark.run(Scenarios.named("canvas-background"), glasses);
+        // The photo is a full screen image. The form after it costs far less than another one.
+        long fullScreen = new SimImage(Scenarios.WIDTH, Scenarios.HEIGHT, 2).getBytes();
+        assertTrue(background.bytes < 1.5 * fullScreen);
+    }
+
+    private static SimulatedGlasses run(String name) {
+        SimulatedGlasses glasses = new SimulatedGlasses(LinkProfile.TYPICAL);
+        GlassesBenchmark.run(Scenarios.named(name), glasses);
+        return glasses;
+    }
+}
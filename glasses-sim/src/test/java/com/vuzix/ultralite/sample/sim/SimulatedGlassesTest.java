@@ -0,0 +1,168 @@
+package com.vuzix.ultralite.sample.sim;
+
+import com.vuzix.ultralite.sample.lvgl.IndexedPacker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the simulated glasses keep the screen the way the SDK does.
+ */
+public class SimulatedGlassesTest {
+    private final SimImage first = new SimImage(640, 48, IndexedPacker.BPP_1);
+    private final SimImage second = new SimImage(640, 48, IndexedPacker.BPP_1);
+    private final SimImage third = new SimImage(640, 48, IndexedPacker.BPP_1);
+    private final List<Boolean> scrolls = new ArrayList<>();
+    private SimulatedGlasses glasses;
+
+    @Before
+    public void setUp() {
+        glasses = new SimulatedGlasses(LinkProfile.TYPICAL);
+        glasses.requestControl();
+        glasses.runUntilIdle();
+        glasses.addEventListener(new SimulatedGlasses.EventListener() {
+            @Override
+            public void onScrolled(boolean isScreenEmpty) {
+                scrolls.add(isScreenEmpty);
+            }
+        });
+        glasses.setLayout(SimulatedGlasses.Layout.SCROLL);
+    }
+
+    @Test
+    public void lineZeroIsTheBottomAndScrollingMovesLinesUp() {
+        glasses.scrollLayoutConfig(48, 0, 3, 100, false);
+        glasses.sendScrollImage(first, 0, false);
+        glasses.sendScrollImage(second, 0, true);
+        glasses.runUntilIdle();
+
+        assertSame(second, glasses.getScrollLine(0));
+        assertSame(first, glasses.getScrollLine(1));
+        assertNull(glasses.getScrollLine(2));
+    }
+
+    @Test
+    public void topLineScrollsOffTheShowingLines() {
+        glasses.scrollLayoutConfig(48, 0, 2, 100, false);
+        glasses.sendScrollImage(first, 0, false);
+        glasses.sendScrollImage(second, 0, true);
+        glasses.sendScrollImage(third, 0, true);
+        glasses.runUntilIdle();
+
+        assertSame(third, glasses.getScrollLine(0));
+        assertSame(second, glasses.getScrollLine(1));
+        assertNull(glasses.getScrollLine(2));
+    }
+
+    @Test
+    public void linesBelowTheLowestLineDoNotScroll() {
+        glasses.scrollLayoutConfig(48, 1, 3, 100, false);
+        glasses.sendScrollImage(first, 0, false);
+        glasses.sendScrollImage(second, 1, false);
+        glasses.scrollNow();
+        glasses.runUntilIdle();
+
+        assertSame(first, glasses.getScrollLine(0));
+        assertNull(glasses.getScrollLine(1));
+        assertSame(second, glasses.getScrollLine(2));
+    }
+
+    @Test
+    public void imageSentWithScrollFirstLandsAfterTheScroll() {
+        glasses.scrollLayoutConfig(48, 0, 1, 100, false);
+        glasses.sendScrollImage(first, 0, true);
+        glasses.runUntilIdle();
+
+        assertSame(first, glasses.getScrollLine(0));
+        assertEquals(1, scrolls.size());
+        assertFalse("the new line is showing", scrolls.get(0));
+    }
+
+    @Test
+    public void scrollingTheLastLineOffEmptiesTheScreen() {
+        glasses.scrollLayoutConfig(48, 0, 1, 100, false);
+        glasses.sendScrollImage(first, 0, false);
+        glasses.scrollNow();
+        glasses.runUntilIdle();
+
+        assertNull(glasses.getScrollLine(0));
+        assertEquals(1, scrolls.size());
+        assertTrue(scrolls.get(0));
+    }
+
+    @Test
+    public void scrollTakesItsAnimationTime() {
+        glasses.scrollLayoutConfig(48, 0, 3, 500, false);
+        glasses.runUntilIdle();
+        long start = glasses.now();
+        long doneAt = glasses.scrollNow();
+
+        assertTrue(doneAt - start >= 500_000);
+    }
+
+    @Test
+    public void clearEmptiesOneLine() {
+        glasses.scrollLayoutConfig(48, 0, 3, 100, false);
+        glasses.sendScrollImage(first, 0, false);
+        glasses.sendScrollImage(second, 1, false);
+        glasses.clear(1);
+        glasses.runUntilIdle();
+
+        assertSame(first, glasses.getScrollLine(0));
+        assertNull(glasses.getScrollLine(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void showingLinesMustFitTheScreen() {
+        glasses.scrollLayoutConfig(48, 8, 3, 100, false);
+    }
+
+    @Test
+    public void commandsWithoutControlAreDropped() {
+        glasses.scrollLayoutConfig(48, 0, 3, 100, false);
+        glasses.runUntilIdle();
+        glasses.otherAppTakesControl();
+        glasses.runUntilIdle();
+        glasses.sendScrollImage(first, 0, false);
+        glasses.runUntilIdle();
+
+        assertNull(glasses.getScrollLine(0));
+        assertEquals(1, glasses.getMessagesDropped());
+    }
+
+    @Test
+    public void canvasTracksElementsAndVisibility() {
+        glasses.setLayout(SimulatedGlasses.Layout.CANVAS);
+        int text = glasses.createText("Hello", true);
+        int image = glasses.createImage(new SimImage(30, 30, IndexedPacker.BPP_1));
+        glasses.setImageVisible(image, false);
+        glasses.runUntilIdle();
+        assertEquals(1, glasses.getTextCount(true));
+        assertEquals(1, glasses.getImageCount(false));
+        assertEquals(0, glasses.getImageCount(true));
+
+        glasses.removeText(text);
+        glasses.removeImage(image);
+        glasses.runUntilIdle();
+        assertEquals(0, glasses.getTextCount(false));
+        assertEquals(0, glasses.getImageCount(false));
+    }
+
+    @Test
+    public void canvasHasSevenTextFields() {
+        glasses.setLayout(SimulatedGlasses.Layout.CANVAS);
+        for (int i = 0; i < SimulatedGlasses.MAX_TEXTS; i++) {
+            assertEquals(i, glasses.createText("Text " + i, true));
+        }
+        assertEquals(-1, glasses.createText("One too many", true));
+    }
+}
@@ -0,0 +1,18 @@
+plugins {
+    `java-library`
+    id("me.champeau.jmh")
+}
+
+java {
+    // The app compiles for Java 8, so this module must too
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+}
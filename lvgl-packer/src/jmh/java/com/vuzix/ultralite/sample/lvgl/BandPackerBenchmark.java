@@ -0,0 +1,65 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures packing a picture into a full-screen 2-bit image from bands of rows, as a region
+ * decoder hands them over. A source of 640x480 is packed as it is, larger ones are averaged down.
+ *
+ * The bands are copies of one buffer here, since decoding is not part of what we measure. Run it
+ * with -prof gc to see that the allocation per image is the packed output and nothing else.
+ *
+ * Run it with ./gradlew :lvgl-packer:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BandPackerBenchmark {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int BAND_ROWS = 64;
+
+    @Param({"640", "1000", "1280"})
+    public int sourceWidth;
+
+    private int sourceHeight;
+    private int[] band;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sourceHeight = sourceWidth * HEIGHT / WIDTH;
+        band = new int[sourceWidth * BAND_ROWS];
+        Random random = new Random(5);
+        for (int i = 0; i < band.length; i++) {
+            int gray = random.nextInt(256);
+            band[i] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+        }
+    }
+
+    @Benchmark
+    public byte[] banded() {
+        byte[] packed = new byte[IndexedPacker.packedSize(WIDTH, HEIGHT, IndexedPacker.BPP_2)];
+        BandPacker packer = new BandPacker(sourceWidth, sourceHeight, WIDTH, HEIGHT, IndexedPacker.BPP_2, packed, 0);
+        for (int top = 0; top < sourceHeight; top += BAND_ROWS) {
+            packer.push(band, 0, sourceWidth, Math.min(BAND_ROWS, sourceHeight - top));
+        }
+        return packed;
+    }
+}
@@ -0,0 +1,82 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures dithering plus packing of a full-screen 640x480 frame, on one core and split into bands
+ * across all of them.
+ *
+ * Run it with ./gradlew :lvgl-packer:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DithererBenchmark {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Param({"NONE", "ORDERED", "FLOYD_STEINBERG"})
+    public Ditherer.Mode mode;
+
+    @Param({"1", "2"})
+    public int bitsPerPixel;
+
+    private Ditherer ditherer;
+    private int[] argb;
+    private byte[] levels;
+    private byte[] out;
+    private int cores;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ditherer = new Ditherer(mode, bitsPerPixel);
+        argb = photoLikeFrame();
+        levels = new byte[WIDTH * HEIGHT];
+        out = new byte[IndexedPacker.packedSize(WIDTH, HEIGHT, bitsPerPixel)];
+        cores = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Benchmark
+    public int singleCore() {
+        ditherer.dither(argb, 0, WIDTH, WIDTH, HEIGHT, levels);
+        return IndexedPacker.packLevels(levels, WIDTH, HEIGHT, bitsPerPixel, out, 0);
+    }
+
+    @Benchmark
+    public int banded() {
+        ditherer.dither(argb, 0, WIDTH, WIDTH, HEIGHT, levels, ForkJoinPool.commonPool(), cores);
+        return IndexedPacker.packLevels(levels, WIDTH, HEIGHT, bitsPerPixel, out, 0);
+    }
+
+    // Soft shading with some noise, the worst case for flat rounding
+    private static int[] photoLikeFrame() {
+        Random random = new Random(7);
+        int[] argb = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double shade = 0.5 + 0.5 * Math.sin(x / 60.0) * Math.cos(y / 45.0);
+                int gray = Math.max(0, Math.min(255, (int) (shade * 255) + random.nextInt(9) - 4));
+                argb[y * WIDTH + x] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+            }
+        }
+        return argb;
+    }
+}
@@ -0,0 +1,118 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link IndexedPacker} on icon-sized and full-screen images, next to a straightforward
+ * pixel-by-pixel packer as the baseline.
+ *
+ * Run it with ./gradlew :lvgl-packer:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexedPackerBenchmark {
+
+    // An icon, and the full 640x480 screen of the glasses
+    @Param({"48x48", "640x480"})
+    public String size;
+
+    @Param({"1", "2"})
+    public int bitsPerPixel;
+
+    private int width;
+    private int height;
+    private int[] argb;
+    private byte[] out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        argb = cameraLikeFrame(width, height);
+        out = new byte[IndexedPacker.packedSize(width, height, bitsPerPixel)];
+
+        // A fast packer is no use if it packs differently
+        byte[] expected = new byte[out.length];
+        packPixelByPixel(argb, width, height, bitsPerPixel, expected);
+        IndexedPacker.pack(argb, width, height, bitsPerPixel, out);
+        if (!Arrays.equals(expected, out)) {
+            throw new IllegalStateException("IndexedPacker output differs from the reference");
+        }
+    }
+
+    @Benchmark
+    public int pack() {
+        return IndexedPacker.pack(argb, width, height, bitsPerPixel, out);
+    }
+
+    @Benchmark
+    public int packPixelByPixel() {
+        return packPixelByPixel(argb, width, height, bitsPerPixel, out);
+    }
+
+    // The obvious way to do it: one pixel at a time, setting bits in place
+    private static int packPixelByPixel(int[] argb, int width, int height, int bitsPerPixel, byte[] out) {
+        int size = IndexedPacker.packedSize(width, height, bitsPerPixel);
+        Arrays.fill(out, 0, size, (byte) 0);
+        int colors = 1 << bitsPerPixel;
+        for (int i = 0; i < colors; i++) {
+            int gray = i * 255 / (colors - 1);
+            out[i * 4] = (byte) gray;
+            out[i * 4 + 1] = (byte) gray;
+            out[i * 4 + 2] = (byte) gray;
+            out[i * 4 + 3] = (byte) 0xFF;
+        }
+        int rowBytes = IndexedPacker.rowBytes(width, bitsPerPixel);
+        int start = IndexedPacker.paletteSize(bitsPerPixel);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int level = IndexedPacker.level(argb[y * width + x], bitsPerPixel);
+                int bit = x * bitsPerPixel;
+                int shift = 8 - bitsPerPixel - (bit & 7);
+                out[start + y * rowBytes + (bit >> 3)] |= (byte) (level << shift);
+            }
+        }
+        return size;
+    }
+
+    // Smooth gradients with sensor noise, and a few transparent pixels
+    private static int[] cameraLikeFrame(int width, int height) {
+        Random random = new Random(42);
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(33) - 16;
+                int red = clamp(x * 255 / width + noise);
+                int green = clamp(y * 255 / height + noise);
+                int blue = clamp((x + y) * 255 / (width + height) + noise);
+                int alpha = random.nextInt(100) == 0 ? random.nextInt(256) : 0xFF;
+                argb[y * width + x] = alpha << 24 | red << 16 | green << 8 | blue;
+            }
+        }
+        return argb;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
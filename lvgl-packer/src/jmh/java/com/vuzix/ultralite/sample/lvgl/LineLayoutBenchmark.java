@@ -0,0 +1,99 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures breaking a long script into 640 pixel lines from scratch, against editing one word in
+ * the middle of it and appending to its end.
+ *
+ * The measurer is a fixed width per character instead of a real font, so this measures the layout
+ * and not the font engine. With a real Paint the full layout is far slower, since every word is
+ * measured once, while the edits stay the same.
+ *
+ * Run it with ./gradlew :lvgl-packer:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineLayoutBenchmark {
+    private static final float WIDTH = 640;
+    private static final String[] WORDS = {
+            "the", "glasses", "show", "each", "line", "of", "text", "while", "presenter", "reads",
+            "aloud", "and", "teleprompter", "scrolls", "smoothly", "across", "screen", "a", "to", "in"
+    };
+    // A narrow font is about 18 pixels per character at 35 pixels
+    private static final LineLayout.Measurer MEASURER = (text, start, end) -> {
+        float width = 0;
+        for (int i = start; i < end; i++) {
+            width += text.charAt(i) == ' ' ? 9 : 16 + (text.charAt(i) & 3);
+        }
+        return width;
+    };
+
+    @Param({"10000", "50000"})
+    public int words;
+
+    private String script;
+    private LineLayout layout;
+    private int middle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        script = script(words);
+        layout = new LineLayout(MEASURER, WIDTH);
+        layout.setText(script);
+        // The start of a word in the middle of the script
+        middle = script.indexOf(' ', script.length() / 2) + 1;
+    }
+
+    @Benchmark
+    public int fullLayout() {
+        LineLayout fresh = new LineLayout(MEASURER, WIDTH);
+        fresh.setText(script);
+        return fresh.getLineCount();
+    }
+
+    @Benchmark
+    public int editMiddle() {
+        // Lengthen a word and put it back, so every call starts from the same text
+        layout.replace(middle, middle, "re");
+        layout.delete(middle, middle + 2);
+        return layout.getLineCount();
+    }
+
+    @Benchmark
+    public int appendAndUndo() {
+        int end = layout.length();
+        layout.append(" appended");
+        layout.delete(end, layout.length());
+        return layout.getLineCount();
+    }
+
+    // Sentences in paragraphs of about a hundred words, like a real script
+    private static String script(int words) {
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(i % 100 == 99 ? "\n" : (i % 12 == 11 ? ". " : " "));
+        }
+        return text.toString();
+    }
+}
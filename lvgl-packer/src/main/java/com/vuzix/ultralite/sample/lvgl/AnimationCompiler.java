@@ -0,0 +1,122 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+/**
+ * This class finds the part of an animation that actually changes.
+ *
+ * An animation is uploaded as complete frames, so a face that only blinks sends the whole face
+ * once per frame. Comparing the frames as the glasses will show them gives the smallest box that
+ * holds every difference. The first frame can then be sent once as a still image, and only that box
+ * needs to be animated on top of it. The more frames, the bigger the saving.
+ */
+public final class AnimationCompiler {
+
+    /**
+     * Where the frames differ.
+     */
+    public static final class Plan {
+        public final int width;
+        public final int height;
+        public final int frameCount;
+        public final int bitsPerPixel;
+        // The box holding every change, within the frames
+        public final int left;
+        public final int top;
+        public final int changeWidth;
+        public final int changeHeight;
+        // False if every frame looks the same, in which case the box is a single pixel
+        public final boolean changes;
+
+        Plan(int width, int height, int frameCount, int bitsPerPixel, int left, int top,
+             int changeWidth, int changeHeight, boolean changes) {
+            this.width = width;
+            this.height = height;
+            this.frameCount = frameCount;
+            this.bitsPerPixel = bitsPerPixel;
+            this.left = left;
+            this.top = top;
+            this.changeWidth = changeWidth;
+            this.changeHeight = changeHeight;
+            this.changes = changes;
+        }
+
+        /**
+         * @return What sending every full frame costs
+         */
+        public long getFullBytes() {
+            return (long) frameCount * IndexedPacker.packedSize(width, height, bitsPerPixel);
+        }
+
+        /**
+         * @return What sending the first frame once plus the changing box of every frame costs
+         */
+        public long getCompiledBytes() {
+            return IndexedPacker.packedSize(width, height, bitsPerPixel)
+                    + (long) frameCount * IndexedPacker.packedSize(changeWidth, changeHeight, bitsPerPixel);
+        }
+
+        @Override
+        public String toString() {
+            return frameCount + " frames " + width + "x" + height + ", changes in " + changeWidth + "x"
+                    + changeHeight + "+" + left + "+" + top + ", " + getFullBytes() + " -> "
+                    + getCompiledBytes() + " bytes";
+        }
+    }
+
+    private AnimationCompiler() {
+    }
+
+    /**
+     * @param frames The ARGB pixels of each frame, all the same size
+     * @param width Width of every frame
+     * @param height Height of every frame
+     * @param bitsPerPixel The format the frames will be sent in. Pixels that look the same in it
+     *                     count as unchanged.
+     */
+    public static Plan compile(int[][] frames, int width, int height, int bitsPerPixel) {
+        if (frames.length == 0) {
+            throw new IllegalArgumentException("No frames");
+        }
+        int size = width * height;
+        for (int[] frame : frames) {
+            if (frame.length < size) {
+                throw new IllegalArgumentException("Frame smaller than " + width + "x" + height);
+            }
+        }
+
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        int[] first = frames[0];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = first[row + x];
+                int level = -1;
+                for (int f = 1; f < frames.length; f++) {
+                    int other = frames[f][row + x];
+                    // Identical pixels are by far the most common, so skip the conversion for them
+                    if (other == pixel) {
+                        continue;
+                    }
+                    if (level < 0) {
+                        level = IndexedPacker.level(pixel, bitsPerPixel);
+                    }
+                    if (IndexedPacker.level(other, bitsPerPixel) != level) {
+                        minX = Math.min(minX, x);
+                        maxX = Math.max(maxX, x);
+                        minY = Math.min(minY, y);
+                        maxY = y;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (maxX < 0) {
+            return new Plan(width, height, frames.length, bitsPerPixel, 0, 0, 1, 1, false);
+        }
+        return new Plan(width, height, frames.length, bitsPerPixel, minX, minY,
+                maxX - minX + 1, maxY - minY + 1, true);
+    }
+}
@@ -0,0 +1,180 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import java.util.Arrays;
+
+/**
+ * This class packs an image that arrives a few rows at a time, scaling it to the target size on
+ * the way.
+ *
+ * Converting a large picture usually means decoding all of it into one ARGB buffer, scaling that
+ * into a second one, and only then packing it. For a full-screen image that is several megabytes
+ * of short-lived memory. Here the caller decodes a band of source rows at a time, for example with
+ * a region decoder, and pushes it. Every target row is written into the packed output as soon as
+ * its last source row arrives, so besides the output we only keep one row of sums.
+ *
+ * Shrinking averages every source pixel under a target pixel (a box filter). Growing repeats the
+ * nearest source pixels. Gray levels are rounded the same way as {@link IndexedPacker#pack}.
+ *
+ * An instance packs one image. It is not thread safe.
+ */
+public final class BandPacker {
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final int bitsPerPixel;
+    private final byte[] out;
+    // Where the first row goes in out
+    private final int rowsOffset;
+    private final int rowBytes;
+
+    // The source columns under each target column
+    private final int[] columnStart;
+    private final int[] columnEnd;
+    // Alpha, red, green and blue sums of every target column of the row being built
+    private final int[] sums;
+    // The finished target row, as ARGB
+    private final int[] row;
+    private int sumRows;
+
+    private int sourceRow;
+    private int targetRow;
+
+    /**
+     * @param out Receives the packed image, palette included. It needs
+     *            {@link IndexedPacker#packedSize} bytes from outOffset on.
+     */
+    public BandPacker(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight,
+                      int bitsPerPixel, byte[] out, int outOffset) {
+        if (sourceWidth <= 0 || sourceHeight <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("Image sizes must be positive");
+        }
+        int size = IndexedPacker.packedSize(targetWidth, targetHeight, bitsPerPixel);
+        if (outOffset + size > out.length) {
+            throw new IllegalArgumentException("Output buffer needs " + (outOffset + size) + " bytes");
+        }
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.bitsPerPixel = bitsPerPixel;
+        this.out = out;
+        this.rowsOffset = IndexedPacker.writePalette(bitsPerPixel, out, outOffset);
+        this.rowBytes = IndexedPacker.rowBytes(targetWidth, bitsPerPixel);
+
+        columnStart = new int[targetWidth];
+        columnEnd = new int[targetWidth];
+        for (int x = 0; x < targetWidth; x++) {
+            columnStart[x] = start(x, sourceWidth, targetWidth);
+            columnEnd[x] = end(x, sourceWidth, targetWidth);
+        }
+        sums = new int[targetWidth * 4];
+        row = new int[targetWidth];
+    }
+
+    /**
+     * Packs the next rows of the source.
+     *
+     * @param argb The source pixels, {@link #getSourceWidth()} of them per row
+     * @param offset Index of the first pixel of the first row
+     * @param stride Distance between the starts of two rows
+     * @param rows How many rows to take
+     */
+    public void push(int[] argb, int offset, int stride, int rows) {
+        if (sourceRow + rows > sourceHeight) {
+            throw new IllegalStateException("Only " + (sourceHeight - sourceRow) + " source rows left");
+        }
+        if (rows > 0 && offset + (rows - 1) * stride + sourceWidth > argb.length) {
+            throw new IllegalArgumentException("Source buffer too small for " + rows + " rows");
+        }
+        if (sourceWidth == targetWidth && sourceHeight == targetHeight) {
+            // Nothing to scale, so the rows go straight into the output
+            IndexedPacker.packRows(argb, offset, stride, targetWidth, rows, bitsPerPixel,
+                    out, rowsOffset + targetRow * rowBytes);
+            sourceRow += rows;
+            targetRow += rows;
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            int src = offset + r * stride;
+            // When growing, one source row can be all of several target rows
+            while (targetRow < targetHeight && start(targetRow, sourceHeight, targetHeight) <= sourceRow) {
+                accumulate(argb, src);
+                if (sourceRow < end(targetRow, sourceHeight, targetHeight) - 1) {
+                    break;
+                }
+                writeRow();
+            }
+            sourceRow++;
+        }
+    }
+
+    /**
+     * @return True once every row of the target is packed
+     */
+    public boolean isDone() {
+        return targetRow == targetHeight;
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /**
+     * @return The next source row {@link #push} expects
+     */
+    public int getSourceRow() {
+        return sourceRow;
+    }
+
+    private void accumulate(int[] argb, int src) {
+        for (int x = 0, s = 0; x < targetWidth; x++, s += 4) {
+            int alpha = 0;
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int i = src + columnStart[x], end = src + columnEnd[x]; i < end; i++) {
+                int pixel = argb[i];
+                alpha += pixel >>> 24;
+                red += (pixel >> 16) & 0xFF;
+                green += (pixel >> 8) & 0xFF;
+                blue += pixel & 0xFF;
+            }
+            sums[s] += alpha;
+            sums[s + 1] += red;
+            sums[s + 2] += green;
+            sums[s + 3] += blue;
+        }
+        sumRows++;
+    }
+
+    private void writeRow() {
+        for (int x = 0, s = 0; x < targetWidth; x++, s += 4) {
+            int count = sumRows * (columnEnd[x] - columnStart[x]);
+            int half = count / 2;
+            row[x] = (sums[s] + half) / count << 24
+                    | (sums[s + 1] + half) / count << 16
+                    | (sums[s + 2] + half) / count << 8
+                    | (sums[s + 3] + half) / count;
+        }
+        IndexedPacker.packRows(row, 0, targetWidth, targetWidth, 1, bitsPerPixel,
+                out, rowsOffset + targetRow * rowBytes);
+        Arrays.fill(sums, 0);
+        sumRows = 0;
+        targetRow++;
+    }
+
+    // The first source pixel under target pixel t
+    private static int start(int t, int source, int target) {
+        return (int) ((long) t * source / target);
+    }
+
+    // One past the last source pixel under target pixel t, and at least one pixel when growing
+    private static int end(int t, int source, int target) {
+        return Math.max(start(t, source, target) + 1, (int) ((long) (t + 1) * source / target));
+    }
+}
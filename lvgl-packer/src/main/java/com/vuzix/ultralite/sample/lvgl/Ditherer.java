@@ -0,0 +1,247 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * This class reduces ARGB pixels to the gray levels of the 1-bit and 2-bit LVGL palettes, with
+ * dithering so photos keep their detail.
+ *
+ * Rounding every pixel to the nearest of four grays turns smooth shading into flat bands. Two
+ * dithering modes spread the rounding error instead:
+ * <ul>
+ *     <li>{@link Mode#ORDERED} adds a fixed 8x8 Bayer pattern before rounding. Each pixel is
+ *     independent, so it is the fastest, and a still area of a video frame stays still.</li>
+ *     <li>{@link Mode#FLOYD_STEINBERG} pushes each pixel's error onto its unvisited neighbors.
+ *     It looks best on photos, but every pixel depends on the ones before it.</li>
+ * </ul>
+ *
+ * The output is one level per pixel, ready for {@link IndexedPacker#packLevels}. Everything runs
+ * row by row on primitive arrays, and the error rows are kept between calls, so a frame allocates
+ * nothing per pixel.
+ *
+ * Large frames can be split into horizontal bands that are dithered on several cores. Ordered
+ * dithering gives the same result either way. With Floyd-Steinberg each band starts without error
+ * from the band above, which is not visible at the band heights we use.
+ *
+ * An instance is not thread safe; use one per conversion thread.
+ */
+public final class Ditherer {
+
+    public enum Mode {
+        // Round each pixel to the nearest level
+        NONE,
+        // 8x8 Bayer threshold matrix
+        ORDERED,
+        // Error diffusion with serpentine scanning
+        FLOYD_STEINBERG
+    }
+
+    // Bands smaller than this are not worth handing to another core
+    private static final int MIN_BAND_ROWS = 32;
+
+    // Values 0..63, each appearing once
+    private static final int[] BAYER_8X8 = {
+             0, 32,  8, 40,  2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44,  4, 36, 14, 46,  6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+             3, 35, 11, 43,  1, 33,  9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47,  7, 39, 13, 45,  5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    private final Mode mode;
+    private final int bitsPerPixel;
+    private final int maxLevel;
+    // Bayer offsets already scaled to the distance between two levels, in luma units
+    private final int[] orderedOffsets = new int[BAYER_8X8.length];
+
+    // Floyd-Steinberg error for the current and next row of every band, in 1/16 luma units. Two
+    // extra entries let the edge pixels spill over without bounds checks.
+    private int[][] errors = new int[0][];
+
+    /**
+     * @param mode How to spread the rounding error
+     * @param bitsPerPixel {@link IndexedPacker#BPP_1} or {@link IndexedPacker#BPP_2}
+     */
+    public Ditherer(Mode mode, int bitsPerPixel) {
+        if (bitsPerPixel != IndexedPacker.BPP_1 && bitsPerPixel != IndexedPacker.BPP_2) {
+            throw new IllegalArgumentException("Unsupported bits per pixel: " + bitsPerPixel);
+        }
+        this.mode = mode;
+        this.bitsPerPixel = bitsPerPixel;
+        this.maxLevel = (1 << bitsPerPixel) - 1;
+        int step = 255 / maxLevel;
+        for (int i = 0; i < BAYER_8X8.length; i++) {
+            // Centered on 0, spanning one step between levels
+            orderedOffsets[i] = (2 * BAYER_8X8[i] - 63) * step / 128;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    /**
+     * Dithers a rectangle of pixels on the calling thread.
+     *
+     * @param argb The source pixels
+     * @param offset Index of the top left pixel
+     * @param stride Distance between the starts of two rows in the source
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @param levels Receives one level per pixel, rows following each other without gaps
+     */
+    public void dither(int[] argb, int offset, int stride, int width, int height, byte[] levels) {
+        check(argb, offset, stride, width, height, levels);
+        ensureErrorRows(1, width);
+        ditherBand(argb, offset, stride, width, 0, height, levels, 0);
+    }
+
+    /**
+     * Dithers a rectangle of pixels in horizontal bands on the given executor, and waits for all
+     * of them. The calling thread dithers the first band itself.
+     *
+     * @param bands How many bands to split into at most, for example the number of cores
+     * @see #dither(int[], int, int, int, int, byte[])
+     */
+    public void dither(int[] argb, int offset, int stride, int width, int height, byte[] levels,
+                       Executor executor, int bands) {
+        check(argb, offset, stride, width, height, levels);
+        bands = Math.max(1, Math.min(bands, height / MIN_BAND_ROWS));
+        ensureErrorRows(bands, width);
+        if (bands == 1) {
+            ditherBand(argb, offset, stride, width, 0, height, levels, 0);
+            return;
+        }
+
+        int rowsPerBand = (height + bands - 1) / bands;
+        CompletableFuture<?>[] others = new CompletableFuture<?>[bands - 1];
+        for (int band = 1; band < bands; band++) {
+            int top = band * rowsPerBand;
+            int bottom = Math.min(height, top + rowsPerBand);
+            int scratch = band;
+            others[band - 1] = CompletableFuture.runAsync(() ->
+                    ditherBand(argb, offset, stride, width, top, bottom, levels, scratch), executor);
+        }
+        ditherBand(argb, offset, stride, width, 0, Math.min(height, rowsPerBand), levels, 0);
+        CompletableFuture.allOf(others).join();
+    }
+
+    private void ditherBand(int[] argb, int offset, int stride, int width, int top, int bottom,
+                            byte[] levels, int scratch) {
+        switch (mode) {
+            case ORDERED:
+                for (int y = top; y < bottom; y++) {
+                    orderedRow(argb, offset + y * stride, width, y, levels, y * width);
+                }
+                break;
+            case FLOYD_STEINBERG:
+                int[] current = errors[scratch * 2];
+                int[] next = errors[scratch * 2 + 1];
+                Arrays.fill(current, 0, width + 2, 0);
+                for (int y = top; y < bottom; y++) {
+                    Arrays.fill(next, 0, width + 2, 0);
+                    // Alternate direction every row so the error does not pile up on one side
+                    if (((y - top) & 1) == 0) {
+                        diffuseRight(argb, offset + y * stride, width, levels, y * width, current, next);
+                    } else {
+                        diffuseLeft(argb, offset + y * stride, width, levels, y * width, current, next);
+                    }
+                    int[] swap = current;
+                    current = next;
+                    next = swap;
+                }
+                break;
+            default:
+                for (int y = top; y < bottom; y++) {
+                    nearestRow(argb, offset + y * stride, width, levels, y * width);
+                }
+                break;
+        }
+    }
+
+    private void nearestRow(int[] argb, int src, int width, byte[] levels, int dst) {
+        int maxLevel = this.maxLevel;
+        for (int x = 0; x < width; x++) {
+            levels[dst + x] = (byte) ((IndexedPacker.luma(argb[src + x]) * maxLevel + 127) / 255);
+        }
+    }
+
+    private void orderedRow(int[] argb, int src, int width, int y, byte[] levels, int dst) {
+        int maxLevel = this.maxLevel;
+        int[] offsets = orderedOffsets;
+        int row = (y & 7) << 3;
+        for (int x = 0; x < width; x++) {
+            int value = IndexedPacker.luma(argb[src + x]) + offsets[row + (x & 7)];
+            levels[dst + x] = (byte) clampLevel((value * maxLevel + 127) / 255);
+        }
+    }
+
+    // Error entry i + 1 belongs to pixel i, so the neighbors of the edge pixels are in bounds
+    private void diffuseRight(int[] argb, int src, int width, byte[] levels, int dst,
+                              int[] current, int[] next) {
+        int maxLevel = this.maxLevel;
+        for (int x = 0; x < width; x++) {
+            int value = IndexedPacker.luma(argb[src + x]) + (current[x + 1] + 8 >> 4);
+            int level = clampLevel((value * maxLevel + 127) / 255);
+            levels[dst + x] = (byte) level;
+            int error = value - level * 255 / maxLevel;
+            current[x + 2] += error * 7;
+            next[x] += error * 3;
+            next[x + 1] += error * 5;
+            next[x + 2] += error;
+        }
+    }
+
+    private void diffuseLeft(int[] argb, int src, int width, byte[] levels, int dst,
+                             int[] current, int[] next) {
+        int maxLevel = this.maxLevel;
+        for (int x = width - 1; x >= 0; x--) {
+            int value = IndexedPacker.luma(argb[src + x]) + (current[x + 1] + 8 >> 4);
+            int level = clampLevel((value * maxLevel + 127) / 255);
+            levels[dst + x] = (byte) level;
+            int error = value - level * 255 / maxLevel;
+            current[x] += error * 7;
+            next[x + 2] += error * 3;
+            next[x + 1] += error * 5;
+            next[x] += error;
+        }
+    }
+
+    private int clampLevel(int level) {
+        return level < 0 ? 0 : Math.min(level, maxLevel);
+    }
+
+    private void ensureErrorRows(int bands, int width) {
+        if (mode != Mode.FLOYD_STEINBERG) {
+            return;
+        }
+        if (errors.length < bands * 2 || errors[0].length < width + 2) {
+            int[][] rows = new int[bands * 2][];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new int[width + 2];
+            }
+            errors = rows;
+        }
+    }
+
+    private static void check(int[] argb, int offset, int stride, int width, int height, byte[] levels) {
+        if (stride < width) {
+            throw new IllegalArgumentException("stride " + stride + " is less than width " + width);
+        }
+        if (height > 0 && offset + (height - 1) * stride + width > argb.length) {
+            throw new IllegalArgumentException("Source buffer too small for " + width + "x" + height);
+        }
+        if (levels.length < width * height) {
+            throw new IllegalArgumentException("Level buffer too small for " + width + "x" + height);
+        }
+    }
+}
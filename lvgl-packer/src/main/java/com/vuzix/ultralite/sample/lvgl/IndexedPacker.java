@@ -0,0 +1,307 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class packs ARGB pixels into the LVGL indexed color formats the glasses use, without any
+ * Android classes.
+ *
+ * LVGLImage.fromBitmap needs an Android Bitmap, so the conversion cannot run or be measured on a
+ * plain JVM, and it allocates new buffers for every frame. This class works on plain int[] ARGB
+ * buffers, such as those from Bitmap.getPixels or a camera frame, and writes into a byte[] the
+ * caller owns. Nothing is allocated per call, so the same output buffer can be reused frame after
+ * frame.
+ *
+ * The packed layout is the LVGL one: a palette of 2^bpp entries of 4 bytes each (blue, green, red,
+ * alpha), followed by the rows. Each row starts on a byte boundary, and the first pixel of a byte
+ * is in its most significant bits. The palette is evenly spaced gray levels from black to white,
+ * which is all the glasses can show.
+ *
+ * Pixels are reduced to gray with integer Rec. 601 luma scaled by alpha, so transparent pixels
+ * come out black just as they do on the glasses. This is the rounding this app uses everywhere it
+ * quantizes by itself. The SDK does not say how fromBitmap rounds, and the two have not been
+ * compared on a device, so a pixel close to the middle between two grays may get the other level
+ * from fromBitmap. Pixels that already are palette grays come out the same either way.
+ */
+public final class IndexedPacker {
+    public static final int BPP_1 = 1;
+    public static final int BPP_2 = 2;
+
+    // Size of one palette entry
+    private static final int PALETTE_ENTRY_BYTES = 4;
+
+    // Gray level for every luma value, one table per bit depth
+    private static final byte[] LEVELS_1_BIT = levelTable(BPP_1);
+    private static final byte[] LEVELS_2_BIT = levelTable(BPP_2);
+    // ARGB color of every level, matching the palette we write
+    private static final int[] COLORS_1_BIT = colorTable(BPP_1);
+    private static final int[] COLORS_2_BIT = colorTable(BPP_2);
+
+    private IndexedPacker() {
+    }
+
+    /**
+     * @return The number of bytes {@link #pack} writes for an image of this size, palette included
+     */
+    public static int packedSize(int width, int height, int bitsPerPixel) {
+        checkBitsPerPixel(bitsPerPixel);
+        return paletteSize(bitsPerPixel) + rowBytes(width, bitsPerPixel) * height;
+    }
+
+    /**
+     * @return The number of bytes of the palette at the start of the packed image
+     */
+    public static int paletteSize(int bitsPerPixel) {
+        return PALETTE_ENTRY_BYTES << bitsPerPixel;
+    }
+
+    /**
+     * @return The number of bytes of one packed row
+     */
+    public static int rowBytes(int width, int bitsPerPixel) {
+        return (width * bitsPerPixel + 7) >> 3;
+    }
+
+    /**
+     * Packs a full image whose rows follow each other in the buffer.
+     *
+     * @see #pack(int[], int, int, int, int, int, byte[], int)
+     */
+    public static int pack(int[] argb, int width, int height, int bitsPerPixel, byte[] out) {
+        return pack(argb, 0, width, width, height, bitsPerPixel, out, 0);
+    }
+
+    /**
+     * Packs a rectangle of ARGB pixels into an indexed image.
+     *
+     * @param argb The source pixels
+     * @param offset Index of the top left pixel of the rectangle
+     * @param stride Distance between the starts of two rows in the source, at least width. This
+     *               lets a tile of a larger frame be packed without copying it first.
+     * @param width Width of the rectangle in pixels
+     * @param height Height of the rectangle in pixels
+     * @param bitsPerPixel {@link #BPP_1} or {@link #BPP_2}
+     * @param out Where to write the packed image. It may be larger than needed, so one buffer can
+     *            be reused for every frame.
+     * @param outOffset Where in out to start writing
+     * @return The number of bytes written, see {@link #packedSize}
+     */
+    public static int pack(int[] argb, int offset, int stride, int width, int height,
+                           int bitsPerPixel, byte[] out, int outOffset) {
+        int size = packedSize(width, height, bitsPerPixel);
+        if (stride < width) {
+            throw new IllegalArgumentException("stride " + stride + " is less than width " + width);
+        }
+        if (height > 0 && offset + (height - 1) * stride + width > argb.length) {
+            throw new IllegalArgumentException("Source buffer too small for " + width + "x" + height);
+        }
+        if (outOffset + size > out.length) {
+            throw new IllegalArgumentException("Output buffer needs " + (outOffset + size) + " bytes");
+        }
+
+        int dst = writePalette(bitsPerPixel, out, outOffset);
+        packRows(argb, offset, stride, width, height, bitsPerPixel, out, dst);
+        return size;
+    }
+
+    /**
+     * Packs rows without the palette, for images that are filled in a few rows at a time. Write
+     * the rows of a band at the palette size plus the first row times {@link #rowBytes}.
+     */
+    static void packRows(int[] argb, int offset, int stride, int width, int rows,
+                         int bitsPerPixel, byte[] out, int outOffset) {
+        int rowBytes = rowBytes(width, bitsPerPixel);
+        int dst = outOffset;
+        for (int y = 0; y < rows; y++) {
+            int src = offset + y * stride;
+            if (bitsPerPixel == BPP_1) {
+                packRow1(argb, src, width, out, dst);
+            } else {
+                packRow2(argb, src, width, out, dst);
+            }
+            dst += rowBytes;
+        }
+    }
+
+    /**
+     * Packs rows of gray levels that were already quantized, for example by a ditherer.
+     *
+     * @param levels One level per pixel, 0 to 2^bpp - 1, rows following each other
+     * @return The number of bytes written, see {@link #packedSize}
+     */
+    public static int packLevels(byte[] levels, int width, int height, int bitsPerPixel,
+                                 byte[] out, int outOffset) {
+        int size = packedSize(width, height, bitsPerPixel);
+        if (levels.length < width * height) {
+            throw new IllegalArgumentException("Level buffer too small for " + width + "x" + height);
+        }
+        if (outOffset + size > out.length) {
+            throw new IllegalArgumentException("Output buffer needs " + (outOffset + size) + " bytes");
+        }
+
+        int dst = writePalette(bitsPerPixel, out, outOffset);
+        int rowBytes = rowBytes(width, bitsPerPixel);
+        int pixelsPerByte = 8 / bitsPerPixel;
+        int mask = (1 << bitsPerPixel) - 1;
+        for (int y = 0; y < height; y++) {
+            int src = y * width;
+            for (int i = 0; i < rowBytes; i++) {
+                int packed = 0;
+                for (int p = 0; p < pixelsPerByte; p++) {
+                    int x = i * pixelsPerByte + p;
+                    int level = x < width ? levels[src + x] & mask : 0;
+                    packed = (packed << bitsPerPixel) | level;
+                }
+                out[dst + i] = (byte) packed;
+            }
+            dst += rowBytes;
+        }
+        return size;
+    }
+
+    /**
+     * Expands a packed image back into ARGB pixels, the reverse of {@link #pack}. Every pixel
+     * becomes the gray of its palette level, which is exactly what the glasses would show.
+     *
+     * This reads the packed bytes with absolute gets, so the buffer can be a memory-mapped file
+     * and nothing is copied out of it first. The position of the buffer is not changed.
+     *
+     * @param packed Holds the packed image, palette included
+     * @param offset Where in packed the image starts
+     * @param argb Receives width * height pixels, rows following each other
+     */
+    public static void unpack(ByteBuffer packed, int offset, int width, int height, int bitsPerPixel,
+                              int[] argb) {
+        checkBitsPerPixel(bitsPerPixel);
+        if (offset + packedSize(width, height, bitsPerPixel) > packed.limit()) {
+            throw new IllegalArgumentException("Packed buffer too small for " + width + "x" + height);
+        }
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Pixel buffer too small for " + width + "x" + height);
+        }
+        int[] colors = bitsPerPixel == BPP_1 ? COLORS_1_BIT : COLORS_2_BIT;
+        int mask = (1 << bitsPerPixel) - 1;
+        int rowBytes = rowBytes(width, bitsPerPixel);
+        int src = offset + paletteSize(bitsPerPixel);
+        int dst = 0;
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            for (int i = 0; i < rowBytes; i++) {
+                int packedByte = packed.get(src + i) & 0xFF;
+                // The first pixel is in the most significant bits, and the padding of the last
+                // byte is skipped
+                for (int shift = 8 - bitsPerPixel; shift >= 0 && x < width; shift -= bitsPerPixel, x++) {
+                    argb[dst++] = colors[(packedByte >> shift) & mask];
+                }
+            }
+            src += rowBytes;
+        }
+    }
+
+    /**
+     * Reduces one ARGB pixel to its gray level. This is the reference the packing loops follow.
+     *
+     * @return A level from 0 (black) to 2^bpp - 1 (white)
+     */
+    public static int level(int argb, int bitsPerPixel) {
+        checkBitsPerPixel(bitsPerPixel);
+        byte[] levels = bitsPerPixel == BPP_1 ? LEVELS_1_BIT : LEVELS_2_BIT;
+        return levels[luma(argb)];
+    }
+
+    /**
+     * @return The integer Rec. 601 luma of the pixel scaled by its alpha, 0 to 255
+     */
+    public static int luma(int argb) {
+        int alpha = argb >>> 24;
+        int red = (argb >> 16) & 0xFF;
+        int green = (argb >> 8) & 0xFF;
+        int blue = argb & 0xFF;
+        int luma = (red * 299 + green * 587 + blue * 114) / 1000;
+        // Opaque pixels are by far the most common, so skip the second division for them
+        return alpha == 0xFF ? luma : luma * alpha / 255;
+    }
+
+    private static void packRow1(int[] argb, int src, int width, byte[] out, int dst) {
+        byte[] levels = LEVELS_1_BIT;
+        int x = 0;
+        // Eight whole pixels per byte
+        for (int end = width & ~7; x < end; x += 8, src += 8) {
+            out[dst++] = (byte) (levels[luma(argb[src])] << 7
+                    | levels[luma(argb[src + 1])] << 6
+                    | levels[luma(argb[src + 2])] << 5
+                    | levels[luma(argb[src + 3])] << 4
+                    | levels[luma(argb[src + 4])] << 3
+                    | levels[luma(argb[src + 5])] << 2
+                    | levels[luma(argb[src + 6])] << 1
+                    | levels[luma(argb[src + 7])]);
+        }
+        if (x < width) {
+            // The unused low bits of the last byte stay 0
+            int packed = 0;
+            int shift = 7;
+            for (; x < width; x++, shift--) {
+                packed |= levels[luma(argb[src++])] << shift;
+            }
+            out[dst] = (byte) packed;
+        }
+    }
+
+    private static void packRow2(int[] argb, int src, int width, byte[] out, int dst) {
+        byte[] levels = LEVELS_2_BIT;
+        int x = 0;
+        // Four whole pixels per byte
+        for (int end = width & ~3; x < end; x += 4, src += 4) {
+            out[dst++] = (byte) (levels[luma(argb[src])] << 6
+                    | levels[luma(argb[src + 1])] << 4
+                    | levels[luma(argb[src + 2])] << 2
+                    | levels[luma(argb[src + 3])]);
+        }
+        if (x < width) {
+            int packed = 0;
+            int shift = 6;
+            for (; x < width; x++, shift -= 2) {
+                packed |= levels[luma(argb[src++])] << shift;
+            }
+            out[dst] = (byte) packed;
+        }
+    }
+
+    static int writePalette(int bitsPerPixel, byte[] out, int dst) {
+        int colors = 1 << bitsPerPixel;
+        for (int i = 0; i < colors; i++) {
+            int gray = i * 255 / (colors - 1);
+            out[dst++] = (byte) gray; // blue
+            out[dst++] = (byte) gray; // green
+            out[dst++] = (byte) gray; // red
+            out[dst++] = (byte) 0xFF; // alpha
+        }
+        return dst;
+    }
+
+    private static int[] colorTable(int bitsPerPixel) {
+        int colors = 1 << bitsPerPixel;
+        int[] table = new int[colors];
+        for (int i = 0; i < colors; i++) {
+            int gray = i * 255 / (colors - 1);
+            table[i] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+        }
+        return table;
+    }
+
+    private static byte[] levelTable(int bitsPerPixel) {
+        int maxLevel = (1 << bitsPerPixel) - 1;
+        byte[] table = new byte[256];
+        for (int luma = 0; luma < 256; luma++) {
+            // Round to the nearest level
+            table[luma] = (byte) ((luma * maxLevel + 127) / 255);
+        }
+        return table;
+    }
+
+    private static void checkBitsPerPixel(int bitsPerPixel) {
+        if (bitsPerPixel != BPP_1 && bitsPerPixel != BPP_2) {
+            throw new IllegalArgumentException("Unsupported bits per pixel: " + bitsPerPixel);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import java.util.Arrays;
+
+/**
+ * This class breaks text into lines of a fixed width, and keeps those breaks up to date as the text
+ * is edited.
+ *
+ * The SDK slicers and LiveText measure and break the whole text again every time it changes. For a
+ * teleprompter script of tens of thousands of words, fixing a typo in the middle of the show then
+ * costs as much as loading the script. This class avoids both halves of that work:
+ * <ul>
+ *     <li>The advance width of every word is measured once and cached, as is the width of every
+ *     character that separates words. A line is measured by adding those up, so breaking a line
+ *     costs a few table lookups instead of a call into the font engine.</li>
+ *     <li>The start and end of every line is kept as an index. An edit only breaks lines again
+ *     from the line before the edit, and stops as soon as a new line starts where an old line did,
+ *     since everything after that point breaks exactly as before. A newline always ends a line, so
+ *     an edit never reaches past the end of its paragraph. The lines after it only shift.</li>
+ * </ul>
+ * Lines are broken greedily at whitespace. A word wider than a line of its own is split between
+ * characters. Whitespace at the start and end of a line is not part of the line, and a newline
+ * directly after another one makes an empty line.
+ *
+ * Adding up word widths can differ from measuring the whole line by a fraction of a pixel, where a
+ * font kerns across a space. Give the layout a pixel less than the real width if that matters.
+ *
+ * The measurer decides the font and size, so use one layout per font and size. This class is not
+ * thread safe.
+ */
+public final class LineLayout {
+
+    /**
+     * Measures text in the font and size the lines will be drawn with.
+     */
+    public interface Measurer {
+        /**
+         * @return The advance width of the given range of text
+         */
+        float measure(CharSequence text, int start, int end);
+    }
+
+    // Once this many different words are cached, the cache starts over. This holds the vocabulary
+    // of any realistic script, and keeps a transcript that runs for days from growing forever.
+    private static final int MAX_CACHED_WORDS = 1 << 15;
+
+    private final Measurer measurer;
+    private final float maxWidth;
+    private final StringBuilder text = new StringBuilder();
+
+    // Line i covers text[starts[i], ends[i])
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int lineCount;
+
+    // Lines broken by the last edit, before they are spliced into the index
+    private int[] newStarts = new int[16];
+    private int[] newEnds = new int[16];
+    private int newCount;
+
+    // Open addressing table of word widths, see wordWidth
+    private String[] words = new String[1024];
+    private float[] wordWidths = new float[1024];
+    private int wordCount;
+    // Widths of the Latin-1 characters, NaN until measured. Others are measured each time.
+    private final float[] charWidths = new float[256];
+
+    private int relaidLines;
+
+    /**
+     * @param measurer Measures in the font and size of the lines
+     * @param maxWidth Width of a line in pixels
+     */
+    public LineLayout(Measurer measurer, float maxWidth) {
+        this.measurer = measurer;
+        this.maxWidth = maxWidth;
+        Arrays.fill(charWidths, Float.NaN);
+    }
+
+    public void setText(CharSequence newText) {
+        replace(0, text.length(), newText);
+    }
+
+    public void append(CharSequence more) {
+        replace(text.length(), text.length(), more);
+    }
+
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
+    /**
+     * Replaces a range of the text, and breaks the lines around it again.
+     *
+     * @return The index of the first line that may have changed. Lines before it are untouched.
+     */
+    public int replace(int start, int end, CharSequence replacement) {
+        if (start < 0 || end < start || end > text.length()) {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " of " + text.length());
+        }
+        int inserted = replacement.length();
+        int delta = inserted - (end - start);
+
+        // The line before the edit can change too, since a shorter word may now fit on it
+        int from = Math.max(0, getLineForOffset(start) - 1);
+        int pos = from == 0 ? 0 : starts[from];
+        text.replace(start, end, replacement.toString());
+
+        int resume = breakLines(pos, start + inserted, from, delta);
+        relaidLines = newCount;
+
+        // Splice the new lines in place of the old ones they replace. The old lines after the
+        // point where the breaks came back in step only shift.
+        int kept = resume < 0 ? 0 : lineCount - resume;
+        int count = from + newCount + kept;
+        ensureCapacity(count);
+        if (kept > 0) {
+            System.arraycopy(starts, resume, starts, from + newCount, kept);
+            System.arraycopy(ends, resume, ends, from + newCount, kept);
+            if (delta != 0) {
+                for (int i = from + newCount; i < count; i++) {
+                    starts[i] += delta;
+                    ends[i] += delta;
+                }
+            }
+        }
+        System.arraycopy(newStarts, 0, starts, from, newCount);
+        System.arraycopy(newEnds, 0, ends, from, newCount);
+        lineCount = count;
+        return from;
+    }
+
+    /**
+     * @return The text. Don't change it other than through this class.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    public float getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getLineStart(int line) {
+        checkLine(line);
+        return starts[line];
+    }
+
+    /**
+     * @return The end of the line, without the whitespace after it
+     */
+    public int getLineEnd(int line) {
+        checkLine(line);
+        return ends[line];
+    }
+
+    /**
+     * @return The line the offset is on. Offsets between two lines belong to the first one, and
+     *         offsets before the first line to line 0.
+     */
+    public int getLineForOffset(int offset) {
+        if (lineCount == 0) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(starts, 0, lineCount, offset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return Math.max(0, index);
+    }
+
+    /**
+     * @return How many lines the last edit broke again
+     */
+    public int getRelaidLines() {
+        return relaidLines;
+    }
+
+    /**
+     * @return How many different words have been measured and cached
+     */
+    public int getCachedWords() {
+        return wordCount;
+    }
+
+    // Breaks lines from a line start into newStarts/newEnds. Stops at the first line past the edit
+    // that starts where an old line started, and returns the index of that old line, or -1 if the
+    // lines were broken to the end of the text.
+    private int breakLines(int pos, int editEnd, int from, int delta) {
+        newCount = 0;
+        int length = text.length();
+        while (true) {
+            while (pos < length && isSpace(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= length) {
+                return -1;
+            }
+            if (pos >= editEnd) {
+                int old = Arrays.binarySearch(starts, from, lineCount, pos - delta);
+                if (old >= 0) {
+                    return old;
+                }
+            }
+            if (text.charAt(pos) == '\n') {
+                // An empty line
+                addNewLine(pos, pos);
+                pos++;
+                continue;
+            }
+            int end = lineEnd(pos, length);
+            addNewLine(pos, end);
+            pos = end;
+            while (pos < length && isSpace(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos < length && text.charAt(pos) == '\n') {
+                pos++;
+            }
+        }
+    }
+
+    // The end of the line starting at a word, adding up cached widths
+    private int lineEnd(int start, int length) {
+        float width = 0;
+        int end = start;
+        int word = start;
+        while (true) {
+            int wordEnd = word;
+            char c;
+            while (wordEnd < length && (c = text.charAt(wordEnd)) != '\n' && !isSpace(c)) {
+                wordEnd++;
+            }
+            float withWord = width + wordWidth(word, wordEnd);
+            if (withWord > maxWidth) {
+                if (end == start) {
+                    // A single word wider than the line is split where it overflows
+                    end = fitChars(start, wordEnd);
+                }
+                return end;
+            }
+            width = withWord;
+            end = wordEnd;
+
+            int next = wordEnd;
+            float spaces = 0;
+            while (next < length && isSpace(c = text.charAt(next))) {
+                spaces += charWidth(c);
+                next++;
+            }
+            if (next >= length || text.charAt(next) == '\n') {
+                return end;
+            }
+            width += spaces;
+            word = next;
+        }
+    }
+
+    // The end of the longest part of [start, end) that fits a line, at least one character
+    private int fitChars(int start, int end) {
+        float width = 0;
+        int fit = start;
+        while (fit < end) {
+            int next = fit + 1;
+            // Never split a surrogate pair
+            if (next < end && Character.isHighSurrogate(text.charAt(fit))) {
+                next++;
+            }
+            width += next - fit == 1 ? charWidth(text.charAt(fit)) : measurer.measure(text, fit, next);
+            if (width > maxWidth && fit > start) {
+                break;
+            }
+            fit = next;
+        }
+        return fit;
+    }
+
+    // A newline is not a space here, since it always ends the line
+    private static boolean isSpace(char c) {
+        return c != '\n' && Character.isWhitespace(c);
+    }
+
+    private float charWidth(char c) {
+        if (c < charWidths.length) {
+            float width = charWidths[c];
+            if (Float.isNaN(width)) {
+                width = measurer.measure(String.valueOf(c), 0, 1);
+                charWidths[c] = width;
+            }
+            return width;
+        }
+        return measurer.measure(String.valueOf(c), 0, 1);
+    }
+
+    // Looks the word up by its characters, so a word already cached costs no allocation
+    private float wordWidth(int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int mask = words.length - 1;
+        // Spread the bits, since String-like hashes of short words cluster in the low bits
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (words[slot] != null) {
+            if (matches(words[slot], start, end)) {
+                return wordWidths[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        float width = measurer.measure(text, start, end);
+        if (wordCount >= MAX_CACHED_WORDS) {
+            Arrays.fill(words, null);
+            wordCount = 0;
+        } else if ((wordCount + 1) * 2 > words.length) {
+            growWords();
+        }
+        mask = words.length - 1;
+        slot = (hash ^ (hash >>> 16)) & mask;
+        while (words[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        words[slot] = text.substring(start, end);
+        wordWidths[slot] = width;
+        wordCount++;
+        return width;
+    }
+
+    private boolean matches(String word, int start, int end) {
+        if (word.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growWords() {
+        String[] oldWords = words;
+        float[] oldWidths = wordWidths;
+        words = new String[oldWords.length * 2];
+        wordWidths = new float[oldWords.length * 2];
+        int mask = words.length - 1;
+        for (int i = 0; i < oldWords.length; i++) {
+            String word = oldWords[i];
+            if (word == null) {
+                continue;
+            }
+            int hash = word.hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (words[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            words[slot] = word;
+            wordWidths[slot] = oldWidths[i];
+        }
+    }
+
+    private void addNewLine(int start, int end) {
+        if (newCount == newStarts.length) {
+            newStarts = Arrays.copyOf(newStarts, newCount * 2);
+            newEnds = Arrays.copyOf(newEnds, newCount * 2);
+        }
+        newStarts[newCount] = start;
+        newEnds[newCount] = end;
+        newCount++;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > starts.length) {
+            int capacity = Math.max(count, starts.length * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+    }
+
+    private void checkLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+/**
+ * This class works out the smallest image that shows the same thing on the glasses.
+ *
+ * The glasses show black and transparent the same way, so black or transparent borders around an
+ * icon are sent for nothing. And an image that only uses black and white loses nothing as a 1-bit
+ * image, which is half the size of a 2-bit one. This class looks at the pixels before they are
+ * converted and reports the crop and the bit depth to use.
+ *
+ * Line art is often black and white apart from antialiased edges. Rounding those edge pixels to
+ * black or white is hard to see on the glasses, so the caller can allow a share of gray pixels and
+ * still get a 1-bit image. Photos, which are mostly gray, always stay 2-bit.
+ *
+ * Cropping must not move the image. How much of each border can go depends on how the image is
+ * placed, which is given per axis as an {@link Align}:
+ * <ul>
+ *     <li>{@link Align#START}: the left or top edge is pinned, so only the far border is cut.</li>
+ *     <li>{@link Align#CENTER}: the middle is pinned, so the same amount is cut from both sides.</li>
+ *     <li>{@link Align#END}: the right or bottom edge is pinned, so only the near border is cut.</li>
+ *     <li>{@link Align#FREE}: the caller places the image by its top left corner and adds
+ *     {@link Result#left} and {@link Result#top} to the position, so every border can go.</li>
+ * </ul>
+ */
+public final class PayloadAnalyzer {
+
+    public enum Align {
+        START,
+        CENTER,
+        END,
+        FREE
+    }
+
+    /**
+     * Where to crop the image and which bit depth to convert it with.
+     */
+    public static final class Result {
+        public final int sourceWidth;
+        public final int sourceHeight;
+        // The crop, in source pixels
+        public final int left;
+        public final int top;
+        public final int width;
+        public final int height;
+        public final int bitsPerPixel;
+
+        Result(int sourceWidth, int sourceHeight, int left, int top, int width, int height, int bitsPerPixel) {
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.bitsPerPixel = bitsPerPixel;
+        }
+
+        /**
+         * @return True if the crop is smaller than the source
+         */
+        public boolean isCropped() {
+            return width != sourceWidth || height != sourceHeight;
+        }
+
+        /**
+         * @return The packed size of the result
+         */
+        public int getBytes() {
+            return IndexedPacker.packedSize(width, height, bitsPerPixel);
+        }
+
+        /**
+         * @return The packed size of the whole source as a 2-bit image, which is what we sent before
+         */
+        public int getSourceBytes() {
+            return IndexedPacker.packedSize(sourceWidth, sourceHeight, IndexedPacker.BPP_2);
+        }
+
+        /**
+         * Combines the results of images that must share one size and format, such as the frames
+         * of an animation. The crop covers what every one of them needs, and any image that needs
+         * 2 bits makes all of them 2 bits.
+         */
+        public Result union(Result other) {
+            if (sourceWidth != other.sourceWidth || sourceHeight != other.sourceHeight) {
+                throw new IllegalArgumentException("Images differ in size");
+            }
+            int newLeft = Math.min(left, other.left);
+            int newTop = Math.min(top, other.top);
+            int right = Math.max(left + width, other.left + other.width);
+            int bottom = Math.max(top + height, other.top + other.height);
+            return new Result(sourceWidth, sourceHeight, newLeft, newTop, right - newLeft,
+                    bottom - newTop, Math.max(bitsPerPixel, other.bitsPerPixel));
+        }
+
+        @Override
+        public String toString() {
+            return sourceWidth + "x" + sourceHeight + " -> " + width + "x" + height + "+" + left + "+" + top
+                    + " @" + bitsPerPixel + " bpp, " + getSourceBytes() + " -> " + getBytes() + " bytes";
+        }
+    }
+
+    private PayloadAnalyzer() {
+    }
+
+    /**
+     * Analyzes a whole image whose rows follow each other in the buffer.
+     *
+     * @see #analyze(int[], int, int, int, int, float, Align, Align)
+     */
+    public static Result analyze(int[] argb, int width, int height, float grayTolerance,
+                                 Align horizontal, Align vertical) {
+        return analyze(argb, 0, width, width, height, grayTolerance, horizontal, vertical);
+    }
+
+    /**
+     * @param argb The source pixels
+     * @param offset Index of the top left pixel
+     * @param stride Distance between the starts of two rows in the source
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @param grayTolerance The share of non-black pixels, 0 to 1, that may be gray in a 1-bit
+     *                      image. Use 0 to pick 1-bit only when it is lossless, and a negative
+     *                      value where 1-bit images are not allowed, such as the background.
+     * @param horizontal How the image is placed horizontally
+     * @param vertical How the image is placed vertically
+     */
+    public static Result analyze(int[] argb, int offset, int stride, int width, int height,
+                                 float grayTolerance, Align horizontal, Align vertical) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Empty image: " + width + "x" + height);
+        }
+
+        // The box around every pixel that is not black, and how many of them are a mid gray
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        int lit = 0;
+        int grays = 0;
+        for (int y = 0; y < height; y++) {
+            int row = offset + y * stride;
+            int firstLit = -1;
+            int lastLit = -1;
+            for (int x = 0; x < width; x++) {
+                int level = IndexedPacker.level(argb[row + x], IndexedPacker.BPP_2);
+                if (level != 0) {
+                    if (firstLit < 0) {
+                        firstLit = x;
+                    }
+                    lastLit = x;
+                    lit++;
+                    if (level != 3) {
+                        grays++;
+                    }
+                }
+            }
+            if (firstLit >= 0) {
+                minX = Math.min(minX, firstLit);
+                maxX = Math.max(maxX, lastLit);
+                if (minY == height) {
+                    minY = y;
+                }
+                maxY = y;
+            }
+        }
+
+        boolean singleBit = grayTolerance >= 0 && grays <= grayTolerance * lit;
+        int bitsPerPixel = singleBit ? IndexedPacker.BPP_1 : IndexedPacker.BPP_2;
+        int[] xs = crop(minX, maxX, width, horizontal);
+        int[] ys = crop(minY, maxY, height, vertical);
+        return new Result(width, height, xs[0], ys[0], xs[1], ys[1], bitsPerPixel);
+    }
+
+    // Returns the start and length to keep along one axis
+    private static int[] crop(int first, int last, int size, Align align) {
+        if (last < 0) {
+            // Nothing but black. Keep one pixel, since an image cannot be empty.
+            switch (align) {
+                case END: return new int[]{size - 1, 1};
+                case CENTER: return new int[]{(size - 1) / 2, 2 - size % 2};
+                default: return new int[]{0, 1};
+            }
+        }
+        int before = first;
+        int after = size - 1 - last;
+        switch (align) {
+            case START: return new int[]{0, size - after};
+            case END: return new int[]{before, size - before};
+            case CENTER:
+                int both = Math.min(before, after);
+                return new int[]{both, size - 2 * both};
+            default: return new int[]{before, size - before - after};
+        }
+    }
+}
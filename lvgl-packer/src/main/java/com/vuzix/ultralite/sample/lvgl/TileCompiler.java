@@ -0,0 +1,367 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class compiles a background frame into a few repeated tiles instead of one large image.
+ *
+ * drawBackground can stamp one image at a list of positions with a single transfer. Screens such as
+ * forms and tables repeat the same pieces over and over: grid lines, borders, checkboxes and solid
+ * fills. This class cuts the frame into tiles at the gray levels the glasses show, and finds the
+ * tiles that are exactly alike by their hash. The plan it returns draws the frame like this:
+ * <ol>
+ *     <li>Clear the background to black. Black tiles need nothing else.</li>
+ *     <li>Clear every white area with clearBackgroundRect, which costs no pixels at all.</li>
+ *     <li>Upload each tile that repeats once, and stamp it at every position it appears.</li>
+ *     <li>Send the tiles that appear only once as images, with neighbours in a row joined into one
+ *     image so they share a single command and palette.</li>
+ * </ol>
+ * For a photo almost every tile is unique, and the plan costs a little more than the full frame.
+ * Check {@link Plan#saves()} and send the full frame in that case.
+ */
+public final class TileCompiler {
+    // Estimated framing and arguments of each command, like LinkMetrics in the app
+    public static final int COMMAND_OVERHEAD_BYTES = 8;
+    // Each extra position of a stamped image, two 16 bit coordinates
+    public static final int POINT_BYTES = 4;
+    // A clearBackgroundRect has a rectangle and a color on top of the command
+    public static final int CLEAR_RECT_BYTES = 9;
+
+    private static final int WHITE = -2;
+    private static final int BLACK = -1;
+
+    /**
+     * An image cut from the frame, and every position to draw it at.
+     */
+    public static final class Stamp {
+        // Where in the frame to cut the image from
+        public final int sourceX;
+        public final int sourceY;
+        public final int width;
+        public final int height;
+        // Positions of the top left corner, the first one being the source itself
+        public final int[] x;
+        public final int[] y;
+
+        Stamp(int sourceX, int sourceY, int width, int height, int[] x, int[] y) {
+            this.sourceX = sourceX;
+            this.sourceY = sourceY;
+            this.width = width;
+            this.height = height;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * A rectangle to clear to white.
+     */
+    public static final class Rect {
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+
+        Rect(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * How to draw the frame, and what that costs compared to sending it whole.
+     */
+    public static final class Plan {
+        public final int width;
+        public final int height;
+        public final int bitsPerPixel;
+        public final int tileCount;
+        // Tiles that were black, white, repeated or unique
+        public final int blackTiles;
+        public final int whiteTiles;
+        public final int repeatedTiles;
+        public final int uniqueTiles;
+        public final List<Rect> whiteRects;
+        public final List<Stamp> stamps;
+
+        Plan(int width, int height, int bitsPerPixel, int tileCount, int blackTiles, int whiteTiles,
+             int repeatedTiles, int uniqueTiles, List<Rect> whiteRects, List<Stamp> stamps) {
+            this.width = width;
+            this.height = height;
+            this.bitsPerPixel = bitsPerPixel;
+            this.tileCount = tileCount;
+            this.blackTiles = blackTiles;
+            this.whiteTiles = whiteTiles;
+            this.repeatedTiles = repeatedTiles;
+            this.uniqueTiles = uniqueTiles;
+            this.whiteRects = whiteRects;
+            this.stamps = stamps;
+        }
+
+        /**
+         * @return What sending the frame as one image costs
+         */
+        public long getFullBytes() {
+            return COMMAND_OVERHEAD_BYTES + IndexedPacker.packedSize(width, height, bitsPerPixel);
+        }
+
+        /**
+         * @return What the clear, the white rectangles and the stamps cost
+         */
+        public long getCompiledBytes() {
+            long bytes = COMMAND_OVERHEAD_BYTES;
+            bytes += (long) whiteRects.size() * (COMMAND_OVERHEAD_BYTES + CLEAR_RECT_BYTES);
+            for (Stamp stamp : stamps) {
+                bytes += COMMAND_OVERHEAD_BYTES + IndexedPacker.packedSize(stamp.width, stamp.height, bitsPerPixel)
+                        + (long) stamp.x.length * POINT_BYTES;
+            }
+            return bytes;
+        }
+
+        /**
+         * @return True if the plan is cheaper than sending the frame whole
+         */
+        public boolean saves() {
+            return getCompiledBytes() < getFullBytes();
+        }
+
+        @Override
+        public String toString() {
+            return tileCount + " tiles: " + blackTiles + " black, " + whiteTiles + " white, "
+                    + repeatedTiles + " repeated, " + uniqueTiles + " unique; " + stamps.size()
+                    + " images, " + whiteRects.size() + " white rects; " + getFullBytes() + " -> "
+                    + getCompiledBytes() + " bytes";
+        }
+    }
+
+    private TileCompiler() {
+    }
+
+    /**
+     * Compiles a frame.
+     *
+     * @param argb The frame, rows following each other
+     * @param tileWidth Width of each tile. Smaller tiles find more repeats, but cost more positions
+     *                  and commands.
+     * @param tileHeight Height of each tile
+     * @param bitsPerPixel The format the images will be sent in. The background only allows
+     *                     {@link IndexedPacker#BPP_2}.
+     */
+    public static Plan compile(int[] argb, int width, int height, int tileWidth, int tileHeight, int bitsPerPixel) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Frame buffer too small for " + width + "x" + height);
+        }
+        byte[] levels = new byte[width * height];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = (byte) IndexedPacker.level(argb[i], bitsPerPixel);
+        }
+        int white = (1 << bitsPerPixel) - 1;
+        int across = (width + tileWidth - 1) / tileWidth;
+        int down = (height + tileHeight - 1) / tileHeight;
+
+        // For every tile: BLACK, WHITE, or the index of the first tile that looks the same
+        int[] kind = new int[across * down];
+        Map<Long, List<Integer>> byHash = new HashMap<>();
+        int[] repeats = new int[across * down];
+        int blackTiles = 0;
+        int whiteTiles = 0;
+        for (int ty = 0; ty < down; ty++) {
+            for (int tx = 0; tx < across; tx++) {
+                int tile = ty * across + tx;
+                int left = tx * tileWidth;
+                int top = ty * tileHeight;
+                int cols = Math.min(tileWidth, width - left);
+                int rows = Math.min(tileHeight, height - top);
+                int solid = solidLevel(levels, width, left, top, cols, rows);
+                if (solid == 0) {
+                    kind[tile] = BLACK;
+                    blackTiles++;
+                    continue;
+                }
+                if (solid == white) {
+                    kind[tile] = WHITE;
+                    whiteTiles++;
+                    continue;
+                }
+                // Tiles of another size can never match, so the size is part of the hash
+                long hash = hash(levels, width, left, top, cols, rows);
+                List<Integer> candidates = byHash.get(hash);
+                if (candidates == null) {
+                    candidates = new ArrayList<>(1);
+                    byHash.put(hash, candidates);
+                }
+                int match = -1;
+                for (int candidate : candidates) {
+                    if (sameTile(levels, width, across, tileWidth, tileHeight, candidate, tile, cols, rows)) {
+                        match = candidate;
+                        break;
+                    }
+                }
+                if (match < 0) {
+                    candidates.add(tile);
+                    match = tile;
+                }
+                kind[tile] = match;
+                repeats[match]++;
+            }
+        }
+
+        List<Rect> whiteRects = whiteRects(kind, across, down, width, height, tileWidth, tileHeight);
+        List<Stamp> stamps = new ArrayList<>();
+        int repeatedTiles = 0;
+        int uniqueTiles = 0;
+        // Repeated tiles, each uploaded once with all its positions, in the order they first appear
+        for (int tile = 0; tile < kind.length; tile++) {
+            if (kind[tile] != tile || repeats[tile] < 2) {
+                continue;
+            }
+            int[] x = new int[repeats[tile]];
+            int[] y = new int[repeats[tile]];
+            int n = 0;
+            for (int other = tile; other < kind.length; other++) {
+                if (kind[other] == tile) {
+                    x[n] = (other % across) * tileWidth;
+                    y[n] = (other / across) * tileHeight;
+                    n++;
+                }
+            }
+            int left = x[0];
+            int top = y[0];
+            stamps.add(new Stamp(left, top, Math.min(tileWidth, width - left), Math.min(tileHeight, height - top), x, y));
+            repeatedTiles += repeats[tile];
+        }
+        // Unique tiles, joined along each row
+        for (int ty = 0; ty < down; ty++) {
+            int tx = 0;
+            while (tx < across) {
+                if (!isUnique(kind, repeats, ty * across + tx)) {
+                    tx++;
+                    continue;
+                }
+                int end = tx + 1;
+                while (end < across && isUnique(kind, repeats, ty * across + end)) {
+                    end++;
+                }
+                int left = tx * tileWidth;
+                int top = ty * tileHeight;
+                int runWidth = Math.min(end * tileWidth, width) - left;
+                stamps.add(new Stamp(left, top, runWidth, Math.min(tileHeight, height - top),
+                        new int[]{left}, new int[]{top}));
+                uniqueTiles += end - tx;
+                tx = end;
+            }
+        }
+        return new Plan(width, height, bitsPerPixel, kind.length, blackTiles, whiteTiles,
+                repeatedTiles, uniqueTiles, whiteRects, stamps);
+    }
+
+    private static boolean isUnique(int[] kind, int[] repeats, int tile) {
+        return kind[tile] >= 0 && repeats[kind[tile]] < 2;
+    }
+
+    // The level every pixel of the tile has, or -1 if they differ
+    private static int solidLevel(byte[] levels, int stride, int left, int top, int cols, int rows) {
+        int first = levels[top * stride + left];
+        for (int r = 0; r < rows; r++) {
+            int row = (top + r) * stride + left;
+            for (int c = 0; c < cols; c++) {
+                if (levels[row + c] != first) {
+                    return -1;
+                }
+            }
+        }
+        return first;
+    }
+
+    private static long hash(byte[] levels, int stride, int left, int top, int cols, int rows) {
+        // 64 bit FNV-1a over the size and the levels
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ cols) * 0x100000001b3L;
+        hash = (hash ^ rows) * 0x100000001b3L;
+        for (int r = 0; r < rows; r++) {
+            int row = (top + r) * stride + left;
+            for (int c = 0; c < cols; c++) {
+                hash = (hash ^ levels[row + c]) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    // Hashes can collide, so tiles only count as alike if every level matches
+    private static boolean sameTile(byte[] levels, int stride, int across, int tileWidth, int tileHeight,
+                                    int a, int b, int cols, int rows) {
+        int aLeft = (a % across) * tileWidth;
+        int aTop = (a / across) * tileHeight;
+        int bLeft = (b % across) * tileWidth;
+        int bTop = (b / across) * tileHeight;
+        int height = levels.length / stride;
+        if (Math.min(tileWidth, stride - aLeft) != cols || Math.min(tileHeight, height - aTop) != rows) {
+            return false;
+        }
+        for (int r = 0; r < rows; r++) {
+            int aRow = (aTop + r) * stride + aLeft;
+            int bRow = (bTop + r) * stride + bLeft;
+            for (int c = 0; c < cols; c++) {
+                if (levels[aRow + c] != levels[bRow + c]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Joins white tiles into runs along each row, and runs with the same columns in the rows below
+    // into one rectangle
+    private static List<Rect> whiteRects(int[] kind, int across, int down, int width, int height,
+                                         int tileWidth, int tileHeight) {
+        List<Rect> rects = new ArrayList<>();
+        boolean[] used = new boolean[kind.length];
+        for (int ty = 0; ty < down; ty++) {
+            int tx = 0;
+            while (tx < across) {
+                int tile = ty * across + tx;
+                if (kind[tile] != WHITE || used[tile]) {
+                    tx++;
+                    continue;
+                }
+                int end = tx + 1;
+                while (end < across && kind[ty * across + end] == WHITE && !used[ty * across + end]) {
+                    end++;
+                }
+                int bottom = ty + 1;
+                while (bottom < down && whiteRun(kind, used, across, bottom, tx, end)) {
+                    bottom++;
+                }
+                for (int y = ty; y < bottom; y++) {
+                    for (int x = tx; x < end; x++) {
+                        used[y * across + x] = true;
+                    }
+                }
+                int left = tx * tileWidth;
+                int top = ty * tileHeight;
+                rects.add(new Rect(left, top, Math.min(end * tileWidth, width) - left,
+                        Math.min(bottom * tileHeight, height) - top));
+                tx = end;
+            }
+        }
+        return rects;
+    }
+
+    private static boolean whiteRun(int[] kind, boolean[] used, int across, int ty, int from, int to) {
+        for (int tx = from; tx < to; tx++) {
+            int tile = ty * across + tx;
+            if (kind[tile] != WHITE || used[tile]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
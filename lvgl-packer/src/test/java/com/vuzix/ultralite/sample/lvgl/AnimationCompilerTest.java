@@ -0,0 +1,71 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnimationCompilerTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    @Test
+    public void stillFramesHaveNoChanges() {
+        int[][] frames = {face(false), face(false), face(false)};
+        AnimationCompiler.Plan plan = AnimationCompiler.compile(frames, WIDTH, HEIGHT, IndexedPacker.BPP_2);
+
+        assertFalse(plan.changes);
+        assertEquals(1, plan.changeWidth);
+        assertEquals(1, plan.changeHeight);
+    }
+
+    @Test
+    public void blinkOnlyAnimatesTheEyes() {
+        int[][] frames = {face(false), face(true), face(false)};
+        AnimationCompiler.Plan plan = AnimationCompiler.compile(frames, WIDTH, HEIGHT, IndexedPacker.BPP_2);
+
+        assertTrue(plan.changes);
+        assertEquals(10, plan.left);
+        assertEquals(8, plan.top);
+        assertEquals(20, plan.changeWidth);
+        assertEquals(4, plan.changeHeight);
+        assertTrue(plan.getCompiledBytes() < plan.getFullBytes());
+    }
+
+    @Test
+    public void changesTheGlassesCannotShowAreIgnored() {
+        int[] dark = new int[WIDTH * HEIGHT];
+        int[] darker = new int[WIDTH * HEIGHT];
+        Arrays.fill(dark, IndexedPackerTest.gray(20));
+        Arrays.fill(darker, IndexedPackerTest.gray(10));
+        AnimationCompiler.Plan plan = AnimationCompiler.compile(new int[][]{dark, darker}, WIDTH, HEIGHT,
+                IndexedPacker.BPP_2);
+
+        assertFalse(plan.changes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoFrames() {
+        AnimationCompiler.compile(new int[0][], WIDTH, HEIGHT, IndexedPacker.BPP_2);
+    }
+
+    // A white face whose two eyes are open (black) or closed (white)
+    private static int[] face(boolean blink) {
+        int[] frame = new int[WIDTH * HEIGHT];
+        Arrays.fill(frame, 0xFFFFFFFF);
+        if (!blink) {
+            eye(frame, 10);
+            eye(frame, 26);
+        }
+        return frame;
+    }
+
+    private static void eye(int[] frame, int left) {
+        for (int y = 8; y < 12; y++) {
+            Arrays.fill(frame, y * WIDTH + left, y * WIDTH + left + 4, 0xFF000000);
+        }
+    }
+}
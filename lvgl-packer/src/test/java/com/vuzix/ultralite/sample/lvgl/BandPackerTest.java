@@ -0,0 +1,76 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BandPackerTest {
+
+    @Test
+    public void sameSizeMatchesPackingInOneGo() {
+        int width = 21;
+        int height = 17;
+        int[] image = gradient(width, height);
+        byte[] expected = new byte[IndexedPacker.packedSize(width, height, IndexedPacker.BPP_2)];
+        IndexedPacker.pack(image, width, height, IndexedPacker.BPP_2, expected);
+
+        byte[] out = new byte[expected.length];
+        BandPacker packer = new BandPacker(width, height, width, height, IndexedPacker.BPP_2, out, 0);
+        for (int row = 0; row < height; row += 5) {
+            assertFalse(packer.isDone());
+            packer.push(image, row * width, width, Math.min(5, height - row));
+        }
+        assertTrue(packer.isDone());
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    public void shrinkingAveragesTheSourcePixels() {
+        // Each 2x2 block has two black and two white pixels, which average to 127.5 and round up
+        int[] source = {
+                0xFF000000, 0xFFFFFFFF, 0xFF000000, 0xFFFFFFFF,
+                0xFFFFFFFF, 0xFF000000, 0xFFFFFFFF, 0xFF000000};
+        byte[] out = new byte[IndexedPacker.packedSize(2, 1, IndexedPacker.BPP_2)];
+        BandPacker packer = new BandPacker(4, 2, 2, 1, IndexedPacker.BPP_2, out, 0);
+        packer.push(source, 0, 4, 1);
+        assertFalse(packer.isDone());
+        packer.push(source, 4, 4, 1);
+        assertTrue(packer.isDone());
+
+        int level = IndexedPacker.level(IndexedPackerTest.gray(128), IndexedPacker.BPP_2);
+        assertEquals((byte) (level << 6 | level << 4), out[IndexedPacker.paletteSize(IndexedPacker.BPP_2)]);
+    }
+
+    @Test
+    public void growingRepeatsTheNearestPixels() {
+        int[] source = {0xFF000000, 0xFFFFFFFF};
+        byte[] out = new byte[IndexedPacker.packedSize(4, 2, IndexedPacker.BPP_1)];
+        BandPacker packer = new BandPacker(2, 1, 4, 2, IndexedPacker.BPP_1, out, 0);
+        packer.push(source, 0, 2, 1);
+
+        assertTrue(packer.isDone());
+        int rows = IndexedPacker.paletteSize(IndexedPacker.BPP_1);
+        assertEquals((byte) 0x30, out[rows]);
+        assertEquals((byte) 0x30, out[rows + 1]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsRowsPastTheEnd() {
+        byte[] out = new byte[IndexedPacker.packedSize(2, 2, IndexedPacker.BPP_1)];
+        BandPacker packer = new BandPacker(2, 2, 2, 2, IndexedPacker.BPP_1, out, 0);
+        packer.push(new int[6], 0, 2, 3);
+    }
+
+    private static int[] gradient(int width, int height) {
+        int[] image = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image[y * width + x] = IndexedPackerTest.gray((x * 255 / (width - 1) + y * 7) % 256);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,87 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DithererTest {
+    private static final int SIZE = 64;
+
+    @Test
+    public void noDitheringRoundsLikeThePacker() {
+        int[] image = new int[256];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = IndexedPackerTest.gray(i);
+        }
+        for (int bpp : new int[]{IndexedPacker.BPP_1, IndexedPacker.BPP_2}) {
+            byte[] levels = new byte[image.length];
+            new Ditherer(Ditherer.Mode.NONE, bpp).dither(image, 0, 16, 16, 16, levels);
+            for (int i = 0; i < image.length; i++) {
+                assertEquals("gray " + i, IndexedPacker.level(image[i], bpp), levels[i]);
+            }
+        }
+    }
+
+    @Test
+    public void blackAndWhiteStaySolid() {
+        for (Ditherer.Mode mode : Ditherer.Mode.values()) {
+            for (int bpp : new int[]{IndexedPacker.BPP_1, IndexedPacker.BPP_2}) {
+                assertEquals(mode + " black", 0, averageLevel(mode, bpp, 0), 0);
+                assertEquals(mode + " white", 1, averageLevel(mode, bpp, 255), 0);
+            }
+        }
+    }
+
+    @Test
+    public void ditheringKeepsTheAverageGray() {
+        // A gray between two levels would round to one of them without dithering
+        int value = 96;
+        for (Ditherer.Mode mode : new Ditherer.Mode[]{Ditherer.Mode.ORDERED, Ditherer.Mode.FLOYD_STEINBERG}) {
+            double shown = averageLevel(mode, IndexedPacker.BPP_1, value) * 255;
+            assertTrue(mode + " shows " + shown, Math.abs(shown - value) < 16);
+        }
+    }
+
+    @Test
+    public void orderedBandsMatchOneThread() {
+        int[] image = new int[SIZE * 128];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = IndexedPackerTest.gray(i * 13 % 256);
+        }
+        byte[] single = new byte[image.length];
+        byte[] banded = new byte[image.length];
+        new Ditherer(Ditherer.Mode.ORDERED, IndexedPacker.BPP_2).dither(image, 0, SIZE, SIZE, 128, single);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            new Ditherer(Ditherer.Mode.ORDERED, IndexedPacker.BPP_2)
+                    .dither(image, 0, SIZE, SIZE, 128, banded, executor, 4);
+        } finally {
+            executor.shutdown();
+        }
+        assertArrayEquals(single, banded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherDepths() {
+        new Ditherer(Ditherer.Mode.ORDERED, 4);
+    }
+
+    private static double averageLevel(Ditherer.Mode mode, int bitsPerPixel, int value) {
+        int[] image = new int[SIZE * SIZE];
+        Arrays.fill(image, IndexedPackerTest.gray(value));
+        byte[] levels = new byte[image.length];
+        new Ditherer(mode, bitsPerPixel).dither(image, 0, SIZE, SIZE, SIZE, levels);
+        long sum = 0;
+        for (byte level : levels) {
+            sum += level;
+        }
+        // From 0 for black to 1 for white
+        return (double) sum / levels.length / ((1 << bitsPerPixel) - 1);
+    }
+}
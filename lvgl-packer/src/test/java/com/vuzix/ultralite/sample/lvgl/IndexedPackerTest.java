@@ -0,0 +1,139 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pins the packed layout byte for byte, since the glasses read it without any checks.
+ */
+public class IndexedPackerTest {
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    @Test
+    public void oneBitPacksTheFirstPixelIntoTheHighestBit() {
+        int[] row = {WHITE, BLACK, WHITE, BLACK, WHITE, BLACK, WHITE, BLACK, WHITE, WHITE};
+        byte[] out = new byte[IndexedPacker.packedSize(row.length, 1, IndexedPacker.BPP_1)];
+
+        assertEquals(10, IndexedPacker.pack(row, row.length, 1, IndexedPacker.BPP_1, out));
+        assertArrayEquals(bytes(
+                0x00, 0x00, 0x00, 0xFF, // black
+                0xFF, 0xFF, 0xFF, 0xFF, // white
+                0xAA, 0xC0), out);
+    }
+
+    @Test
+    public void twoBitPacksFourEvenlySpacedGrays() {
+        int[] row = {gray(0), gray(85), gray(170), gray(255), gray(255)};
+        byte[] out = new byte[IndexedPacker.packedSize(row.length, 1, IndexedPacker.BPP_2)];
+
+        assertEquals(18, IndexedPacker.pack(row, row.length, 1, IndexedPacker.BPP_2, out));
+        assertArrayEquals(bytes(
+                0x00, 0x00, 0x00, 0xFF,
+                0x55, 0x55, 0x55, 0xFF,
+                0xAA, 0xAA, 0xAA, 0xFF,
+                0xFF, 0xFF, 0xFF, 0xFF,
+                0x1B, 0xC0), out);
+    }
+
+    @Test
+    public void everyRowStartsOnAByte() {
+        int[] image = {WHITE, WHITE, WHITE, BLACK, BLACK, WHITE};
+        byte[] out = new byte[IndexedPacker.packedSize(3, 2, IndexedPacker.BPP_1)];
+        IndexedPacker.pack(image, 3, 2, IndexedPacker.BPP_1, out);
+
+        assertEquals((byte) 0xE0, out[8]);
+        assertEquals((byte) 0x20, out[9]);
+    }
+
+    @Test
+    public void grayRoundsToTheNearestLevel() {
+        assertEquals(0, IndexedPacker.level(gray(127), IndexedPacker.BPP_1));
+        assertEquals(1, IndexedPacker.level(gray(128), IndexedPacker.BPP_1));
+        assertEquals(0, IndexedPacker.level(gray(42), IndexedPacker.BPP_2));
+        assertEquals(1, IndexedPacker.level(gray(43), IndexedPacker.BPP_2));
+    }
+
+    @Test
+    public void transparentPixelsAreBlack() {
+        assertEquals(0, IndexedPacker.level(0x00FFFFFF, IndexedPacker.BPP_2));
+        assertEquals(1, IndexedPacker.level(0x80FFFFFF, IndexedPacker.BPP_1));
+    }
+
+    @Test
+    public void strideCutsATileOutOfALargerFrame() {
+        int[] frame = {
+                BLACK, BLACK, BLACK, BLACK,
+                BLACK, WHITE, BLACK, BLACK,
+                BLACK, BLACK, WHITE, BLACK};
+        int[] tile = {WHITE, BLACK, BLACK, WHITE};
+        byte[] fromFrame = new byte[IndexedPacker.packedSize(2, 2, IndexedPacker.BPP_2)];
+        byte[] fromTile = new byte[fromFrame.length];
+
+        IndexedPacker.pack(frame, 5, 4, 2, 2, IndexedPacker.BPP_2, fromFrame, 0);
+        IndexedPacker.pack(tile, 2, 2, IndexedPacker.BPP_2, fromTile);
+        assertArrayEquals(fromTile, fromFrame);
+    }
+
+    @Test
+    public void packLevelsMatchesPack() {
+        int width = 13;
+        int height = 3;
+        int[] image = new int[width * height];
+        byte[] levels = new byte[image.length];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = gray(i * 37 % 256);
+            levels[i] = (byte) IndexedPacker.level(image[i], IndexedPacker.BPP_2);
+        }
+        byte[] packed = new byte[IndexedPacker.packedSize(width, height, IndexedPacker.BPP_2)];
+        byte[] fromLevels = new byte[packed.length];
+
+        IndexedPacker.pack(image, width, height, IndexedPacker.BPP_2, packed);
+        IndexedPacker.packLevels(levels, width, height, IndexedPacker.BPP_2, fromLevels, 0);
+        assertArrayEquals(packed, fromLevels);
+    }
+
+    @Test
+    public void unpackShowsThePaletteGrays() {
+        int width = 7;
+        int[] image = {gray(0), gray(60), gray(100), gray(200), gray(255), BLACK, WHITE};
+        for (int bpp : new int[]{IndexedPacker.BPP_1, IndexedPacker.BPP_2}) {
+            byte[] packed = new byte[IndexedPacker.packedSize(width, 1, bpp)];
+            IndexedPacker.pack(image, width, 1, bpp, packed);
+            int[] shown = new int[width];
+            IndexedPacker.unpack(ByteBuffer.wrap(packed), 0, width, 1, bpp, shown);
+
+            int maxLevel = (1 << bpp) - 1;
+            for (int x = 0; x < width; x++) {
+                int level = IndexedPacker.level(image[x], bpp);
+                assertEquals("pixel " + x + " at " + bpp + " bpp", gray(level * 255 / maxLevel), shown[x]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherDepths() {
+        IndexedPacker.packedSize(8, 8, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAShortOutputBuffer() {
+        IndexedPacker.pack(new int[16], 4, 4, IndexedPacker.BPP_1, new byte[11]);
+    }
+
+    static int gray(int value) {
+        return 0xFF000000 | value << 16 | value << 8 | value;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
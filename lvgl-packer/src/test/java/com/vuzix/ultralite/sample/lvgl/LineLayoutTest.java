@@ -0,0 +1,104 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Breaks text with a font where every character is one pixel wide.
+ */
+public class LineLayoutTest {
+    private int measured;
+    private final LineLayout.Measurer monospace = (text, start, end) -> {
+        measured++;
+        return end - start;
+    };
+
+    @Test
+    public void breaksGreedilyAtWhitespace() {
+        LineLayout layout = new LineLayout(monospace, 10);
+        layout.setText("hello world foo");
+
+        assertLines(layout, "hello", "world foo");
+    }
+
+    @Test
+    public void splitsAWordWiderThanALine() {
+        LineLayout layout = new LineLayout(monospace, 10);
+        layout.setText("abcdefghijklmno");
+
+        assertLines(layout, "abcdefghij", "klmno");
+    }
+
+    @Test
+    public void newlineEndsALine() {
+        LineLayout layout = new LineLayout(monospace, 10);
+        layout.setText("a\n\nb");
+
+        assertLines(layout, "a", "", "b");
+    }
+
+    @Test
+    public void editsBreakLikeAFreshLayout() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append("paragraph ").append(i).append(" has a few short words in it\n");
+        }
+        LineLayout edited = new LineLayout(monospace, 20);
+        edited.setText(text);
+
+        int start = text.indexOf("paragraph 25");
+        edited.replace(start, start + 9, "a much longer opening for a paragraph");
+        text.replace(start, start + 9, "a much longer opening for a paragraph");
+        LineLayout fresh = new LineLayout(monospace, 20);
+        fresh.setText(text);
+
+        assertEquals(fresh.getLineCount(), edited.getLineCount());
+        for (int line = 0; line < fresh.getLineCount(); line++) {
+            assertEquals("start of " + line, fresh.getLineStart(line), edited.getLineStart(line));
+            assertEquals("end of " + line, fresh.getLineEnd(line), edited.getLineEnd(line));
+        }
+        // Only the lines of the edited paragraph, and the one before it, are broken again
+        assertTrue("relaid " + edited.getRelaidLines(), edited.getRelaidLines() < 8);
+    }
+
+    @Test
+    public void appendOnlyBreaksTheLastLines() {
+        LineLayout layout = new LineLayout(monospace, 10);
+        layout.setText("one two three four five six");
+        int lines = layout.getLineCount();
+
+        int from = layout.replace(layout.length(), layout.length(), " seven");
+        assertEquals(lines - 2, from);
+        assertLines(layout, "one two", "three four", "five six", "seven");
+    }
+
+    @Test
+    public void wordsAreMeasuredOnce() {
+        LineLayout layout = new LineLayout(monospace, 10);
+        layout.setText("the cat and the dog");
+        int afterFirst = measured;
+        layout.append(" and the cat");
+
+        assertEquals(afterFirst, measured);
+        assertEquals(4, layout.getCachedWords());
+    }
+
+    @Test
+    public void offsetsBetweenLinesBelongToTheFirst() {
+        LineLayout layout = new LineLayout(monospace, 10);
+        layout.setText("hello world");
+
+        assertEquals(0, layout.getLineForOffset(5));
+        assertEquals(1, layout.getLineForOffset(6));
+    }
+
+    private static void assertLines(LineLayout layout, String... lines) {
+        assertEquals(lines.length, layout.getLineCount());
+        for (int i = 0; i < lines.length; i++) {
+            String line = layout.getText().subSequence(layout.getLineStart(i), layout.getLineEnd(i)).toString();
+            assertEquals("line " + i, lines[i], line);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadAnalyzerTest {
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    @Test
+    public void eachAlignmentKeepsItsEdgePinned() {
+        // 3 black columns before the lit ones and 4 after
+        int[] row = row(10, 3, 5);
+
+        assertCrop(0, 6, analyzeRow(row, PayloadAnalyzer.Align.START));
+        assertCrop(3, 7, analyzeRow(row, PayloadAnalyzer.Align.END));
+        assertCrop(3, 4, analyzeRow(row, PayloadAnalyzer.Align.CENTER));
+        assertCrop(3, 3, analyzeRow(row, PayloadAnalyzer.Align.FREE));
+    }
+
+    @Test
+    public void centerCutsTheSameFromBothSidesOfAnOddSize() {
+        PayloadAnalyzer.Result result = analyzeRow(row(7, 1, 1), PayloadAnalyzer.Align.CENTER);
+
+        assertCrop(1, 5, result);
+        // The middle column stays the middle column
+        assertEquals(3, result.left + result.width / 2);
+    }
+
+    @Test
+    public void verticalAlignmentCropsRows() {
+        int[] image = new int[3 * 6];
+        Arrays.fill(image, BLACK);
+        image[2 * 3 + 1] = WHITE;
+        PayloadAnalyzer.Result result = PayloadAnalyzer.analyze(image, 3, 6, 0,
+                PayloadAnalyzer.Align.FREE, PayloadAnalyzer.Align.END);
+
+        assertEquals(1, result.left);
+        assertEquals(1, result.width);
+        assertEquals(2, result.top);
+        assertEquals(4, result.height);
+    }
+
+    @Test
+    public void allBlackKeepsOnePixel() {
+        int[] odd = row(5, -1, -1);
+        assertCrop(0, 1, analyzeRow(odd, PayloadAnalyzer.Align.START));
+        assertCrop(4, 1, analyzeRow(odd, PayloadAnalyzer.Align.END));
+        assertCrop(2, 1, analyzeRow(odd, PayloadAnalyzer.Align.CENTER));
+        assertCrop(0, 1, analyzeRow(odd, PayloadAnalyzer.Align.FREE));
+        // An even size has no middle pixel, so the two around it stay
+        assertCrop(2, 2, analyzeRow(row(6, -1, -1), PayloadAnalyzer.Align.CENTER));
+    }
+
+    @Test
+    public void transparentBordersAreCropped() {
+        int[] row = {0x00FFFFFF, WHITE, 0x00FFFFFF};
+        assertCrop(1, 1, analyzeRow(row, PayloadAnalyzer.Align.FREE));
+    }
+
+    @Test
+    public void unionCoversEveryFrame() {
+        int[] first = new int[6 * 4];
+        int[] second = new int[first.length];
+        Arrays.fill(first, BLACK);
+        Arrays.fill(second, BLACK);
+        first[6 + 1] = WHITE;
+        second[3 * 6 + 4] = IndexedPackerTest.gray(128);
+        PayloadAnalyzer.Result a = PayloadAnalyzer.analyze(first, 6, 4, 0,
+                PayloadAnalyzer.Align.FREE, PayloadAnalyzer.Align.FREE);
+        PayloadAnalyzer.Result b = PayloadAnalyzer.analyze(second, 6, 4, 0,
+                PayloadAnalyzer.Align.FREE, PayloadAnalyzer.Align.FREE);
+
+        PayloadAnalyzer.Result union = a.union(b);
+        assertEquals(1, union.left);
+        assertEquals(1, union.top);
+        assertEquals(4, union.width);
+        assertEquals(3, union.height);
+        // The gray frame needs 2 bits, so every frame gets them
+        assertEquals(IndexedPacker.BPP_1, a.bitsPerPixel);
+        assertEquals(IndexedPacker.BPP_2, union.bitsPerPixel);
+        assertTrue(union.isCropped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unionRejectsOtherSizes() {
+        PayloadAnalyzer.Result a = analyzeRow(row(4, 0, 0), PayloadAnalyzer.Align.FREE);
+        PayloadAnalyzer.Result b = analyzeRow(row(5, 0, 0), PayloadAnalyzer.Align.FREE);
+        a.union(b);
+    }
+
+    @Test
+    public void grayToleranceAllowsSomeGraysInOneBit() {
+        // Ten lit pixels, one of them a mid gray
+        int[] row = row(10, 0, 9);
+        row[4] = IndexedPackerTest.gray(128);
+
+        assertEquals(IndexedPacker.BPP_2, analyzeRow(row, 0).bitsPerPixel);
+        assertEquals(IndexedPacker.BPP_2, analyzeRow(row, 0.05f).bitsPerPixel);
+        assertEquals(IndexedPacker.BPP_1, analyzeRow(row, 0.1f).bitsPerPixel);
+    }
+
+    @Test
+    public void negativeToleranceAlwaysKeepsTwoBits() {
+        int[] row = row(8, 2, 5);
+
+        PayloadAnalyzer.Result lossless = analyzeRow(row, 0);
+        PayloadAnalyzer.Result background = analyzeRow(row, -1);
+        assertEquals(IndexedPacker.BPP_1, lossless.bitsPerPixel);
+        assertEquals(IndexedPacker.BPP_2, background.bitsPerPixel);
+        assertTrue(lossless.getBytes() < background.getBytes());
+    }
+
+    // A one row image, white from first to last and black elsewhere. Use -1 for all black.
+    private static int[] row(int width, int first, int last) {
+        int[] row = new int[width];
+        for (int x = 0; x < width; x++) {
+            row[x] = x >= first && x <= last ? WHITE : BLACK;
+        }
+        return row;
+    }
+
+    private static PayloadAnalyzer.Result analyzeRow(int[] row, PayloadAnalyzer.Align horizontal) {
+        return PayloadAnalyzer.analyze(row, row.length, 1, 0, horizontal, PayloadAnalyzer.Align.FREE);
+    }
+
+    private static PayloadAnalyzer.Result analyzeRow(int[] row, float grayTolerance) {
+        return PayloadAnalyzer.analyze(row, row.length, 1, grayTolerance,
+                PayloadAnalyzer.Align.FREE, PayloadAnalyzer.Align.FREE);
+    }
+
+    private static void assertCrop(int left, int width, PayloadAnalyzer.Result result) {
+        assertEquals("left of " + result, left, result.left);
+        assertEquals("width of " + result, width, result.width);
+    }
+}
@@ -0,0 +1,103 @@
+package com.vuzix.ultralite.sample.lvgl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileCompilerTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final int TILE = 16;
+
+    @Test
+    public void blackFrameOnlyNeedsTheClear() {
+        TileCompiler.Plan plan = TileCompiler.compile(fill(0xFF000000), WIDTH, HEIGHT, TILE, TILE, IndexedPacker.BPP_2);
+
+        assertEquals(8, plan.tileCount);
+        assertEquals(8, plan.blackTiles);
+        assertTrue(plan.stamps.isEmpty());
+        assertTrue(plan.whiteRects.isEmpty());
+        assertTrue(plan.saves());
+    }
+
+    @Test
+    public void whiteTilesAreClearedWithoutPixels() {
+        int[] frame = fill(0xFF000000);
+        paint(frame, 0, 0, WIDTH, TILE, 0xFFFFFFFF);
+        TileCompiler.Plan plan = TileCompiler.compile(frame, WIDTH, HEIGHT, TILE, TILE, IndexedPacker.BPP_2);
+
+        assertEquals(4, plan.whiteTiles);
+        assertTrue(plan.stamps.isEmpty());
+        int cleared = 0;
+        for (TileCompiler.Rect rect : plan.whiteRects) {
+            cleared += rect.width * rect.height;
+        }
+        assertEquals(WIDTH * TILE, cleared);
+    }
+
+    @Test
+    public void repeatedTileIsUploadedOnceAndStamped() {
+        int[] frame = fill(0xFF000000);
+        for (int y = 0; y < HEIGHT; y += TILE) {
+            for (int x = 0; x < WIDTH; x += TILE) {
+                // A checkbox: a gray border around a black square
+                paint(frame, x, y, TILE, 2, IndexedPackerTest.gray(170));
+                paint(frame, x, y, 2, TILE, IndexedPackerTest.gray(170));
+            }
+        }
+        TileCompiler.Plan plan = TileCompiler.compile(frame, WIDTH, HEIGHT, TILE, TILE, IndexedPacker.BPP_2);
+
+        assertEquals(8, plan.repeatedTiles);
+        assertEquals(1, plan.stamps.size());
+        TileCompiler.Stamp stamp = plan.stamps.get(0);
+        assertArrayEquals(new int[]{0, 16, 32, 48, 0, 16, 32, 48}, stamp.x);
+        assertArrayEquals(new int[]{0, 0, 0, 0, 16, 16, 16, 16}, stamp.y);
+        assertTrue(plan.getCompiledBytes() < plan.getFullBytes());
+    }
+
+    @Test
+    public void uniqueTilesInARowAreJoined() {
+        int[] frame = new int[WIDTH * HEIGHT];
+        Random random = new Random(1);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = IndexedPackerTest.gray(random.nextInt(256));
+        }
+        TileCompiler.Plan plan = TileCompiler.compile(frame, WIDTH, HEIGHT, TILE, TILE, IndexedPacker.BPP_2);
+
+        assertEquals(8, plan.uniqueTiles);
+        assertEquals(2, plan.stamps.size());
+        assertEquals(WIDTH, plan.stamps.get(0).width);
+        assertFalse("a photo costs more than the full frame", plan.saves());
+    }
+
+    @Test
+    public void edgeTilesAreCutToTheFrame() {
+        int[] frame = new int[20 * 10];
+        Arrays.fill(frame, IndexedPackerTest.gray(85));
+        TileCompiler.Plan plan = TileCompiler.compile(frame, 20, 10, TILE, TILE, IndexedPacker.BPP_2);
+
+        assertEquals(2, plan.tileCount);
+        for (TileCompiler.Stamp stamp : plan.stamps) {
+            assertTrue(stamp.sourceX + stamp.width <= 20);
+            assertTrue(stamp.sourceY + stamp.height <= 10);
+        }
+    }
+
+    private static int[] fill(int argb) {
+        int[] frame = new int[WIDTH * HEIGHT];
+        Arrays.fill(frame, argb);
+        return frame;
+    }
+
+    private static void paint(int[] frame, int left, int top, int width, int height, int argb) {
+        for (int y = top; y < top + height; y++) {
+            Arrays.fill(frame, y * WIDTH + left, y * WIDTH + left + width, argb);
+        }
+    }
+}
@@ -16,4 +16,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "Ultralite SDK Sample"
 include(":app")
+include(":lvgl-packer")
+include(":glasses-sim")
  
\ No newline at end of file